@@ -71,6 +71,7 @@ public abstract class AbstractGraalPyMojo extends AbstractMojo {
     private static final String PYTHON_COMMUNITY_ARTIFACT_ID = "python-community";
     private static final String PYTHON_ARTIFACT_ID = "python";
     private static final String GRAALPY_MAVEN_PLUGIN_ARTIFACT_ID = "graalpy-maven-plugin";
+    private static final String GRAALPY_VENV_STAGING_DIRECTORY = "graalpy-venv";
 
     @Parameter(defaultValue = "${project}", required = true, readonly = true)
     MavenProject project;
@@ -87,6 +88,50 @@ public abstract class AbstractGraalPyMojo extends AbstractMojo {
     @Parameter(property = "graalPyLockFile", defaultValue = "graalpy.lock")
     String graalPyLockFile;
 
+    /**
+     * Packs the data of all virtual filesystem files into a single archive, from which they are
+     * read at runtime instead of looking up each file as a separate Java resource. The packed files
+     * are removed from the output directory and the virtual environment is created in
+     * {@code target/graalpy-venv} instead.
+     */
+    @Parameter(property = "packVirtualFileSystem", defaultValue = "false")
+    boolean packVirtualFileSystem;
+
+    /**
+     * Precompiles the Python sources of the virtual environment and of the {@code src} directory
+     * into bytecode at build time, so that it does not have to be compiled at runtime. It is
+     * ignored when {@code externalDirectory} is set, since the bytecode is not checked against the
+     * sources at runtime.
+     */
+    @Parameter(property = "precompileBytecode", defaultValue = "false")
+    boolean precompileBytecode;
+
+    /**
+     * Generates an index of the Python modules in the {@code src} directory and in the virtual
+     * environment into the virtual filesystem, see {@link VFSUtils#generateVFSModulesIndex}. The
+     * index is used at runtime only if the virtual filesystem is built with
+     * {@code VirtualFileSystem.Builder#moduleIndex(boolean)}.
+     */
+    @Parameter(property = "moduleIndex", defaultValue = "false")
+    boolean moduleIndex;
+
+    /**
+     * Rules for removing files which are not needed at runtime from the virtual environment
+     * packaged into the virtual filesystem, see {@link VFSUtils#pruneVenv}. The includes and
+     * excludes are glob patterns relative to the virtual environment directory, the access
+     * profile is a file written by {@code VirtualFileSystem.Builder#accessProfile(Path)}. The
+     * virtual environment is then created in {@code target/graalpy-venv} and only its pruned copy
+     * is packaged. Pruning is not supported with an external directory.
+     */
+    public static class VenvPruning {
+        List<String> includes;
+        List<String> excludes;
+        File accessProfile;
+    }
+
+    @Parameter
+    VenvPruning venvPruning;
+
     @Parameter
     List<String> packages;
 
@@ -116,9 +161,25 @@ public abstract class AbstractGraalPyMojo extends AbstractMojo {
 
     protected void listGraalPyResources() throws MojoExecutionException {
         Path vfs = Path.of(project.getBuild().getOutputDirectory(), resourceDirectory);
+        if (isVenvStaged()) {
+            Path venvDirectory = getVenvDirectory();
+            Path packagedVenvDirectory = vfs.resolve(VFS_VENV);
+            try {
+                if (Files.isDirectory(venvDirectory)) {
+                    if (venvPruning != null) {
+                        VFSUtils.pruneVenv(venvDirectory, packagedVenvDirectory, venvPruning.includes, venvPruning.excludes,
+                                venvPruning.accessProfile != null ? venvPruning.accessProfile.toPath() : null, new MavenDelegateLog(getLog()));
+                    } else {
+                        VFSUtils.copyVenv(venvDirectory, packagedVenvDirectory);
+                    }
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException(String.format("Failed to copy '%s' to '%s'", venvDirectory, packagedVenvDirectory), e);
+            }
+        }
         if (Files.exists(vfs)) {
             try {
-                VFSUtils.generateVFSFilesList(Path.of(project.getBuild().getOutputDirectory()), vfs);
+                VFSUtils.generateVFSFilesList(Path.of(project.getBuild().getOutputDirectory()), vfs, packVirtualFileSystem, moduleIndex);
             } catch (IOException e) {
                 throw new MojoExecutionException(String.format("Failed to generate files list in '%s'", vfs), e);
             }
@@ -204,14 +265,24 @@ public abstract class AbstractGraalPyMojo extends AbstractMojo {
 
     protected Path getVenvDirectory() {
         Path venvDirectory;
-        if(externalDirectory == null) {
-            venvDirectory = Path.of(project.getBuild().getOutputDirectory(), resourceDirectory, VFS_VENV);
-        } else {
+        if(externalDirectory != null) {
             venvDirectory = Path.of(externalDirectory, VFS_VENV);
+        } else if (isVenvStaged()) {
+            venvDirectory = Path.of(project.getBuild().getDirectory(), GRAALPY_VENV_STAGING_DIRECTORY, resourceDirectory, VFS_VENV);
+        } else {
+            venvDirectory = Path.of(project.getBuild().getOutputDirectory(), resourceDirectory, VFS_VENV);
         }
         return venvDirectory;
     }
 
+    /**
+     * Packing and pruning remove files from the output directory, so the venv is then created
+     * outside of it and copied into it by {@link #listGraalPyResources()}.
+     */
+    private boolean isVenvStaged() {
+        return externalDirectory == null && (packVirtualFileSystem || venvPruning != null);
+    }
+
     private static String normalizeEmpty(String s) {
         if (s == null) {
             return s;
@@ -49,6 +49,7 @@ import org.graalvm.python.embedding.tools.vfs.VFSUtils.PackagesChangedException;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 @Mojo(name = "process-graalpy-resources", defaultPhase = LifecyclePhase.PROCESS_RESOURCES,
                 requiresDependencyCollection = ResolutionScope.COMPILE_PLUS_RUNTIME,
@@ -83,6 +84,15 @@ public class InstallPackagesMojo extends AbstractGraalPyMojo {
         preExec(true);
 
         manageVenv();
+        if (precompileBytecode && externalDirectory != null) {
+            // the pycs are not checked against the sources at runtime, edits of the sources in the external directory would be ignored
+            getLog().warn("<precompileBytecode> is ignored when <externalDirectory> is set, the sources in the external directory are not precompiled");
+        } else if (precompileBytecode) {
+            compileBytecode();
+        }
+        if (venvPruning != null && externalDirectory != null) {
+            getLog().warn("<venvPruning> is ignored when <externalDirectory> is set, the virtual environment in the external directory is not pruned");
+        }
         listGraalPyResources();
         manageNativeImageConfig();
 
@@ -104,4 +114,15 @@ public class InstallPackagesMojo extends AbstractGraalPyMojo {
         }
     }
 
+    private void compileBytecode() throws MojoExecutionException {
+        Path venvDirectory = getVenvDirectory();
+        // the venv is not necessarily next to the sources, it may be staged outside of the output directory
+        Path srcDirectory = Path.of(project.getBuild().getOutputDirectory(), resourceDirectory, VFSUtils.VFS_SRC);
+        try {
+            VFSUtils.compileBytecode(List.of(venvDirectory, srcDirectory), createLauncher(), new MavenDelegateLog(getLog()));
+        } catch (IOException e) {
+            throw new MojoExecutionException(String.format("failed to precompile bytecode in %s", venvDirectory), e);
+        }
+    }
+
 }
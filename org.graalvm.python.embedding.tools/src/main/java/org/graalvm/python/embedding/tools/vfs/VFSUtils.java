@@ -40,16 +40,25 @@
  */
 package org.graalvm.python.embedding.tools.vfs;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -57,13 +66,17 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 import org.graalvm.python.embedding.tools.exec.BuildToolLog;
 import org.graalvm.python.embedding.tools.exec.BuildToolLog.CollectOutputLog;
@@ -175,6 +188,121 @@ public final class VFSUtils {
     public static final String VFS_ROOT = "org.graalvm.python.vfs";
     public static final String VFS_VENV = "venv";
     public static final String VFS_FILESLIST = "fileslist.txt";
+    public static final String VFS_FILESINDEX = "filesindex.bin";
+    public static final String VFS_FILESARCHIVE = "filesarchive.bin";
+    public static final String VFS_SRC = "src";
+
+    /*
+     * Python module which installs a meta-path finder resolving the imports of the modules in the
+     * src directory and in the virtual environment site-packages from an index generated at build
+     * time. It is placed in the site-packages together with a .pth file, so that it is installed by
+     * the site module at startup, and only if GraalPyResources enabled it in the environment. The
+     * variable is removed once read, so that it is not inherited by subprocesses. The first line of
+     * the index is the path from the site-packages to the virtual filesystem root, followed by lines
+     * with the module name and the path of its file relative to the root.
+     *
+     * Same as the path based finder, the finder resolves an indexed module only if its directory is
+     * on sys.path or on the parent package __path__ and no entry before it has the module. The
+     * index only contains names which are in one of the src and site-packages directories, so that
+     * these do not need to be checked. Other entries are checked by their cached path entry
+     * finders. If there is no such finder yet, the import falls back to the path based finder.
+     */
+    private static final String MODULES_FINDER = "_graalpy_vfs_finder";
+    private static final String MODULES_INDEX = "_graalpy_vfs_modules.txt";
+    private static final String MODULES_FINDER_ENABLE_VARIABLE = "GRAALPY_VFS_MODULE_INDEX";
+    private static final String MODULES_FINDER_PTH = "import os; os.environ.pop('" + MODULES_FINDER_ENABLE_VARIABLE + "', None) == 'true' and __import__('" + MODULES_FINDER +
+                    "').install()\n";
+    private static final String MODULES_FINDER_SOURCE = """
+                    # Generated by the GraalPy build tools.
+                    # Resolves imports of the modules in the virtual filesystem from the module index
+                    # generated at build time.
+                    import os
+                    import sys
+                    from importlib.machinery import PathFinder
+                    from importlib.util import spec_from_file_location
+
+                    INDEX_FILE = '%s'
+
+
+                    class VFSModuleFinder:
+                        def __init__(self, roots, modules):
+                            self.roots = roots
+                            self.modules = modules
+
+                        def find_spec(self, fullname, path=None, target=None):
+                            entry = self.modules.get(fullname)
+                            if entry is None:
+                                return None
+                            location, directory, is_package = entry
+                            for search_entry in (sys.path if path is None else path):
+                                if search_entry == directory:
+                                    break
+                                if search_entry in self.roots:
+                                    # indexed modules are only in one of the roots
+                                    continue
+                                # the same key as used by the path based finder
+                                finder = sys.path_importer_cache.get(search_entry or os.getcwd())
+                                if finder is None or finder.find_spec(fullname) is not None:
+                                    return None
+                            else:
+                                return None
+                            if is_package:
+                                return spec_from_file_location(fullname, location, submodule_search_locations=[os.path.dirname(location)])
+                            return spec_from_file_location(fullname, location)
+
+                        def invalidate_caches(self):
+                            pass
+
+
+                    def install():
+                        if any(isinstance(finder, VFSModuleFinder) for finder in sys.meta_path):
+                            return
+                        site_packages = os.path.normpath(os.path.dirname(__file__))
+                        modules = {}
+                        with open(os.path.join(site_packages, INDEX_FILE), encoding='utf-8') as f:
+                            root = os.path.normpath(os.path.join(site_packages, *f.readline().rstrip('\\n').split('/')))
+                            for line in f:
+                                name, path = line.rstrip('\\n').split('\\t')
+                                location = os.path.join(root, *path.split('/'))
+                                directory = os.path.dirname(location)
+                                is_package = path.endswith('/__init__.py')
+                                if is_package:
+                                    directory = os.path.dirname(directory)
+                                modules[name] = (location, directory, is_package)
+                        finder = VFSModuleFinder((os.path.join(root, '%s'), site_packages), modules)
+                        try:
+                            index = sys.meta_path.index(PathFinder)
+                        except ValueError:
+                            index = len(sys.meta_path)
+                        sys.meta_path.insert(index, finder)
+                    """.formatted(MODULES_INDEX, VFS_SRC);
+
+    /*
+     * Binary index of the virtual filesystem entries. Format has to match with
+     * VirtualFileSystemImpl.FilesIndex in the embedding module. All values are big-endian:
+     *
+     * int magic, int version, int entries count, followed by the entries in the same order as in
+     * fileslist.txt, so that a parent directory always precedes its children:
+     *
+     * UTF name (file name, or the full resource path of the root), int parent index (-1 for the
+     * root), byte flags, long size (only if FILESINDEX_FLAG_SIZE is set), long offset of the file
+     * data in the files archive (only if FILESINDEX_FLAG_PACKED is set), 32 bytes SHA-256 digest of
+     * the file data (only if FILESINDEX_FLAG_HASH is set)
+     *
+     * The entries are followed by the groups of files which have to be extracted together, because
+     * they belong to the same wheel: int FILESINDEX_GROUPS_MAGIC, int groups count, and for each
+     * group int index of the wheel RECORD file, int members count and the int indices of the
+     * members. Only files which exist in the virtual filesystem are members.
+     *
+     * The files archive is a plain concatenation of the packed files data.
+     */
+    private static final int FILESINDEX_MAGIC = 0x47505649;
+    private static final int FILESINDEX_VERSION = 1;
+    private static final byte FILESINDEX_FLAG_DIR = 0x1;
+    private static final byte FILESINDEX_FLAG_SIZE = 0x2;
+    private static final byte FILESINDEX_FLAG_PACKED = 0x4;
+    private static final byte FILESINDEX_FLAG_HASH = 0x8;
+    private static final int FILESINDEX_GROUPS_MAGIC = 0x47505647;
 
     public static final String GRAALPY_GROUP_ID = "org.graalvm.python";
 
@@ -200,9 +328,23 @@ public final class VFSUtils {
         writeNativeImageConfig(metaInfRoot, pluginId, VFS_ROOT);
     }
 
+    /*
+     * Tells the native image feature of the embedding module to store the index of a virtual
+     * filesystem in a custom resource directory in the image heap. The property name is unique per
+     * resource directory, so that the configurations of multiple libraries do not override each
+     * other.
+     */
+    private static final String NATIVE_IMAGE_PROPERTIES = "Args = -Dorg.graalvm.python.vfs.imageHeapResourceDirectory.$key=$vfs\n";
+
     public static void writeNativeImageConfig(Path metaInfRoot, String pluginId, String vfsRoot) throws IOException {
         Path p = metaInfRoot.resolve(Path.of("native-image", GRAALPY_GROUP_ID, pluginId));
         write(p.resolve("resource-config.json"), NATIVE_IMAGE_RESOURCES_CONFIG.replace("$vfs", vfsRoot));
+        Path properties = p.resolve("native-image.properties");
+        if (!VFS_ROOT.equals(vfsRoot)) {
+            write(properties, NATIVE_IMAGE_PROPERTIES.replace("$key", vfsRoot.replace('/', '.')).replace("$vfs", vfsRoot));
+        } else {
+            Files.deleteIfExists(properties);
+        }
     }
 
     private static void write(Path config, String txt) throws IOException {
@@ -222,10 +364,94 @@ public final class VFSUtils {
     }
 
     public static void generateVFSFilesList(Path resourcesRoot, Path vfs) throws IOException {
+        generateVFSFilesList(resourcesRoot, vfs, false);
+    }
+
+    public static void generateVFSFilesList(Path resourcesRoot, Path vfs, boolean packFiles) throws IOException {
+        generateVFSFilesList(resourcesRoot, vfs, packFiles, false);
+    }
+
+    /**
+     * Generates the files list and the binary index of the virtual filesystem. If
+     * {@code packFiles} is {@code true}, the data of all files is additionally packed into a
+     * single archive, from which the files are then read at runtime. The packed files are then
+     * removed from {@code vfs}, so that they are not packaged twice, which is why {@code vfs} has
+     * to be a copy in the build output directory in that case. If {@code modulesIndex} is
+     * {@code true}, the module index is generated into the virtual environment first, see
+     * {@link #generateVFSModulesIndex}, otherwise a module index from a previous build is removed.
+     */
+    public static void generateVFSFilesList(Path resourcesRoot, Path vfs, boolean packFiles, boolean modulesIndex) throws IOException {
+        Path root = resourcesRoot != null ? resourcesRoot : vfs.toAbsolutePath().getParent();
+        if (modulesIndex) {
+            generateVFSModulesIndex(root, vfs, List.of(vfs), null);
+        } else {
+            deleteVFSModulesIndex(vfs);
+        }
         TreeSet<String> entriesSorted = new TreeSet<>();
         generateVFSFilesList(resourcesRoot, vfs, entriesSorted, null);
         Path filesList = vfs.resolve(VFS_FILESLIST);
         Files.write(filesList, entriesSorted);
+        Path filesIndex = vfs.resolve(VFS_FILESINDEX);
+        Path filesArchive = vfs.resolve(VFS_FILESARCHIVE);
+        if (!packFiles) {
+            // remove a stale archive from a previous build
+            Files.deleteIfExists(filesArchive);
+        }
+        generateVFSFilesIndex(filesIndex, entriesSorted, List.of(root), packFiles ? filesArchive : null);
+        if (packFiles) {
+            try (var s = Files.walk(vfs)) {
+                for (Path p : (Iterable<Path>) s::iterator) {
+                    if (Files.isRegularFile(p) && !p.equals(filesList) && !p.equals(filesIndex) && !p.equals(filesArchive)) {
+                        Files.delete(p);
+                    }
+                }
+            }
+            deleteEmptyDirectories(vfs);
+        }
+    }
+
+    /**
+     * Copies a virtual environment created outside of the build output directory into the
+     * directory from which it is packaged, e.g., because the packaged copy is modified by packing
+     * the virtual filesystem. Only new and changed files are copied, files which are no longer in
+     * the virtual environment are removed from the copy.
+     */
+    public static void copyVenv(Path venvDirectory, Path targetDirectory) throws IOException {
+        syncDirectory(venvDirectory, targetDirectory, (p) -> false);
+    }
+
+    /**
+     * Makes {@code target} contain the files of {@code source} which are not excluded by the
+     * filter, which gets the paths relative to {@code source}. Files are compared by size and
+     * modification time, which is preserved by the copy.
+     */
+    private static void syncDirectory(Path source, Path target, Predicate<Path> exclude) throws IOException {
+        Set<Path> kept = new HashSet<>();
+        try (var s = Files.walk(source)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                Path relative = source.relativize(p);
+                if (!Files.isRegularFile(p) || exclude.test(relative)) {
+                    continue;
+                }
+                kept.add(relative);
+                Path copy = target.resolve(relative);
+                if (Files.isRegularFile(copy) && Files.size(copy) == Files.size(p) && Files.getLastModifiedTime(copy).equals(Files.getLastModifiedTime(p))) {
+                    continue;
+                }
+                createParentDirectories(copy);
+                Files.copy(p, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+        if (Files.isDirectory(target)) {
+            try (var s = Files.walk(target)) {
+                for (Path p : (Iterable<Path>) s::iterator) {
+                    if (Files.isRegularFile(p) && !kept.contains(target.relativize(p))) {
+                        Files.delete(p);
+                    }
+                }
+            }
+            deleteEmptyDirectories(target);
+        }
     }
 
     public static void generateVFSFilesList(Path vfs) throws IOException {
@@ -253,9 +479,11 @@ public final class VFSUtils {
             String resRootPath = makeDirPath(resourcesRoot);
             rootEndIdx = resRootPath.length() - 1;
         }
+        Path filesIndex = vfs.resolve(VFS_FILESINDEX);
+        Path filesArchive = vfs.resolve(VFS_FILESARCHIVE);
         try (var s = Files.walk(vfs)) {
             s.forEach(p -> {
-                if (!shouldPathBeExcluded(p)) {
+                if (!shouldPathBeExcluded(p) && !p.equals(filesIndex) && !p.equals(filesArchive)) {
                 String entry = null;
                 if (Files.isDirectory(p)) {
                     String dirPath = makeDirPath(p.toAbsolutePath());
@@ -274,6 +502,371 @@ public final class VFSUtils {
         }
     }
 
+    /**
+     * Writes the binary index of the virtual filesystem, which is used at runtime instead of
+     * parsing the files list. The entries are expected in the same format as in the files list,
+     * i.e., absolute resource paths with directories ending with '/'. The files are looked up in
+     * the given resources roots to determine their sizes.
+     */
+    public static void generateVFSFilesIndex(Path filesIndex, Set<String> entries, List<Path> resourcesRoots) throws IOException {
+        generateVFSFilesIndex(filesIndex, entries, resourcesRoots, null);
+    }
+
+    /**
+     * Writes the binary index of the virtual filesystem and if {@code filesArchive} is not
+     * {@code null}, also packs the data of all files found in the resources roots into that
+     * archive. The index then contains the offsets of the files data in the archive.
+     */
+    public static void generateVFSFilesIndex(Path filesIndex, Set<String> entries, List<Path> resourcesRoots, Path filesArchive) throws IOException {
+        TreeSet<String> entriesSorted = new TreeSet<>(entries);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 digest is not available", e);
+        }
+        Map<String, Integer> dirIndices = new HashMap<>();
+        Map<String, Integer> fileIndices = new HashMap<>();
+        Map<Integer, Path> recordFiles = new LinkedHashMap<>();
+        Map<Integer, String> recordEntries = new HashMap<>();
+        Set<Integer> rootIndices = new HashSet<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(filesIndex)));
+                        OutputStream archive = filesArchive != null ? new BufferedOutputStream(Files.newOutputStream(filesArchive)) : null) {
+            long archiveOffset = 0;
+            out.writeInt(FILESINDEX_MAGIC);
+            out.writeInt(FILESINDEX_VERSION);
+            out.writeInt(entriesSorted.size());
+            int index = 0;
+            for (String entry : entriesSorted) {
+                boolean isDir = entry.endsWith("/");
+                String path = isDir ? entry.substring(0, entry.length() - 1) : entry;
+                int sepIdx = path.lastIndexOf('/');
+                Integer parent = sepIdx >= 0 ? dirIndices.get(path.substring(0, sepIdx + 1)) : null;
+                String name = parent != null ? path.substring(sepIdx + 1) : entry;
+                Path file = null;
+                // the files list is (re)generated after the listing, so its size is not known here
+                if (!isDir && !(parent != null && rootIndices.contains(parent) && VFS_FILESLIST.equals(name))) {
+                    file = findResourceFile(entry, resourcesRoots);
+                }
+                out.writeUTF(name);
+                out.writeInt(parent != null ? parent : -1);
+                out.writeByte((isDir ? FILESINDEX_FLAG_DIR : 0) | (file != null ? FILESINDEX_FLAG_SIZE | FILESINDEX_FLAG_HASH : 0) | (file != null && archive != null ? FILESINDEX_FLAG_PACKED : 0));
+                if (file != null) {
+                    long size = Files.size(file);
+                    digest.reset();
+                    long copied;
+                    try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+                        copied = in.transferTo(archive != null ? archive : OutputStream.nullOutputStream());
+                    }
+                    if (copied != size) {
+                        throw new IOException(String.format("file %s changed while indexing it", file));
+                    }
+                    out.writeLong(size);
+                    if (archive != null) {
+                        out.writeLong(archiveOffset);
+                        archiveOffset += size;
+                    }
+                    out.write(digest.digest());
+                }
+                if (isDir) {
+                    dirIndices.put(entry, index);
+                } else {
+                    fileIndices.put(entry, index);
+                    if (file != null && "RECORD".equals(name) && sepIdx > 0 && path.substring(0, sepIdx).endsWith(".dist-info")) {
+                        recordFiles.put(index, file);
+                        recordEntries.put(index, entry);
+                    }
+                }
+                if (parent == null) {
+                    rootIndices.add(index);
+                }
+                index++;
+            }
+            writeExtractionGroups(out, fileIndices, recordFiles, recordEntries);
+        } catch (IOException e) {
+            throw new IOException(String.format("failed to write %s", filesIndex), e);
+        }
+    }
+
+    /**
+     * Writes the groups of files listed in the wheel RECORD files, which are extracted together at
+     * runtime, so that the runtime does not have to parse the RECORD files.
+     */
+    private static void writeExtractionGroups(DataOutputStream out, Map<String, Integer> fileIndices, Map<Integer, Path> recordFiles, Map<Integer, String> recordEntries) throws IOException {
+        out.writeInt(FILESINDEX_GROUPS_MAGIC);
+        out.writeInt(recordFiles.size());
+        for (Map.Entry<Integer, Path> record : recordFiles.entrySet()) {
+            String recordEntry = recordEntries.get(record.getKey());
+            // the paths in RECORD are relative to the parent of the .dist-info directory
+            String distInfo = recordEntry.substring(0, recordEntry.lastIndexOf('/'));
+            String baseDir = distInfo.substring(0, distInfo.lastIndexOf('/') + 1);
+            List<Integer> members = new ArrayList<>();
+            for (String line : Files.readAllLines(record.getValue(), StandardCharsets.UTF_8)) {
+                int commaIndex = line.indexOf(',');
+                if (commaIndex < 0) {
+                    continue;
+                }
+                Integer member = fileIndices.get(resolveResourcePath(baseDir, line.substring(0, commaIndex)));
+                if (member != null) {
+                    members.add(member);
+                }
+            }
+            out.writeInt(record.getKey());
+            out.writeInt(members.size());
+            for (int member : members) {
+                out.writeInt(member);
+            }
+        }
+    }
+
+    /**
+     * Resolves a relative path with '/' separators against a resource directory ending with '/'
+     * and removes any '.' and '..' components.
+     */
+    private static String resolveResourcePath(String baseDir, String relative) {
+        ArrayList<String> components = new ArrayList<>();
+        for (String component : (baseDir + relative).split("/")) {
+            if (component.equals("..")) {
+                if (!components.isEmpty()) {
+                    components.remove(components.size() - 1);
+                }
+            } else if (!component.isEmpty() && !component.equals(".")) {
+                components.add(component);
+            }
+        }
+        return "/" + String.join("/", components);
+    }
+
+    /**
+     * Generates an index of the Python modules in the {@code src} directories and in the virtual
+     * environment site-packages of the given virtual filesystem directories, together with a Python
+     * module which installs a meta-path finder resolving imports from that index in a single
+     * lookup. The files are written into the site-packages directory below {@code outputVfs}, where
+     * the site module finds them at startup. Nothing is generated if there is no virtual
+     * environment.
+     *
+     * @param resourcesRoot the resources root containing {@code outputVfs}
+     * @param outputVfs the virtual filesystem directory the files are written to
+     * @param vfsDirs the virtual filesystem directories with the {@code src} and {@code venv}
+     *            directories
+     * @param ret if not {@code null}, the files list entries of the written files are added to it
+     */
+    public static void generateVFSModulesIndex(Path resourcesRoot, Path outputVfs, List<Path> vfsDirs, Set<String> ret) throws IOException {
+        String sitePackages = null;
+        for (Path vfs : vfsDirs) {
+            sitePackages = findSitePackages(vfs.resolve(VFS_VENV));
+            if (sitePackages != null) {
+                break;
+            }
+        }
+        if (sitePackages == null) {
+            return;
+        }
+        String sitePackagesDir = sitePackages;
+        Map<String, String> sources = new TreeMap<>();
+        collectModules(vfsDirs.stream().map((vfs) -> vfs.resolve(VFS_SRC)).toList(), "", VFS_SRC + "/", sources);
+        Map<String, String> installed = new TreeMap<>();
+        collectModules(vfsDirs.stream().map((vfs) -> vfs.resolve(sitePackagesDir)).toList(), "", sitePackagesDir + "/", installed);
+        // names found in both directories are left to the regular finder, which knows their order
+        // on sys.path
+        Map<String, String> modules = new TreeMap<>();
+        addUniqueModules(sources, installed, modules);
+        addUniqueModules(installed, sources, modules);
+        modules.remove(MODULES_FINDER);
+
+        Path outputDir = outputVfs.resolve(sitePackages);
+        Files.createDirectories(outputDir);
+        StringBuilder index = new StringBuilder();
+        index.append("../".repeat(sitePackages.split("/").length - 1)).append("..\n");
+        for (Map.Entry<String, String> module : modules.entrySet()) {
+            index.append(module.getKey()).append('\t').append(module.getValue()).append('\n');
+        }
+        Path[] files = {outputDir.resolve(MODULES_INDEX), outputDir.resolve(MODULES_FINDER + ".py"), outputDir.resolve(MODULES_FINDER + ".pth")};
+        Files.writeString(files[0], index, StandardCharsets.UTF_8);
+        Files.writeString(files[1], MODULES_FINDER_SOURCE, StandardCharsets.UTF_8);
+        Files.writeString(files[2], MODULES_FINDER_PTH, StandardCharsets.UTF_8);
+        if (ret != null) {
+            String rootPath = makeDirPath(resourcesRoot.toAbsolutePath());
+            for (Path file : files) {
+                ret.add(normalizeResourcePath(file.toAbsolutePath().toString().substring(rootPath.length() - 1)));
+            }
+        }
+    }
+
+    /**
+     * Removes the files generated by {@link #generateVFSModulesIndex} from the site-packages
+     * directory below {@code outputVfs}, if there are any.
+     */
+    public static void deleteVFSModulesIndex(Path outputVfs) throws IOException {
+        String sitePackages = findSitePackages(outputVfs.resolve(VFS_VENV));
+        if (sitePackages != null) {
+            Path outputDir = outputVfs.resolve(sitePackages);
+            Files.deleteIfExists(outputDir.resolve(MODULES_INDEX));
+            Files.deleteIfExists(outputDir.resolve(MODULES_FINDER + ".py"));
+            Files.deleteIfExists(outputDir.resolve(MODULES_FINDER + ".pth"));
+        }
+    }
+
+    /**
+     * Returns the path of the site-packages directory relative to the virtual filesystem root with
+     * '/' separators, or {@code null} if the virtual environment does not exist.
+     */
+    private static String findSitePackages(Path venv) throws IOException {
+        if (Files.isDirectory(venv.resolve("Lib").resolve("site-packages"))) {
+            return VFS_VENV + "/Lib/site-packages";
+        }
+        Path lib = venv.resolve("lib");
+        if (Files.isDirectory(lib)) {
+            try (var s = Files.list(lib)) {
+                for (Path p : s.sorted().toList()) {
+                    if (p.getFileName().toString().startsWith("python") && Files.isDirectory(p.resolve("site-packages"))) {
+                        return VFS_VENV + "/lib/" + p.getFileName() + "/site-packages";
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void addUniqueModules(Map<String, String> found, Map<String, String> other, Map<String, String> modules) {
+        for (Map.Entry<String, String> module : found.entrySet()) {
+            if (module.getValue() != null && !other.containsKey(module.getKey())) {
+                modules.put(module.getKey(), module.getValue());
+            }
+        }
+    }
+
+    private static final int MODULE_SOURCE = 0x1;
+    private static final int MODULE_BYTECODE = 0x2;
+    private static final int MODULE_EXTENSION = 0x4;
+    private static final int PACKAGE_SOURCE = 0x8;
+    private static final int PACKAGE_OTHER = 0x10;
+
+    /**
+     * Collects the source modules and regular packages in the given directories, which are merged
+     * in the virtual filesystem, and recursively in their packages. Each name is resolved the same
+     * way as by the Python path based finder: a regular package takes precedence over a module,
+     * and an extension module over a source module, which takes precedence over a bytecode file.
+     * Names which do not resolve to a source module or to a package with an {@code __init__.py}
+     * are added with a {@code null} path. Namespace packages are not indexed and left to the
+     * regular finder.
+     */
+    private static void collectModules(List<Path> dirs, String packagePrefix, String relativeDir, Map<String, String> modules) throws IOException {
+        Map<String, Integer> found = new TreeMap<>();
+        for (Path dir : dirs) {
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (var s = Files.list(dir)) {
+                for (Path p : s.toList()) {
+                    String fileName = p.getFileName().toString();
+                    if (shouldPathBeExcluded(p)) {
+                        continue;
+                    }
+                    if (Files.isDirectory(p)) {
+                        int kind = getPackageKind(p);
+                        if (kind != 0 && isIdentifier(fileName)) {
+                            found.merge(fileName, kind, (a, b) -> a | b);
+                        }
+                        continue;
+                    }
+                    int dot = fileName.indexOf('.');
+                    String name = dot < 0 ? fileName : fileName.substring(0, dot);
+                    if (!isIdentifier(name) || name.equals("__init__")) {
+                        continue;
+                    }
+                    int kind = getModuleKind(fileName);
+                    if (kind != 0) {
+                        found.merge(name, kind, (a, b) -> a | b);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : found.entrySet()) {
+            String name = entry.getKey();
+            int kind = entry.getValue();
+            if ((kind & PACKAGE_OTHER) != 0) {
+                modules.put(packagePrefix + name, null);
+            } else if ((kind & PACKAGE_SOURCE) != 0) {
+                modules.put(packagePrefix + name, relativeDir + name + "/__init__.py");
+                collectModules(dirs.stream().map((dir) -> dir.resolve(name)).toList(), packagePrefix + name + ".", relativeDir + name + "/", modules);
+            } else if ((kind & MODULE_EXTENSION) != 0) {
+                modules.put(packagePrefix + name, null);
+            } else if ((kind & MODULE_SOURCE) != 0) {
+                modules.put(packagePrefix + name, relativeDir + name + ".py");
+            } else {
+                modules.put(packagePrefix + name, null);
+            }
+        }
+    }
+
+    private static int getModuleKind(String fileName) {
+        int dot = fileName.indexOf('.');
+        if (dot < 0) {
+            return 0;
+        }
+        if (fileName.endsWith(".so") || fileName.endsWith(".pyd")) {
+            return MODULE_EXTENSION;
+        }
+        if (dot != fileName.lastIndexOf('.')) {
+            return 0;
+        }
+        return switch (fileName.substring(dot)) {
+            case ".py" -> MODULE_SOURCE;
+            case ".pyc" -> MODULE_BYTECODE;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Returns {@link #PACKAGE_SOURCE} if the directory is a regular package with an
+     * {@code __init__.py} the path based finder would load, {@link #PACKAGE_OTHER} if it is a
+     * regular package with another {@code __init__} file, and {@code 0} otherwise.
+     */
+    private static int getPackageKind(Path dir) throws IOException {
+        int kind = 0;
+        try (var s = Files.list(dir)) {
+            for (Path p : s.toList()) {
+                String fileName = p.getFileName().toString();
+                if (fileName.startsWith("__init__.") && Files.isRegularFile(p)) {
+                    kind |= getModuleKind(fileName);
+                }
+            }
+        }
+        if ((kind & MODULE_EXTENSION) != 0) {
+            return PACKAGE_OTHER;
+        } else if ((kind & MODULE_SOURCE) != 0) {
+            return PACKAGE_SOURCE;
+        } else if ((kind & MODULE_BYTECODE) != 0) {
+            return PACKAGE_OTHER;
+        }
+        return 0;
+    }
+
+    private static boolean isIdentifier(String name) {
+        if (name.isEmpty() || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Path findResourceFile(String entry, List<Path> resourcesRoots) {
+        String relative = entry.substring(1);
+        for (Path root : resourcesRoots) {
+            Path file = root.resolve(relative);
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
     private static boolean shouldPathBeExcluded(Path path) {
         for (String glob : DEFAULT_EXCLUDES) {
             var matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
@@ -589,12 +1182,404 @@ public final class VFSUtils {
         if (installed) {
             venvContents.write(pluginPackages);
             installedPackages.freeze(log);
+            Files.deleteIfExists(venvDirectory.resolve(BYTECODE_STAMP_FILE_NAME));
         }
         if (lockFile == null) {
             missingLockFileWarning(venvDirectory, pluginPackages, missingLockFileWarning, log);
         }
     }
 
+    /*
+     * Compiles the sources in the directories given after the first argument. Hash based pycs,
+     * which are not checked against the sources, are generated because the virtual filesystem does
+     * not preserve the files modification times and GraalPyResources sets CheckHashPycsMode to
+     * "never". A pyc which already holds the hash of its source is not rewritten, so that the
+     * unchanged pycs keep their modification times, all other pycs, like the timestamp based ones
+     * written by pip, are replaced. If the first argument is not "-", the pycs are written into
+     * that directory under the relative paths they would have next to the sources and the pycs of
+     * removed sources are deleted from it. Sources which cannot be compiled, like test data in some
+     * packages, are skipped silently.
+     */
+    private static final String COMPILE_BYTECODE_SCRIPT = """
+                    import importlib.util, os, py_compile, sys
+
+                    def compile(source, cfile):
+                        with open(source, 'rb') as f:
+                            header = importlib.util.MAGIC_NUMBER + b'\\x01\\x00\\x00\\x00' + importlib.util.source_hash(f.read())
+                        try:
+                            with open(cfile, 'rb') as f:
+                                if f.read(len(header)) == header:
+                                    return True
+                        except OSError:
+                            pass
+                        try:
+                            py_compile.compile(source, cfile, doraise=True, invalidation_mode=py_compile.PycInvalidationMode.UNCHECKED_HASH)
+                            return True
+                        except Exception:
+                            return False
+
+                    output = sys.argv[1] if sys.argv[1] != '-' else None
+                    compiled = set()
+                    for source_dir in sys.argv[2:]:
+                        for root, dirs, files in os.walk(source_dir):
+                            dirs[:] = [d for d in dirs if d != '__pycache__']
+                            for name in files:
+                                if name.endswith('.py'):
+                                    source = os.path.join(root, name)
+                                    cfile = importlib.util.cache_from_source(source)
+                                    if output:
+                                        if os.path.exists(cfile):
+                                            # the pyc next to the source ends up in the same resources
+                                            continue
+                                        cfile = os.path.join(output, os.path.relpath(cfile, source_dir))
+                                    if compile(source, cfile):
+                                        compiled.add(os.path.normcase(cfile))
+                    if output:
+                        for root, dirs, files in os.walk(output):
+                            if os.path.basename(root) == '__pycache__':
+                                for name in files:
+                                    if os.path.normcase(os.path.join(root, name)) not in compiled:
+                                        os.remove(os.path.join(root, name))
+                    """;
+
+    /**
+     * Written into a virtual environment after its sources were precompiled and deleted by
+     * {@link #createVenv} whenever packages are installed or removed, so that an unchanged virtual
+     * environment is not compiled again.
+     */
+    private static final String BYTECODE_STAMP_FILE_NAME = "bytecode.stamp";
+
+    /**
+     * Precompiles the Python sources in the given directories into bytecode in the
+     * {@code __pycache__} directories next to them, so that contexts load the bytecode instead of
+     * parsing and compiling the sources. The bytecode is compiled by the GraalPy launcher, which
+     * has to be the same GraalPy version as the one used at runtime. Directories that do not exist
+     * are ignored, as are virtual environments which were not changed by {@link #createVenv} since
+     * they were precompiled the last time.
+     */
+    public static void compileBytecode(List<Path> directories, Launcher launcher, BuildToolLog log) throws IOException {
+        Objects.requireNonNull(directories);
+        Objects.requireNonNull(launcher);
+        Objects.requireNonNull(log);
+        List<Path> sourceDirectories = new ArrayList<>();
+        List<Path> venvDirectories = new ArrayList<>();
+        for (Path dir : directories) {
+            if (Files.isRegularFile(dir.resolve(VenvContents.CONTENTS_FILE_NAME))) {
+                if (Files.exists(dir.resolve(BYTECODE_STAMP_FILE_NAME))) {
+                    info(log, "Python bytecode in %s is up to date, skipping precompilation", dir);
+                    continue;
+                }
+                venvDirectories.add(dir);
+            }
+            sourceDirectories.add(dir);
+        }
+        runCompileBytecode(sourceDirectories, null, launcher, log);
+        for (Path venvDirectory : venvDirectories) {
+            Files.writeString(venvDirectory.resolve(BYTECODE_STAMP_FILE_NAME), "");
+        }
+    }
+
+    /**
+     * Precompiles the Python sources in the given directories into bytecode in the output
+     * directory, under the same relative paths as the {@code __pycache__} directories next to the
+     * sources would have. This is used when the sources are copied into the resources by the build
+     * tool, so that the source directories are not modified. Sources that already have bytecode
+     * next to them are skipped and bytecode of removed sources is deleted from the output
+     * directory.
+     */
+    public static void compileBytecode(List<Path> sourceDirectories, Path outputDirectory, Launcher launcher, BuildToolLog log) throws IOException {
+        Objects.requireNonNull(sourceDirectories);
+        Objects.requireNonNull(outputDirectory);
+        Objects.requireNonNull(launcher);
+        Objects.requireNonNull(log);
+        runCompileBytecode(sourceDirectories, outputDirectory, launcher, log);
+    }
+
+    private static void runCompileBytecode(List<Path> sourceDirectories, Path outputDirectory, Launcher launcher, BuildToolLog log) throws IOException {
+        List<String> dirs = new ArrayList<>();
+        for (Path dir : sourceDirectories) {
+            if (Files.isDirectory(dir)) {
+                dirs.add(dir.toAbsolutePath().toString());
+            }
+        }
+        if (dirs.isEmpty()) {
+            return;
+        }
+        if (outputDirectory != null) {
+            info(log, "Precompiling Python bytecode of %s into %s", String.join(", ", dirs), outputDirectory);
+        } else {
+            info(log, "Precompiling Python bytecode in %s", String.join(", ", dirs));
+        }
+        File script;
+        try {
+            script = File.createTempFile("compile_bytecode", ".py");
+        } catch (IOException e) {
+            throw new IOException("failed to create tmp script", e);
+        }
+        try {
+            Files.writeString(script.toPath(), COMPILE_BYTECODE_SCRIPT);
+            List<String> args = new ArrayList<>(List.of("-I", script.getAbsolutePath(), outputDirectory != null ? outputDirectory.toAbsolutePath().toString() : "-"));
+            args.addAll(dirs);
+            generateLaunchers(launcher, log);
+            runLauncher(launcher.launcherPath.toString(), log, args.toArray(new String[0]));
+        } finally {
+            Files.deleteIfExists(script.toPath());
+        }
+    }
+
+    /**
+     * Summary of the files removed from a virtual environment by
+     * {@link #pruneVenv(Path, Path, List, List, Path, BuildToolLog)}.
+     */
+    public record PruneResult(int removedFiles, long removedBytes, int keptFiles, long keptBytes) {
+    }
+
+    /**
+     * Copies the virtual environment into the directory from which it is packaged into the virtual
+     * filesystem, without the files which are not needed at runtime, so that the files list has to
+     * be generated afterwards. The include and exclude rules are glob patterns matched against the
+     * paths relative to the virtual environment directory, e.g. {@code **}{@code /tests/**} or
+     * {@code **}{@code /*.pyi}. Files matching an exclude pattern are left out, unless they match
+     * an include pattern. If an access profile written by
+     * {@code VirtualFileSystem.Builder#accessProfile(Path)} is given, also the files which are not
+     * listed in it are left out. A Python source and its bytecode in {@code __pycache__} are kept
+     * if either of them was accessed.
+     * <p>
+     * The venv configuration, the launchers and the package metadata are never left out. Neither
+     * are, when pruning by the access profile, native libraries, which are extracted at runtime
+     * instead of being accessed through the virtual filesystem, and the files other than Python
+     * modules from the wheels which contain native libraries, because the runtime may extract
+     * them together. The virtual environment itself is not modified, so that a profile taken with
+     * the pruned copy does not lose the files it did not record.
+     */
+    public static PruneResult pruneVenv(Path venvDirectory, Path targetDirectory, List<String> includes, List<String> excludes, Path accessProfile, BuildToolLog log)
+                    throws IOException {
+        Objects.requireNonNull(venvDirectory);
+        Objects.requireNonNull(targetDirectory);
+        Objects.requireNonNull(log);
+        if (!Files.isDirectory(venvDirectory)) {
+            return new PruneResult(0, 0, 0, 0);
+        }
+        List<PathMatcher> includeMatchers = toPathMatchers(includes);
+        List<PathMatcher> excludeMatchers = toPathMatchers(excludes);
+        Set<String> referenced = accessProfile != null ? readAccessProfile(accessProfile) : null;
+        if (excludeMatchers.isEmpty() && referenced == null) {
+            syncDirectory(venvDirectory, targetDirectory, (p) -> false);
+            return new PruneResult(0, 0, 0, 0);
+        }
+        Set<String> extractedTogether = referenced != null ? findExtractedTogether(venvDirectory) : Set.of();
+
+        Set<Path> toRemove = new HashSet<>();
+        // removed bytes per top level package, for the report
+        Map<String, Long> removedPerPackage = new TreeMap<>();
+        int keptFiles = 0;
+        long keptBytes = 0;
+        long removedBytes = 0;
+        try (var s = Files.walk(venvDirectory)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                if (!Files.isRegularFile(p)) {
+                    continue;
+                }
+                Path relative = venvDirectory.relativize(p);
+                long size = Files.size(p);
+                if (shouldPrune(relative, includeMatchers, excludeMatchers, referenced, extractedTogether)) {
+                    toRemove.add(relative);
+                    removedBytes += size;
+                    removedPerPackage.merge(getPruneReportName(relative), size, Long::sum);
+                } else {
+                    keptFiles++;
+                    keptBytes += size;
+                }
+            }
+        }
+        syncDirectory(venvDirectory, targetDirectory, toRemove::contains);
+
+        PruneResult result = new PruneResult(toRemove.size(), removedBytes, keptFiles, keptBytes);
+        info(log, "Pruned %d of %d files (%s of %s) from the virtual environment %s", result.removedFiles(), result.removedFiles() + result.keptFiles(),
+                        formatSize(result.removedBytes()), formatSize(result.removedBytes() + result.keptBytes()), venvDirectory);
+        removedPerPackage.entrySet().stream().sorted(Map.Entry.<String, Long> comparingByValue().reversed()).limit(PRUNE_REPORT_ENTRIES).forEach(
+                        (e) -> info(log, "  %10s  %s", formatSize(e.getValue()), e.getKey()));
+        return result;
+    }
+
+    private static final int PRUNE_REPORT_ENTRIES = 20;
+
+    private static List<PathMatcher> toPathMatchers(List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (globs != null) {
+            for (String glob : globs) {
+                if (glob != null && !glob.isBlank()) {
+                    matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.trim()));
+                }
+            }
+        }
+        return matchers;
+    }
+
+    private static boolean matchesAny(Path path, List<PathMatcher> matchers) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean shouldPrune(Path relative, List<PathMatcher> includes, List<PathMatcher> excludes, Set<String> referenced, Set<String> extractedTogether) {
+        String first = relative.getName(0).toString();
+        String fileName = relative.getFileName().toString();
+        if (relative.getNameCount() == 1 || first.equals("bin") || first.equals("Scripts") || fileName.endsWith(".pth")) {
+            // venv configuration, launchers and path configuration files
+            return false;
+        }
+        for (Path name : relative) {
+            if (name.toString().endsWith(".dist-info")) {
+                // package metadata, also used to extract native libraries together
+                return false;
+            }
+        }
+        if (matchesAny(relative, includes)) {
+            return false;
+        }
+        if (matchesAny(relative, excludes)) {
+            return true;
+        }
+        if (referenced != null) {
+            String path = normalizeResourcePath(relative.toString());
+            if (EXTRACT_REGEX.matcher(path).matches() || extractedTogether.contains(path)) {
+                // never accessed through the virtual filesystem, so missing in the profile
+                return false;
+            }
+            String module = getModuleKey(path);
+            return !referenced.contains(path) && (module == null || !referenced.contains(module));
+        }
+        return false;
+    }
+
+    /**
+     * Matches the files which the virtual filesystem extracts by default, same as the default
+     * extract filter of {@code VirtualFileSystem.Builder}.
+     */
+    private static final Pattern EXTRACT_REGEX = Pattern.compile(".*(\\.(so|dylib|pyd|dll|ttf)$|\\.so\\..*)");
+
+    /**
+     * Returns the paths relative to the virtual environment directory of the files listed in the
+     * wheel RECORD files which list any file matching {@link #EXTRACT_REGEX}, except for Python
+     * modules.
+     */
+    private static Set<String> findExtractedTogether(Path venvDirectory) throws IOException {
+        Set<String> result = new HashSet<>();
+        try (var s = Files.walk(venvDirectory)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                Path distInfo = p.getParent();
+                if (!p.getFileName().toString().equals("RECORD") || distInfo == null || !distInfo.getFileName().toString().endsWith(".dist-info") || !Files.isRegularFile(p)) {
+                    continue;
+                }
+                // the paths in RECORD are relative to the parent of the .dist-info directory
+                String baseDir = normalizeResourcePath(venvDirectory.relativize(distInfo.getParent()).toString());
+                baseDir = baseDir.isEmpty() ? "" : baseDir + "/";
+                List<String> members = new ArrayList<>();
+                boolean extracted = false;
+                for (String line : Files.readAllLines(p, StandardCharsets.UTF_8)) {
+                    int commaIndex = line.indexOf(',');
+                    if (commaIndex < 0) {
+                        continue;
+                    }
+                    String member = resolveResourcePath(baseDir, line.substring(0, commaIndex)).substring(1);
+                    extracted |= EXTRACT_REGEX.matcher(member).matches();
+                    if (getModuleKey(member) == null) {
+                        members.add(member);
+                    }
+                }
+                if (extracted) {
+                    result.addAll(members);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a key shared by a Python source and its bytecode in {@code __pycache__}, or
+     * {@code null} for other files.
+     */
+    private static String getModuleKey(String path) {
+        int slash = path.lastIndexOf('/');
+        String dir = path.substring(0, slash + 1);
+        String name = path.substring(slash + 1);
+        if (name.endsWith(".py")) {
+            return dir + name.substring(0, name.length() - ".py".length()) + ":module";
+        }
+        if (name.endsWith(".pyc") && dir.endsWith("/__pycache__/")) {
+            int dot = name.indexOf('.');
+            return dir.substring(0, dir.length() - "__pycache__/".length()) + name.substring(0, dot) + ":module";
+        }
+        return null;
+    }
+
+    /**
+     * Reads the resource paths of the files within the virtual environment from an access
+     * profile, as paths relative to the virtual environment directory. The resource path is the
+     * last tab separated column of each line, lines starting with '#' are comments.
+     */
+    private static Set<String> readAccessProfile(Path accessProfile) throws IOException {
+        String venvPrefix = "/" + VFS_VENV + "/";
+        Set<String> referenced = new HashSet<>();
+        for (String line : Files.readAllLines(accessProfile, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String resourcePath = line.substring(line.lastIndexOf('\t') + 1);
+            int venvIndex = resourcePath.indexOf(venvPrefix);
+            if (venvIndex < 0 || resourcePath.endsWith("/")) {
+                continue;
+            }
+            String path = resourcePath.substring(venvIndex + venvPrefix.length());
+            referenced.add(path);
+            String module = getModuleKey(path);
+            if (module != null) {
+                referenced.add(module);
+            }
+        }
+        return referenced;
+    }
+
+    private static String getPruneReportName(Path relative) {
+        String path = normalizeResourcePath(relative.toString());
+        int sitePackages = path.indexOf("site-packages/");
+        if (sitePackages >= 0) {
+            path = path.substring(sitePackages + "site-packages/".length());
+        }
+        int slash = path.indexOf('/');
+        return slash >= 0 ? path.substring(0, slash + 1) : path;
+    }
+
+    private static void deleteEmptyDirectories(Path dir) throws IOException {
+        List<Path> dirs;
+        try (var s = Files.walk(dir)) {
+            dirs = s.filter(Files::isDirectory).sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path d : dirs) {
+            if (!d.equals(dir)) {
+                try (var entries = Files.list(d)) {
+                    if (entries.findAny().isPresent()) {
+                        continue;
+                    }
+                }
+                Files.delete(d);
+            }
+        }
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
     private static boolean removedFromPluginPackages(Path venvDirectory, List<String> pluginPackages) throws IOException {
         if (Files.exists(venvDirectory)) {
             // compare with contents from prev install if such already present
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this permission notice or a substantial
+ * portion of the Software shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding.tools.test;
+
+import static org.graalvm.python.embedding.tools.test.EmbeddingTestUtils.deleteDirOnShutdown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.python.embedding.tools.vfs.VFSUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares the cold import of a large package tree with and without the module index generated by
+ * {@link VFSUtils#generateVFSModulesIndex}. Each round imports all modules in a new context, with
+ * several {@code sys.path} entries in front of site-packages, so that most of the probed paths do
+ * not exist. Not run by default, enable with {@code -Dgraalpy.vfs.modules.benchmark=true}. The size
+ * of the tree can be set with {@code -Dgraalpy.vfs.modules.benchmark.packages} and
+ * {@code -Dgraalpy.vfs.modules.benchmark.modules}.
+ */
+@EnabledIfSystemProperty(named = "graalpy.vfs.modules.benchmark", matches = "true")
+public class VFSModulesIndexBenchmarkTest {
+    private static final int PACKAGES = Integer.getInteger("graalpy.vfs.modules.benchmark.packages", 50);
+    private static final int MODULES = Integer.getInteger("graalpy.vfs.modules.benchmark.modules", 20);
+    private static final int PATH_ENTRIES = 4;
+    private static final int ROUNDS = 5;
+
+    private static Path vfs;
+    private static Path sitePackages;
+
+    @BeforeAll
+    public static void createPackageTree() throws IOException {
+        Path tmpDir = Files.createTempDirectory("graalpy.vfs.modules.benchmark");
+        deleteDirOnShutdown(tmpDir);
+        vfs = tmpDir.resolve(VFSUtils.VFS_ROOT);
+        Files.createDirectories(vfs.resolve("src"));
+        for (int k = 0; k < PATH_ENTRIES; k++) {
+            Files.createDirectories(vfs.resolve("lib" + k));
+        }
+        sitePackages = vfs.resolve("venv/lib/python3.12/site-packages");
+        for (int i = 0; i < PACKAGES; i++) {
+            Path pkg = sitePackages.resolve("pkg" + i);
+            Files.createDirectories(pkg);
+            Files.writeString(pkg.resolve("__init__.py"), "");
+            for (int j = 0; j < MODULES; j++) {
+                Files.writeString(pkg.resolve("mod" + j + ".py"), "VALUE = " + j + "\n");
+            }
+        }
+        VFSUtils.generateVFSModulesIndex(tmpDir, vfs, List.of(vfs), null);
+    }
+
+    private static double importModules(Engine engine, boolean moduleIndex) {
+        StringBuilder pythonPath = new StringBuilder();
+        for (int k = 0; k < PATH_ENTRIES; k++) {
+            pythonPath.append(vfs.resolve("lib" + k)).append(File.pathSeparator);
+        }
+        pythonPath.append(vfs.resolve("src"));
+        String script = String.format("""
+                        def run(site_packages):
+                            import site, time
+                            start = time.perf_counter()
+                            # processes the .pth file of the module index, same as at startup
+                            site.addsitedir(site_packages)
+                            for i in range(%d):
+                                for j in range(%d):
+                                    __import__(f'pkg{i}.mod{j}')
+                            return (time.perf_counter() - start) * 1000
+                        run
+                        """, PACKAGES, MODULES);
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            try (Context ctx = Context.newBuilder("python").engine(engine).allowAllAccess(true).//
+                            option("python.PythonPath", pythonPath.toString()).//
+                            environment("GRAALPY_VFS_MODULE_INDEX", Boolean.toString(moduleIndex)).build()) {
+                best = Math.min(best, ctx.eval("python", script).execute(sitePackages.toString()).asDouble());
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void coldImport() {
+        try (Engine engine = Engine.newBuilder("python").option("engine.WarnInterpreterOnly", "false").build()) {
+            // the first contexts warm up the shared engine
+            importModules(engine, false);
+            importModules(engine, true);
+            double withoutIndex = importModules(engine, false);
+            double withIndex = importModules(engine, true);
+            System.out.printf("VFS modules index benchmark: imported %d modules, without index %.1f ms, with index %.1f ms%n", PACKAGES * MODULES, withoutIndex, withIndex);
+        }
+    }
+}
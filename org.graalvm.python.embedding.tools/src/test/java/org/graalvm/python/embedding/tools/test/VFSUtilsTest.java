@@ -41,24 +41,33 @@
 
 package org.graalvm.python.embedding.tools.test;
 
+import org.graalvm.polyglot.Context;
 import org.graalvm.python.embedding.tools.exec.BuildToolLog;
 import org.graalvm.python.embedding.tools.vfs.VFSUtils;
 import org.graalvm.python.embedding.tools.vfs.VFSUtils.PackagesChangedException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import static org.graalvm.python.embedding.tools.test.EmbeddingTestUtils.createLauncher;
@@ -633,6 +642,445 @@ public class VFSUtilsTest {
         assertTrue(log.getOutput().contains("Reinstalling GraalPy venv created on"));
     }
 
+    @Test
+    public void filesIndex() throws IOException {
+        Path tmpDir = Files.createTempDirectory("filesIndex");
+        deleteDirOnShutdown(tmpDir);
+        Path vfs = tmpDir.resolve(VFSUtils.VFS_ROOT);
+        Files.createDirectories(vfs.resolve("dir1/emptydir"));
+        Files.writeString(vfs.resolve("dir1/file1"), "abc");
+        Files.writeString(vfs.resolve("file2"), "");
+
+        VFSUtils.generateVFSFilesList(tmpDir, vfs);
+
+        List<String> filesList = Files.readAllLines(vfs.resolve(VFSUtils.VFS_FILESLIST));
+        assertFalse(filesList.contains("/" + VFSUtils.VFS_ROOT + "/" + VFSUtils.VFS_FILESINDEX));
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(vfs.resolve(VFSUtils.VFS_FILESINDEX)))) {
+            assertEquals(0x47505649, in.readInt());
+            assertEquals(1, in.readInt());
+            assertEquals(filesList.size(), in.readInt());
+            // root, dir1/, dir1/emptydir/, dir1/file1, file2
+            checkIndexEntry(in, "/" + VFSUtils.VFS_ROOT + "/", -1, true, null, -1);
+            checkIndexEntry(in, "dir1", 0, true, null, -1);
+            checkIndexEntry(in, "emptydir", 1, true, null, -1);
+            checkIndexEntry(in, "file1", 1, false, "abc", -1);
+            checkIndexEntry(in, "file2", 0, false, "", -1);
+            // no extraction groups
+            assertEquals(0x47505647, in.readInt());
+            assertEquals(0, in.readInt());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void filesIndexExtractionGroups() throws IOException {
+        Path tmpDir = Files.createTempDirectory("filesIndexExtractionGroups");
+        deleteDirOnShutdown(tmpDir);
+        Path vfs = tmpDir.resolve(VFSUtils.VFS_ROOT);
+        Path site = vfs.resolve("venv/lib/site-packages");
+        Files.createDirectories(site.resolve("pkg.dist-info"));
+        Files.createDirectories(site.resolve("pkg.libs"));
+        Files.createDirectories(site.resolve("pkg"));
+        Files.createDirectories(vfs.resolve("venv/bin"));
+        Files.writeString(site.resolve("pkg/__init__.py"), "");
+        Files.writeString(site.resolve("pkg.libs/lib.so"), "lib");
+        Files.writeString(vfs.resolve("venv/bin/tool"), "tool");
+        Files.writeString(site.resolve("pkg.dist-info/RECORD"), String.join("\n",
+                        "pkg/__init__.py,sha256=abc,0",
+                        "pkg.libs/lib.so,sha256=abc,3",
+                        "../../bin/tool,sha256=abc,4",
+                        "pkg/__pycache__/__init__.cpython-311.pyc,,",
+                        "invalid line"));
+
+        VFSUtils.generateVFSFilesList(tmpDir, vfs);
+
+        List<String> entries = new ArrayList<>(new TreeSet<>(Files.readAllLines(vfs.resolve(VFSUtils.VFS_FILESLIST))));
+        byte[] index = Files.readAllBytes(vfs.resolve(VFSUtils.VFS_FILESINDEX));
+        int groups = indexOf(index, new byte[]{0x47, 0x50, 0x56, 0x47});
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(index, groups + 4, index.length - groups - 4))) {
+            assertEquals(1, in.readInt());
+            String root = "/" + VFSUtils.VFS_ROOT + "/";
+            assertEquals(entries.indexOf(root + "venv/lib/site-packages/pkg.dist-info/RECORD"), in.readInt());
+            // files which do not exist are skipped
+            assertEquals(3, in.readInt());
+            assertEquals(entries.indexOf(root + "venv/lib/site-packages/pkg/__init__.py"), in.readInt());
+            assertEquals(entries.indexOf(root + "venv/lib/site-packages/pkg.libs/lib.so"), in.readInt());
+            assertEquals(entries.indexOf(root + "venv/bin/tool"), in.readInt());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void modulesIndex() throws IOException {
+        Path tmpDir = Files.createTempDirectory("modulesIndex");
+        deleteDirOnShutdown(tmpDir);
+        Path vfs = tmpDir.resolve(VFSUtils.VFS_ROOT);
+        Path src = vfs.resolve("src");
+        Path site = vfs.resolve("venv/lib/python3.11/site-packages");
+        Files.createDirectories(src.resolve("pkg"));
+        Files.createDirectories(src.resolve("namespace"));
+        Files.createDirectories(site.resolve("lib/sub"));
+        Files.createDirectories(site.resolve("lib.dist-info"));
+        Files.writeString(src.resolve("main.py"), "");
+        Files.writeString(src.resolve("pkg/__init__.py"), "");
+        Files.writeString(src.resolve("pkg/mod.py"), "");
+        Files.writeString(src.resolve("namespace/mod.py"), "");
+        Files.createDirectories(src.resolve("cext"));
+        Files.writeString(src.resolve("cext/__init__.py"), "");
+        Files.writeString(src.resolve("cext/__init__.abi3.so"), "");
+        Files.writeString(src.resolve("cext/mod.py"), "");
+        Files.writeString(src.resolve("compiled.pyc"), "");
+        Files.writeString(site.resolve("main.py"), "");
+        Files.writeString(site.resolve("only.py"), "");
+        Files.writeString(site.resolve("native.py"), "");
+        Files.writeString(site.resolve("native.cpython-311-x86_64-linux-gnu.so"), "");
+        Files.writeString(site.resolve("lib.py"), "");
+        Files.writeString(site.resolve("lib/__init__.py"), "");
+        Files.writeString(site.resolve("lib/sub/__init__.py"), "");
+        Files.writeString(site.resolve("lib/sub/mod.py"), "");
+        Files.writeString(site.resolve("lib/not-a-module.py"), "");
+        Files.writeString(site.resolve("lib/data.txt"), "");
+
+        // the index is only generated on request
+        VFSUtils.generateVFSFilesList(tmpDir, vfs);
+        assertFalse(Files.exists(site.resolve("_graalpy_vfs_modules.txt")));
+        VFSUtils.generateVFSFilesList(tmpDir, vfs, false, true);
+
+        // packages shadow modules, extension modules shadow source modules, and modules which are
+        // in both src and site-packages, namespace packages, packages with an extension module
+        // __init__ and bytecode only modules are left to the regular finder
+        String sitePackages = "venv/lib/python3.11/site-packages/";
+        assertEquals(List.of("../../../..",
+                        "lib\t" + sitePackages + "lib/__init__.py",
+                        "lib.sub\t" + sitePackages + "lib/sub/__init__.py",
+                        "lib.sub.mod\t" + sitePackages + "lib/sub/mod.py",
+                        "only\t" + sitePackages + "only.py",
+                        "pkg\tsrc/pkg/__init__.py",
+                        "pkg.mod\tsrc/pkg/mod.py"),
+                        Files.readAllLines(site.resolve("_graalpy_vfs_modules.txt")));
+        List<String> filesList = Files.readAllLines(vfs.resolve(VFSUtils.VFS_FILESLIST));
+        String root = "/" + VFSUtils.VFS_ROOT + "/";
+        assertTrue(filesList.contains(root + sitePackages + "_graalpy_vfs_modules.txt"));
+        assertTrue(filesList.contains(root + sitePackages + "_graalpy_vfs_finder.py"));
+        assertTrue(filesList.contains(root + sitePackages + "_graalpy_vfs_finder.pth"));
+
+        // the index can also be generated into a separate output directory
+        Path outputRoot = tmpDir.resolve("output");
+        Path outputVfs = outputRoot.resolve(VFSUtils.VFS_ROOT);
+        Set<String> entries = new TreeSet<>();
+        VFSUtils.generateVFSModulesIndex(outputRoot, outputVfs, List.of(vfs), entries);
+        assertEquals(Files.readAllLines(site.resolve("_graalpy_vfs_modules.txt")), Files.readAllLines(outputVfs.resolve(sitePackages).resolve("_graalpy_vfs_modules.txt")));
+        assertEquals(Set.of(root + sitePackages + "_graalpy_vfs_finder.pth", root + sitePackages + "_graalpy_vfs_finder.py", root + sitePackages + "_graalpy_vfs_modules.txt"), entries);
+
+        // an index from a previous build is removed when it is no longer requested
+        VFSUtils.generateVFSFilesList(tmpDir, vfs, false, false);
+        assertFalse(Files.exists(site.resolve("_graalpy_vfs_modules.txt")));
+        assertFalse(Files.exists(site.resolve("_graalpy_vfs_finder.py")));
+        assertFalse(Files.exists(site.resolve("_graalpy_vfs_finder.pth")));
+        filesList = Files.readAllLines(vfs.resolve(VFSUtils.VFS_FILESLIST));
+        assertFalse(filesList.contains(root + sitePackages + "_graalpy_vfs_finder.pth"));
+    }
+
+    @Test
+    public void modulesIndexFinder() throws IOException {
+        Path tmpDir = Files.createTempDirectory("modulesIndexFinder");
+        deleteDirOnShutdown(tmpDir);
+        Path vfs = tmpDir.resolve(VFSUtils.VFS_ROOT);
+        Path src = vfs.resolve("src");
+        Path site = vfs.resolve("venv/lib/python3.12/site-packages");
+        Path other = tmpDir.resolve("other");
+        Files.createDirectories(src.resolve("app"));
+        Files.createDirectories(site.resolve("indexed"));
+        Files.createDirectories(other);
+        Files.writeString(src.resolve("app/__init__.py"), "NAME = 'app'\n");
+        Files.writeString(src.resolve("shadow.py"), "NAME = 'src'\n");
+        Files.writeString(site.resolve("indexed/__init__.py"), "NAME = 'indexed'\n");
+        Files.writeString(site.resolve("indexed/sub.py"), "NAME = 'indexed.sub'\n");
+        Files.writeString(site.resolve("shadow.py"), "NAME = 'site'\n");
+        Files.writeString(other.resolve("indexed.py"), "NAME = 'other'\n");
+        VFSUtils.generateVFSModulesIndex(tmpDir, vfs, List.of(vfs), null);
+
+        try (Context ctx = Context.newBuilder("python").allowAllAccess(true).environment("GRAALPY_VFS_MODULE_INDEX", "true").build()) {
+            ctx.eval("python", """
+                            def test(src, site_packages, other):
+                                import importlib, os, site, sys
+                                sys.path.insert(0, src)
+                                # processes the .pth file, same as at startup
+                                site.addsitedir(site_packages)
+                                # the variable is not passed on to subprocesses
+                                assert 'GRAALPY_VFS_MODULE_INDEX' not in os.environ
+                                finders = [f for f in sys.meta_path if type(f).__name__ == 'VFSModuleFinder']
+                                assert len(finders) == 1, sys.meta_path
+                                finder = finders[0]
+                                import app, indexed.sub
+                                assert app.NAME == 'app'
+                                assert indexed.sub.NAME == 'indexed.sub'
+                                assert app.__spec__.origin == finder.find_spec('app').origin
+                                assert indexed.sub.__spec__.origin == finder.find_spec('indexed.sub', indexed.__path__).origin
+                                # names in both directories are left to the regular finder
+                                assert finder.find_spec('shadow') is None
+                                import shadow
+                                assert shadow.NAME == 'src'
+                                # a module in an earlier sys.path entry takes precedence
+                                sys.path.insert(0, other)
+                                assert finder.find_spec('indexed') is None
+                                importlib.machinery.PathFinder.find_spec('indexed')
+                                assert finder.find_spec('indexed') is None
+                                assert finder.find_spec('app') is not None
+                                # as well as a module not on sys.path at all
+                                sys.path.remove(src)
+                                assert finder.find_spec('app') is None
+                            """);
+            ctx.getBindings("python").getMember("test").execute(src.toString(), site.toString(), other.toString());
+        }
+    }
+
+    @Test
+    public void pruneVenv() throws IOException {
+        Path tmpDir = Files.createTempDirectory("pruneVenv");
+        deleteDirOnShutdown(tmpDir);
+        Path vfs = tmpDir.resolve(VFSUtils.VFS_ROOT);
+        Path venv = vfs.resolve("venv");
+        Path site = venv.resolve("lib/python3.12/site-packages");
+        Path target = tmpDir.resolve("target/venv");
+        Path targetSite = target.resolve("lib/python3.12/site-packages");
+        String[] files = {"pyvenv.cfg", "contents", "bin/python",
+                        "lib/python3.12/site-packages/lib.pth",
+                        "lib/python3.12/site-packages/lib-1.0.dist-info/RECORD",
+                        "lib/python3.12/site-packages/lib/__init__.py",
+                        "lib/python3.12/site-packages/lib/__init__.pyi",
+                        "lib/python3.12/site-packages/lib/used.py",
+                        "lib/python3.12/site-packages/lib/__pycache__/used.graalpy250-312.pyc",
+                        "lib/python3.12/site-packages/lib/unused.py",
+                        "lib/python3.12/site-packages/lib/__pycache__/unused.graalpy250-312.pyc",
+                        "lib/python3.12/site-packages/lib/native.so",
+                        "lib/python3.12/site-packages/lib/native.json",
+                        "lib/python3.12/site-packages/lib/tests/test_used.py",
+                        "lib/python3.12/site-packages/lib/data/kept.txt",
+                        "lib/python3.12/site-packages/other/__init__.py"};
+        for (String f : files) {
+            Files.createDirectories(venv.resolve(f).getParent());
+            Files.writeString(venv.resolve(f), "0123456789");
+        }
+        // a wheel with a native library, which may need the other files extracted with it
+        String record = "lib/native.so,,\nlib/native.json,,\nlib/unused.py,,\n";
+        Files.writeString(site.resolve("lib-1.0.dist-info/RECORD"), record);
+
+        // without rules, nothing is pruned
+        TestLog log = new TestLog();
+        assertEquals(new VFSUtils.PruneResult(0, 0, 0, 0), VFSUtils.pruneVenv(venv, target, List.of(), List.of(), null, log));
+        assertTrue(Files.exists(targetSite.resolve("lib/tests/test_used.py")));
+
+        // exclude rules, the venv itself is not modified
+        VFSUtils.PruneResult result = VFSUtils.pruneVenv(venv, target, List.of("**/data/**"), List.of("**/tests/**", "**/*.pyi", "**/data/**"), null, log);
+        assertEquals(new VFSUtils.PruneResult(2, 20, 14, 130 + record.length()), result);
+        assertFalse(Files.exists(targetSite.resolve("lib/tests")));
+        assertFalse(Files.exists(targetSite.resolve("lib/__init__.pyi")));
+        assertTrue(Files.exists(targetSite.resolve("lib/data/kept.txt")));
+        assertTrue(Files.exists(site.resolve("lib/tests/test_used.py")));
+        assertTrue(Files.exists(site.resolve("lib/__init__.pyi")));
+        assertTrue(log.getOutput().contains("Pruned 2 of 16 files (20 B of " + (150 + record.length()) + " B)"), log.getOutput());
+
+        // the access profile, with the bytecode of a source and the source of a bytecode
+        Path profile = tmpDir.resolve("profile.txt");
+        String root = "/" + VFSUtils.VFS_ROOT + "/venv/lib/python3.12/site-packages/";
+        Files.write(profile, List.of("# profile",
+                        "1\t10\t0\t" + root + "lib/",
+                        "1\t10\t1\t" + root + "lib/__init__.py",
+                        "1\t10\t2\t" + root + "lib/__pycache__/used.graalpy250-312.pyc"));
+        log.clearOutput();
+        result = VFSUtils.pruneVenv(venv, target, List.of("**/data/**"), List.of(), profile, log);
+        assertEquals(new VFSUtils.PruneResult(5, 50, 11, 100 + record.length()), result);
+        assertTrue(Files.exists(targetSite.resolve("lib/used.py")));
+        assertTrue(Files.exists(targetSite.resolve("lib/__pycache__/used.graalpy250-312.pyc")));
+        // native libraries are extracted instead of accessed, together with the files of their wheel
+        assertTrue(Files.exists(targetSite.resolve("lib/native.so")));
+        assertTrue(Files.exists(targetSite.resolve("lib/native.json")));
+        assertTrue(Files.exists(targetSite.resolve("lib-1.0.dist-info/RECORD")));
+        assertTrue(Files.exists(targetSite.resolve("lib.pth")));
+        assertTrue(Files.exists(target.resolve("bin/python")));
+        assertTrue(Files.exists(target.resolve("contents")));
+        assertFalse(Files.exists(targetSite.resolve("lib/unused.py")));
+        assertFalse(Files.exists(targetSite.resolve("lib/__pycache__/unused.graalpy250-312.pyc")));
+        assertFalse(Files.exists(targetSite.resolve("other")));
+        assertTrue(Files.exists(site.resolve("other/__init__.py")));
+        assertTrue(log.getOutput().contains("other/"), log.getOutput());
+    }
+
+    @Test
+    public void compileBytecode() throws IOException {
+        TestLog log = new TestLog();
+        Path tmpDir = Files.createTempDirectory("compileBytecode");
+        deleteDirOnShutdown(tmpDir);
+        Path src = tmpDir.resolve("src");
+        Files.createDirectories(src.resolve("pkg"));
+        Files.writeString(src.resolve("pkg/__init__.py"), "");
+        Files.writeString(src.resolve("pkg/mod.py"), "VALUE = 42\n");
+        Files.writeString(src.resolve("pkg/invalid.py"), "this is not python\n");
+
+        // invalid sources and missing directories do not fail the build
+        VFSUtils.compileBytecode(List.of(src, tmpDir.resolve("missing")), createLauncher(tmpDir.resolve("venv")), log);
+
+        Path pycache = src.resolve("pkg/__pycache__");
+        for (String module : List.of("__init__", "mod")) {
+            List<Path> pycs;
+            try (var s = Files.list(pycache)) {
+                pycs = s.filter(p -> p.getFileName().toString().startsWith(module + ".")).toList();
+            }
+            assertEquals(1, pycs.size(), pycs.toString());
+            // the flags after the magic number mark hash based pycs which are not checked
+            byte[] header = Files.readAllBytes(pycs.get(0));
+            assertEquals(1, header[4]);
+        }
+
+        // unchanged sources are not compiled again, changed ones are
+        Path modPyc = findPyc(pycache, "mod");
+        FileTime modTime = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(modPyc, modTime);
+        Path initPyc = findPyc(pycache, "__init__");
+        Files.setLastModifiedTime(initPyc, modTime);
+        Files.writeString(src.resolve("pkg/mod.py"), "VALUE = 43\n");
+        VFSUtils.compileBytecode(List.of(src), createLauncher(tmpDir.resolve("venv")), log);
+        assertEquals(modTime, Files.getLastModifiedTime(initPyc));
+        assertNotEquals(modTime, Files.getLastModifiedTime(modPyc));
+
+        // a venv is not compiled again until createVenv changes it
+        Path venv = tmpDir.resolve("venv");
+        Files.createDirectories(venv.resolve("pkg"));
+        Files.writeString(venv.resolve("contents"), "");
+        Files.writeString(venv.resolve("pkg/mod.py"), "VALUE = 42\n");
+        VFSUtils.compileBytecode(List.of(venv), createLauncher(venv), log);
+        assertTrue(Files.exists(findPyc(venv.resolve("pkg/__pycache__"), "mod")));
+        assertTrue(Files.exists(venv.resolve("bytecode.stamp")));
+        Files.writeString(venv.resolve("pkg/other.py"), "VALUE = 42\n");
+        VFSUtils.compileBytecode(List.of(venv), createLauncher(venv), log);
+        assertNull(findPyc(venv.resolve("pkg/__pycache__"), "other"));
+    }
+
+    @Test
+    public void compileBytecodeIntoOutput() throws IOException {
+        TestLog log = new TestLog();
+        Path tmpDir = Files.createTempDirectory("compileBytecodeIntoOutput");
+        deleteDirOnShutdown(tmpDir);
+        Path src = tmpDir.resolve("src");
+        Files.createDirectories(src.resolve("pkg"));
+        Files.writeString(src.resolve("pkg/__init__.py"), "");
+        Files.writeString(src.resolve("pkg/mod.py"), "VALUE = 42\n");
+        Path output = tmpDir.resolve("output");
+
+        VFSUtils.compileBytecode(List.of(src), output, createLauncher(tmpDir.resolve("venv")), log);
+        assertFalse(Files.exists(src.resolve("pkg/__pycache__")));
+        assertNotNull(findPyc(output.resolve("pkg/__pycache__"), "__init__"));
+        assertNotNull(findPyc(output.resolve("pkg/__pycache__"), "mod"));
+
+        // the bytecode of removed sources is deleted
+        Files.delete(src.resolve("pkg/mod.py"));
+        VFSUtils.compileBytecode(List.of(src), output, createLauncher(tmpDir.resolve("venv")), log);
+        assertNotNull(findPyc(output.resolve("pkg/__pycache__"), "__init__"));
+        assertNull(findPyc(output.resolve("pkg/__pycache__"), "mod"));
+    }
+
+    private static Path findPyc(Path pycache, String module) throws IOException {
+        if (!Files.isDirectory(pycache)) {
+            return null;
+        }
+        try (var s = Files.list(pycache)) {
+            return s.filter(p -> p.getFileName().toString().startsWith(module + ".")).findFirst().orElse(null);
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer: for (int i = data.length - pattern.length; i >= 0; i--) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("pattern not found");
+    }
+
+    @Test
+    public void filesArchive() throws IOException {
+        Path tmpDir = Files.createTempDirectory("filesArchive");
+        deleteDirOnShutdown(tmpDir);
+        Path vfs = tmpDir.resolve(VFSUtils.VFS_ROOT);
+        Files.createDirectories(vfs.resolve("dir1"));
+        Files.writeString(vfs.resolve("dir1/file1"), "abc");
+        Files.writeString(vfs.resolve("file2"), "defgh");
+
+        VFSUtils.generateVFSFilesList(tmpDir, vfs, true);
+
+        Path archive = vfs.resolve(VFSUtils.VFS_FILESARCHIVE);
+        assertEquals("abcdefgh", Files.readString(archive));
+        assertFalse(Files.readAllLines(vfs.resolve(VFSUtils.VFS_FILESLIST)).contains("/" + VFSUtils.VFS_ROOT + "/" + VFSUtils.VFS_FILESARCHIVE));
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(vfs.resolve(VFSUtils.VFS_FILESINDEX)))) {
+            in.skipNBytes(12);
+            checkIndexEntry(in, "/" + VFSUtils.VFS_ROOT + "/", -1, true, null, -1);
+            checkIndexEntry(in, "dir1", 0, true, null, -1);
+            checkIndexEntry(in, "file1", 1, false, "abc", 0);
+            checkIndexEntry(in, "file2", 0, false, "defgh", 3);
+        }
+        // the packed files are not packaged again as separate resources
+        try (var s = Files.list(vfs)) {
+            assertEquals(Set.of(VFSUtils.VFS_FILESLIST, VFSUtils.VFS_FILESINDEX, VFSUtils.VFS_FILESARCHIVE), s.map((p) -> p.getFileName().toString()).collect(Collectors.toSet()));
+        }
+
+        // the archive is removed when packing is turned off again
+        VFSUtils.generateVFSFilesList(tmpDir, vfs, false);
+        assertFalse(Files.exists(archive));
+    }
+
+    @Test
+    public void copyVenv() throws IOException {
+        Path tmpDir = Files.createTempDirectory("copyVenv");
+        deleteDirOnShutdown(tmpDir);
+        Path venv = tmpDir.resolve("venv");
+        Path copy = tmpDir.resolve("copy");
+        Files.createDirectories(venv.resolve("lib/pkg"));
+        Files.writeString(venv.resolve("pyvenv.cfg"), "home = x");
+        Files.writeString(venv.resolve("lib/pkg/mod.py"), "a = 1");
+
+        VFSUtils.copyVenv(venv, copy);
+        assertEquals("home = x", Files.readString(copy.resolve("pyvenv.cfg")));
+        assertEquals("a = 1", Files.readString(copy.resolve("lib/pkg/mod.py")));
+
+        // changed and removed files are synchronized, also if the copy was modified
+        Files.writeString(venv.resolve("lib/pkg/mod.py"), "a = 22");
+        Files.delete(copy.resolve("pyvenv.cfg"));
+        Files.writeString(copy.resolve("lib/stale.py"), "");
+        VFSUtils.copyVenv(venv, copy);
+        assertEquals("home = x", Files.readString(copy.resolve("pyvenv.cfg")));
+        assertEquals("a = 22", Files.readString(copy.resolve("lib/pkg/mod.py")));
+        assertFalse(Files.exists(copy.resolve("lib/stale.py")));
+    }
+
+    private static void checkIndexEntry(DataInputStream in, String name, int parent, boolean dir, String content, long offset) throws IOException {
+        assertEquals(name, in.readUTF());
+        assertEquals(parent, in.readInt());
+        byte flags = in.readByte();
+        assertEquals(dir, (flags & 0x1) != 0);
+        assertEquals(content != null, (flags & 0x2) != 0);
+        assertEquals(offset >= 0, (flags & 0x4) != 0);
+        assertEquals(content != null, (flags & 0x8) != 0);
+        if (content != null) {
+            byte[] data = content.getBytes(StandardCharsets.UTF_8);
+            assertEquals(data.length, in.readLong());
+            if (offset >= 0) {
+                assertEquals(offset, in.readLong());
+            }
+            byte[] hash = new byte[32];
+            in.readFully(hash);
+            try {
+                assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), hash);
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
     private static boolean callPackageRemoved(List<String> packages, List<String> contents, List<String> installed)
                     throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
         Method m = VFSUtils.class.getDeclaredMethod("removedFromPluginPackages", List.class, List.class, List.class);
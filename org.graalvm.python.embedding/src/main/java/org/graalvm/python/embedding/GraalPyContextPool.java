@@ -0,0 +1,600 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+
+/**
+ * A pool of GraalPy contexts which are created and initialized ahead of time, so that the threads
+ * serving requests do not pay the cost of the Python initialization, the {@link VirtualFileSystem}
+ * setup and the imports of the user modules.
+ * <p>
+ * All contexts of the pool share one {@link Engine}, typically created by
+ * {@link GraalPyResources#createEngine()}, and one {@link VirtualFileSystem} and are created by
+ * {@link GraalPyResources#contextBuilder(VirtualFileSystem, Engine)}. Each new context evaluates
+ * the {@link Builder#initScript(Source) initialization script} before it is handed out.
+ * <p>
+ * A context is {@link #borrow() borrowed} by a thread and can only be used by that thread until
+ * the borrowed context is {@link PooledContext#close() returned}. When a context is borrowed
+ * again, the pool prefers the context the current thread used the last time. A returned context is
+ * closed and replaced by a new one if it was used {@link Builder#maxUses(long) too many times}, if
+ * it does not pass the {@link Builder#healthCheck(Predicate) health check}, or if it was
+ * {@link PooledContext#invalidate() invalidated}.
+ * <p>
+ * <b>Example</b>
+ *
+ * <pre>
+ * try (Engine engine = GraalPyResources.createEngine();
+ *                 VirtualFileSystem vfs = VirtualFileSystem.create();
+ *                 GraalPyContextPool pool = GraalPyContextPool.newBuilder(engine, vfs).size(4).initScript("import mymodule").build()) {
+ *     try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+ *         pooled.getContext().eval("python", "mymodule.handle()");
+ *     }
+ * }
+ * </pre>
+ *
+ * @since 25.0.0
+ */
+public final class GraalPyContextPool implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(GraalPyContextPool.class.getName());
+
+    private final Engine engine;
+    private final VirtualFileSystem vfs;
+    private final int size;
+    private final Source initScript;
+    private final long maxUses;
+    private final Predicate<Context> healthCheck;
+    private final Consumer<Context.Builder> contextConfigurator;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // guarded by lock, the most recently returned context is first
+    private final ArrayDeque<Slot> idle = new ArrayDeque<>();
+    // guarded by lock, the number of contexts which are idle, borrowed or being created
+    private int contextCount;
+    private boolean closed;
+
+    // guarded by lock
+    private long borrowCount;
+    private long waitCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private long timeoutCount;
+    private long evictionCount;
+
+    /*
+     * Creates the contexts replacing the evicted ones, so that the returning threads do not pay
+     * for it.
+     */
+    private final ExecutorService replenishExecutor = Executors.newSingleThreadExecutor((r) -> {
+        Thread t = new Thread(r, "GraalPy context pool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final class Slot {
+        private final Context context;
+        private long uses;
+        private Thread lastThread;
+
+        Slot(Context context) {
+            this.context = context;
+        }
+    }
+
+    /**
+     * Statistics of a {@link GraalPyContextPool}.
+     *
+     * @param contextCount the number of contexts in the pool, including the borrowed ones and the
+     *            ones being created
+     * @param idleCount the number of contexts ready to be borrowed
+     * @param borrowCount the number of successful {@link GraalPyContextPool#borrow() borrows}
+     * @param waitCount the number of borrows which found the pool saturated, i.e., had to wait for
+     *            a context to be returned or created
+     * @param totalWaitNanos the total time spent in the borrows, in nanoseconds
+     * @param maxWaitNanos the longest time spent in a single borrow, in nanoseconds
+     * @param timeoutCount the number of borrows which timed out
+     * @param evictionCount the number of contexts closed and replaced after they were returned
+     * @since 25.0.0
+     */
+    public record Statistics(int contextCount, int idleCount, long borrowCount, long waitCount, long totalWaitNanos, long maxWaitNanos, long timeoutCount, long evictionCount) {
+    }
+
+    /**
+     * Builder for a {@link GraalPyContextPool}.
+     *
+     * @since 25.0.0
+     */
+    public static final class Builder {
+        private final Engine engine;
+        private final VirtualFileSystem vfs;
+        private int size = Runtime.getRuntime().availableProcessors();
+        private Source initScript;
+        private long maxUses = Long.MAX_VALUE;
+        private Predicate<Context> healthCheck;
+        private Consumer<Context.Builder> contextConfigurator;
+
+        private Builder(Engine engine, VirtualFileSystem vfs) {
+            this.engine = Objects.requireNonNull(engine);
+            this.vfs = Objects.requireNonNull(vfs);
+        }
+
+        /**
+         * Sets the number of contexts kept in the pool. Defaults to the number of available
+         * processors.
+         *
+         * @throws IllegalArgumentException if the size is not positive
+         * @since 25.0.0
+         */
+        public Builder size(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Context pool size must be positive.");
+            }
+            size = value;
+            return this;
+        }
+
+        /**
+         * Sets the Python code evaluated in each new context before it is handed out, typically
+         * importing the modules used later.
+         *
+         * @since 25.0.0
+         */
+        public Builder initScript(String code) {
+            return initScript(Source.create("python", code));
+        }
+
+        /**
+         * Sets the Python source evaluated in each new context before it is handed out, typically
+         * importing the modules used later.
+         *
+         * @since 25.0.0
+         */
+        public Builder initScript(Source source) {
+            initScript = Objects.requireNonNull(source);
+            return this;
+        }
+
+        /**
+         * Sets how many times a context can be borrowed before it is closed and replaced by a new
+         * one. By default, the contexts are not replaced.
+         *
+         * @throws IllegalArgumentException if the value is not positive
+         * @since 25.0.0
+         */
+        public Builder maxUses(long value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Maximum number of context uses must be positive.");
+            }
+            maxUses = value;
+            return this;
+        }
+
+        /**
+         * Sets a check run on each returned context. If it returns false or throws an exception,
+         * the context is closed and replaced by a new one. By default, returned contexts are not
+         * checked.
+         *
+         * @since 25.0.0
+         */
+        public Builder healthCheck(Predicate<Context> check) {
+            healthCheck = Objects.requireNonNull(check);
+            return this;
+        }
+
+        /**
+         * Sets a callback which further configures the context builder obtained from
+         * {@link GraalPyResources#contextBuilder(VirtualFileSystem)} before each context of the
+         * pool is built. The engine is set by the pool.
+         *
+         * @since 25.0.0
+         */
+        public Builder contextBuilder(Consumer<Context.Builder> configurator) {
+            contextConfigurator = Objects.requireNonNull(configurator);
+            return this;
+        }
+
+        /**
+         * Builds the pool and creates and initializes all its contexts.
+         *
+         * @since 25.0.0
+         */
+        public GraalPyContextPool build() {
+            return new GraalPyContextPool(this);
+        }
+    }
+
+    /**
+     * A context borrowed from a {@link GraalPyContextPool}. It can only be used by the thread which
+     * borrowed it. Closing it returns the context to the pool.
+     *
+     * @since 25.0.0
+     */
+    public final class PooledContext implements AutoCloseable {
+        private final Slot slot;
+        private final Thread owner;
+        private boolean returned;
+        private boolean invalid;
+
+        private PooledContext(Slot slot, Thread owner) {
+            this.slot = slot;
+            this.owner = owner;
+        }
+
+        /**
+         * Returns the borrowed context.
+         *
+         * @throws IllegalStateException if called from another thread than the one which borrowed
+         *             the context, or after the context was returned
+         * @since 25.0.0
+         */
+        public Context getContext() {
+            checkAccess();
+            return slot.context;
+        }
+
+        /**
+         * Marks the context as broken, so that it is closed and replaced by a new one once it is
+         * returned.
+         *
+         * @since 25.0.0
+         */
+        public void invalidate() {
+            checkAccess();
+            invalid = true;
+        }
+
+        private void checkAccess() {
+            if (returned) {
+                throw new IllegalStateException("The pooled context was already returned.");
+            }
+            if (Thread.currentThread() != owner) {
+                throw new IllegalStateException(String.format("The pooled context is borrowed by thread '%s'.", owner.getName()));
+            }
+        }
+
+        /**
+         * Returns the context to the pool. Has no effect if the context was already returned.
+         *
+         * @since 25.0.0
+         */
+        @Override
+        public void close() {
+            if (!returned) {
+                checkAccess();
+                returned = true;
+                giveBack(slot, invalid);
+            }
+        }
+    }
+
+    private GraalPyContextPool(Builder builder) {
+        this.engine = builder.engine;
+        this.vfs = builder.vfs;
+        this.size = builder.size;
+        this.initScript = builder.initScript;
+        this.maxUses = builder.maxUses;
+        this.healthCheck = builder.healthCheck;
+        this.contextConfigurator = builder.contextConfigurator;
+        try {
+            for (int i = 0; i < size; i++) {
+                idle.add(new Slot(createContext()));
+                contextCount++;
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a builder of a pool of contexts sharing the given engine and virtual filesystem.
+     * Neither of them is closed by the pool.
+     *
+     * @since 25.0.0
+     */
+    public static Builder newBuilder(Engine engine, VirtualFileSystem vfs) {
+        return new Builder(engine, vfs);
+    }
+
+    private Context createContext() {
+        Context.Builder contextBuilder = GraalPyResources.contextBuilder(vfs, engine);
+        if (contextConfigurator != null) {
+            contextConfigurator.accept(contextBuilder);
+        }
+        Context context = contextBuilder.engine(engine).build();
+        if (initScript != null) {
+            try {
+                context.eval(initScript);
+            } catch (RuntimeException e) {
+                context.close();
+                throw e;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Borrows a context, waiting until one is available if all of them are borrowed.
+     *
+     * @throws IllegalStateException if the pool is closed
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @since 25.0.0
+     */
+    public PooledContext borrow() throws InterruptedException {
+        return borrow(-1);
+    }
+
+    /**
+     * Borrows a context, waiting at most the given time until one is available if all of them are
+     * borrowed.
+     *
+     * @return the borrowed context, or {@code null} if none became available in time
+     * @throws IllegalStateException if the pool is closed
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @since 25.0.0
+     */
+    public PooledContext borrow(Duration timeout) throws InterruptedException {
+        return borrow(Math.max(0, timeout.toNanos()));
+    }
+
+    private PooledContext borrow(long timeoutNanos) throws InterruptedException {
+        Thread thread = Thread.currentThread();
+        long start = System.nanoTime();
+        boolean waited = false;
+        boolean create = false;
+        Slot slot;
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (true) {
+                checkOpen();
+                slot = takeIdle(thread);
+                if (slot != null) {
+                    break;
+                }
+                waited = true;
+                if (contextCount < size) {
+                    // an evicted context was not replaced yet, create it right away
+                    contextCount++;
+                    create = true;
+                    break;
+                }
+                if (timeoutNanos < 0) {
+                    available.await();
+                } else if (remaining > 0) {
+                    remaining = available.awaitNanos(remaining);
+                } else {
+                    timeoutCount++;
+                    return null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (create) {
+            try {
+                slot = new Slot(createContext());
+            } catch (RuntimeException e) {
+                lock.lock();
+                try {
+                    contextCount--;
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+        }
+        slot.lastThread = thread;
+        slot.uses++;
+        long waitNanos = System.nanoTime() - start;
+        lock.lock();
+        try {
+            borrowCount++;
+            if (waited) {
+                waitCount++;
+            }
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        } finally {
+            lock.unlock();
+        }
+        return new PooledContext(slot, thread);
+    }
+
+    /**
+     * Takes the idle context last used by the given thread, or the most recently returned one.
+     */
+    private Slot takeIdle(Thread thread) {
+        for (Iterator<Slot> it = idle.iterator(); it.hasNext();) {
+            Slot slot = it.next();
+            if (slot.lastThread == thread) {
+                it.remove();
+                return slot;
+            }
+        }
+        return idle.pollFirst();
+    }
+
+    private void giveBack(Slot slot, boolean invalid) {
+        boolean evict = invalid || slot.uses >= maxUses || !isHealthy(slot.context);
+        lock.lock();
+        try {
+            if (!evict && !closed) {
+                idle.addFirst(slot);
+                available.signal();
+                return;
+            }
+            if (evict) {
+                evictionCount++;
+            }
+            contextCount--;
+        } finally {
+            lock.unlock();
+        }
+        slot.context.close();
+        if (evict) {
+            replenish();
+        }
+    }
+
+    private boolean isHealthy(Context context) {
+        if (healthCheck == null) {
+            return true;
+        }
+        try {
+            return healthCheck.test(context);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "GraalPy context pool: health check failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Creates a new context in the background if the pool has less contexts than its size.
+     */
+    private void replenish() {
+        lock.lock();
+        try {
+            if (closed || contextCount >= size) {
+                return;
+            }
+            contextCount++;
+        } finally {
+            lock.unlock();
+        }
+        replenishExecutor.execute(() -> {
+            Slot slot = null;
+            try {
+                slot = new Slot(createContext());
+            } catch (RuntimeException e) {
+                // the next borrow finding no idle context tries again
+                LOGGER.log(Level.WARNING, "GraalPy context pool: cannot create a context", e);
+            }
+            lock.lock();
+            try {
+                if (slot != null && !closed) {
+                    idle.addLast(slot);
+                    slot = null;
+                } else {
+                    contextCount--;
+                }
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            if (slot != null) {
+                slot.context.close();
+            }
+        });
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The context pool is closed.");
+        }
+    }
+
+    /**
+     * Returns the current statistics of this pool.
+     *
+     * @since 25.0.0
+     */
+    public Statistics getStatistics() {
+        lock.lock();
+        try {
+            return new Statistics(contextCount, idle.size(), borrowCount, waitCount, totalWaitNanos, maxWaitNanos, timeoutCount, evictionCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the idle contexts of the pool. The borrowed contexts are closed once they are
+     * returned. Threads waiting to borrow a context fail with an {@link IllegalStateException}.
+     * The engine and the virtual filesystem are not closed.
+     *
+     * @since 25.0.0
+     */
+    @Override
+    public void close() {
+        ArrayDeque<Slot> toClose;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            contextCount -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        replenishExecutor.shutdown();
+        for (Slot slot : toClose) {
+            slot.context.close();
+        }
+        try {
+            replenishExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
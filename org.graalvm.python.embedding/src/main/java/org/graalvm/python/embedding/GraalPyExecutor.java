@@ -0,0 +1,486 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Runs Python code on dedicated platform threads, each of which owns its own GraalPy context.
+ * <p>
+ * A context can be entered by only one thread at a time, so threads sharing a context block each
+ * other, and virtual threads block their carrier threads while waiting. The executor instead lets
+ * any thread submit a task, which runs on one of its threads in the context owned by that thread,
+ * and returns a {@link CompletableFuture} of its result. Waiting for the future does not block the
+ * carrier thread of a virtual thread.
+ * <p>
+ * The submitted tasks are queued in a bounded queue. If the queue is full,
+ * {@link #submit(Function)} waits until there is room for the task and {@link #trySubmit(Function)}
+ * rejects it. A task can be {@link CompletableFuture#cancel(boolean) cancelled}: a queued task is
+ * not run, a running task is interrupted by {@link Context#interrupt(Duration)} if
+ * {@code mayInterruptIfRunning} is true.
+ * <p>
+ * The tasks should convert the Python values to Java values before they return, because accessing
+ * a {@link Value} from another thread enters its context from that thread.
+ * <p>
+ * <b>Example</b>
+ *
+ * <pre>
+ * try (Engine engine = GraalPyResources.createEngine();
+ *                 VirtualFileSystem vfs = VirtualFileSystem.create();
+ *                 GraalPyExecutor executor = GraalPyExecutor.newBuilder(engine, vfs).threads(4).build()) {
+ *     CompletableFuture&lt;Integer&gt; result = executor.submit((context) -&gt; context.eval("python", "6 * 7").asInt());
+ *     System.out.println(result.join());
+ * }
+ * </pre>
+ *
+ * @since 25.0.0
+ */
+public final class GraalPyExecutor implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(GraalPyExecutor.class.getName());
+
+    /**
+     * How long cancelling a running task waits for its interruption.
+     */
+    private static final Duration INTERRUPT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Supplier<Context> contextFactory;
+    private final int queueCapacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // guarded by lock
+    private final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+    private boolean closed;
+
+    private final List<Worker> workers = new ArrayList<>();
+
+    /**
+     * Builder for a {@link GraalPyExecutor}.
+     *
+     * @since 25.0.0
+     */
+    public static final class Builder {
+        private final Supplier<Context> contextFactory;
+        private int threads = 1;
+        private int queueCapacity = 1024;
+
+        private Builder(Supplier<Context> contextFactory) {
+            this.contextFactory = Objects.requireNonNull(contextFactory);
+        }
+
+        /**
+         * Sets the number of threads, each with its own context. Defaults to 1.
+         *
+         * @throws IllegalArgumentException if the value is not positive
+         * @since 25.0.0
+         */
+        public Builder threads(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Number of executor threads must be positive.");
+            }
+            threads = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of tasks waiting to be run. Defaults to 1024.
+         *
+         * @throws IllegalArgumentException if the value is not positive
+         * @since 25.0.0
+         */
+        public Builder queueCapacity(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Executor queue capacity must be positive.");
+            }
+            queueCapacity = value;
+            return this;
+        }
+
+        /**
+         * Builds the executor and creates and initializes the contexts of all its threads. If any of
+         * the contexts cannot be created, the executor is closed and the exception or error thrown
+         * by the context factory is rethrown.
+         *
+         * @throws RuntimeException if a context cannot be created
+         * @since 25.0.0
+         */
+        public GraalPyExecutor build() {
+            return new GraalPyExecutor(this);
+        }
+    }
+
+    /**
+     * Creates a builder of an executor whose threads create their contexts by calling the given
+     * factory. The contexts are closed by the executor.
+     *
+     * @since 25.0.0
+     */
+    public static Builder newBuilder(Supplier<Context> contextFactory) {
+        return new Builder(contextFactory);
+    }
+
+    /**
+     * Creates a builder of an executor whose contexts share the given engine and virtual
+     * filesystem, see {@link GraalPyResources#contextBuilder(VirtualFileSystem, Engine)}. Neither
+     * of them is closed by the executor.
+     *
+     * @since 25.0.0
+     */
+    public static Builder newBuilder(Engine engine, VirtualFileSystem vfs) {
+        Objects.requireNonNull(engine);
+        Objects.requireNonNull(vfs);
+        return new Builder(() -> GraalPyResources.contextBuilder(vfs, engine).build());
+    }
+
+    private final class Task<T> extends CompletableFuture<T> {
+        private final Function<Context, T> function;
+        // guarded by lock
+        private Worker worker;
+
+        Task(Function<Context, T> function) {
+            this.function = function;
+        }
+
+        void run(Worker runner) {
+            lock.lock();
+            try {
+                if (isDone()) {
+                    // cancelled while queued
+                    return;
+                }
+                worker = runner;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                complete(function.apply(runner.context));
+            } catch (Throwable t) {
+                completeExceptionally(t);
+            } finally {
+                runner.finish(this);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                Worker running;
+                lock.lock();
+                try {
+                    running = worker;
+                    if (running == null && queue.remove(this)) {
+                        notFull.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (running != null && mayInterruptIfRunning) {
+                    running.interruptTask(this);
+                }
+            }
+            return cancelled;
+        }
+    }
+
+    private final class Worker extends Thread {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private Context context;
+        private Throwable initFailure;
+        /*
+         * Held while the running task is interrupted, so that the interrupt cannot hit the next
+         * task.
+         */
+        private final ReentrantLock interruptLock = new ReentrantLock();
+
+        Worker(int index) {
+            super("GraalPy executor " + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                context = contextFactory.get();
+                // initialize ahead of the first task, also so that it is never interrupted
+                context.initialize("python");
+            } catch (Throwable t) {
+                // also errors, otherwise the executor would be built without this thread
+                if (context != null) {
+                    try {
+                        context.close();
+                    } catch (Throwable closeFailure) {
+                        t.addSuppressed(closeFailure);
+                    }
+                }
+                initFailure = t;
+                return;
+            } finally {
+                started.countDown();
+            }
+            try {
+                Task<?> task;
+                while ((task = take()) != null) {
+                    task.run(this);
+                }
+            } finally {
+                context.close();
+            }
+        }
+
+        void finish(Task<?> task) {
+            interruptLock.lock();
+            try {
+                lock.lock();
+                try {
+                    task.worker = null;
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                interruptLock.unlock();
+            }
+        }
+
+        void interruptTask(Task<?> task) {
+            interruptLock.lock();
+            try {
+                lock.lock();
+                try {
+                    if (task.worker != this) {
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                context.interrupt(INTERRUPT_TIMEOUT);
+            } catch (TimeoutException e) {
+                LOGGER.log(Level.WARNING, "GraalPy executor: cannot interrupt a cancelled task", e);
+            } finally {
+                interruptLock.unlock();
+            }
+        }
+    }
+
+    private GraalPyExecutor(Builder builder) {
+        this.contextFactory = builder.contextFactory;
+        this.queueCapacity = builder.queueCapacity;
+        for (int i = 0; i < builder.threads; i++) {
+            Worker worker = new Worker(i);
+            workers.add(worker);
+            worker.start();
+        }
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Worker worker : workers) {
+            while (worker.started.getCount() > 0) {
+                try {
+                    worker.started.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (worker.initFailure != null && failure == null) {
+                failure = worker.initFailure;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            close();
+            if (failure instanceof Error error) {
+                throw error;
+            }
+            if (failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Cannot create a context of the executor.", failure);
+        }
+    }
+
+    private Task<?> take() {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (closed) {
+                    return null;
+                }
+                notEmpty.awaitUninterruptibly();
+            }
+            Task<?> task = queue.poll();
+            notFull.signal();
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Submits a task to be run with the context of one of the threads of this executor, waiting
+     * until there is room in the queue if it is full.
+     *
+     * @return a future of the result of the task
+     * @throws RejectedExecutionException if the executor is closed
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @since 25.0.0
+     */
+    public <T> CompletableFuture<T> submit(Function<Context, T> task) throws InterruptedException {
+        Task<T> result = new Task<>(Objects.requireNonNull(task));
+        lock.lock();
+        try {
+            while (!closed && queue.size() >= queueCapacity) {
+                notFull.await();
+            }
+            enqueue(result);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Submits a task to be run with the context of one of the threads of this executor, unless the
+     * queue is full.
+     *
+     * @return a future of the result of the task
+     * @throws RejectedExecutionException if the queue is full or the executor is closed
+     * @since 25.0.0
+     */
+    public <T> CompletableFuture<T> trySubmit(Function<Context, T> task) {
+        Task<T> result = new Task<>(Objects.requireNonNull(task));
+        lock.lock();
+        try {
+            if (queue.size() >= queueCapacity) {
+                throw new RejectedExecutionException(String.format("The queue of the GraalPy executor is full (%d tasks).", queueCapacity));
+            }
+            enqueue(result);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    private void enqueue(Task<?> task) {
+        if (closed) {
+            throw new RejectedExecutionException("The GraalPy executor is closed.");
+        }
+        queue.add(task);
+        notEmpty.signal();
+    }
+
+    /**
+     * Evaluates the source and converts its result by the given function, both on a thread of
+     * this executor. Waits until there is room in the queue if it is full.
+     *
+     * @see #submit(Function)
+     * @since 25.0.0
+     */
+    public <T> CompletableFuture<T> eval(Source source, Function<Value, T> mapper) throws InterruptedException {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(mapper);
+        return submit((context) -> mapper.apply(context.eval(source)));
+    }
+
+    /**
+     * Evaluates the source on a thread of this executor. Waits until there is room in the queue if
+     * it is full. Note that accessing the resulting {@link Value} enters its context from the
+     * accessing thread, prefer {@link #eval(Source, Function)} to convert it on the executor
+     * thread.
+     *
+     * @see #submit(Function)
+     * @since 25.0.0
+     */
+    public CompletableFuture<Value> eval(Source source) throws InterruptedException {
+        return eval(source, Function.identity());
+    }
+
+    /**
+     * Stops accepting new tasks, waits until the queued and running tasks complete and closes the
+     * contexts of the executor threads.
+     *
+     * @since 25.0.0
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        for (Worker worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -44,8 +44,10 @@ package org.graalvm.python.embedding;
 import org.graalvm.nativeimage.ImageInfo;
 import org.graalvm.nativeimage.ProcessProperties;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.HostAccess;
 import org.graalvm.polyglot.PolyglotAccess;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.io.FileSystem;
 import org.graalvm.polyglot.io.IOAccess;
 
@@ -53,6 +55,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This class provides utilities related to Python resources used in GraalPy embedding scenarios
@@ -186,6 +190,45 @@ import java.nio.file.Paths;
  */
 public final class GraalPyResources {
 
+    /**
+     * Environment variable checked by the module finder which the GraalPy build tools generate into
+     * the virtual environment, see <code>VFSUtils.generateVFSModulesIndex</code>.
+     */
+    private static final String MODULE_INDEX_ENABLE_VARIABLE = "GRAALPY_VFS_MODULE_INDEX";
+
+    /**
+     * Python options set both on the created contexts and on the created engines, so that the
+     * contexts of a shared engine can share the parsed and compiled code.
+     */
+    private static final Map<String, String> PYTHON_OPTIONS = Map.of(
+                    // choose the backend for the POSIX module
+                    "python.PosixModuleBackend", "java",
+                    // equivalent to the Python -B flag
+                    "python.DontWriteBytecodeFlag", "true",
+                    // Force to automatically import site.py module, to make Python packages
+                    // available
+                    "python.ForceImportSite", "true",
+                    // causes the interpreter to always assume hash-based pycs are valid
+                    "python.CheckHashPycsMode", "never");
+
+    /**
+     * The maximum number of sources kept by {@link #cachedSource(String, CharSequence)}.
+     */
+    private static final int SOURCE_CACHE_SIZE = 256;
+
+    private record SourceKey(String name, String code) {
+    }
+
+    // guarded by itself, the least recently used source is evicted first
+    private static final Map<SourceKey, Source> sourceCache = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SourceKey, Source> eldest) {
+            return size() > SOURCE_CACHE_SIZE;
+        }
+    };
+
     private GraalPyResources() {
     }
 
@@ -273,6 +316,14 @@ public final class GraalPyResources {
      * </ul>
      * </p>
      * <p>
+     * If the virtual filesystem was built with {@link VirtualFileSystem.Builder#moduleIndex(boolean)
+     * module index} enabled, the created context installs a Python meta-path finder which resolves
+     * imports of the modules in the sources location and in the virtual environment from the index
+     * generated by the GraalPy Maven or Gradle plugin with the <code>moduleIndex</code> option, or
+     * by JBang with the <code>//PYTHON_MODULE_INDEX</code> comment, instead of looking them up file
+     * by file on <code>sys.path</code>.
+     * </p>
+     * <p>
      * <b>Example</b> creating a GraalPy context configured for the usage with a virtual
      * {@link FileSystem}:
      *
@@ -309,7 +360,7 @@ public final class GraalPyResources {
      * @since 24.2.0
      */
     public static Context.Builder contextBuilder(VirtualFileSystem vfs) {
-        return createContextBuilder().
+        Context.Builder builder = createContextBuilder().
         // allow access to the virtual and the host filesystem, as well as sockets
                         allowIO(IOAccess.newBuilder().allowHostSocketAccess(true).fileSystem(vfs.delegatingFileSystem).build()).
                         // The sys.executable path, a virtual path that is used by the interpreter
@@ -320,6 +371,11 @@ public final class GraalPyResources {
                         option("python.PythonPath", vfs.impl.vfsSrcPath()).
                         // pass the path to be executed
                         option("python.InputFilePath", vfs.impl.vfsSrcPath());
+        if (vfs.moduleIndex) {
+            // resolve imports from the module index generated at build time, if any
+            builder.environment(MODULE_INDEX_ENABLE_VARIABLE, "true");
+        }
+        return builder;
     }
 
     /**
@@ -422,15 +478,114 @@ public final class GraalPyResources {
                         // allow exporting Python values to polyglot bindings and accessing Java
                         // from Python
                         allowPolyglotAccess(PolyglotAccess.ALL).
-                        // choose the backend for the POSIX module
-                        option("python.PosixModuleBackend", "java").
-                        // equivalent to the Python -B flag
-                        option("python.DontWriteBytecodeFlag", "true").
-                        // Force to automatically import site.py module, to make Python packages
-                        // available
-                        option("python.ForceImportSite", "true").
-                        // causes the interpreter to always assume hash-based pycs are valid
-                        option("python.CheckHashPycsMode", "never");
+                        options(PYTHON_OPTIONS);
+    }
+
+    /**
+     * Creates an engine builder preconfigured with the same GraalPy options as the context
+     * builders created by this class. An engine shared by multiple contexts lets them share the
+     * parsed and compiled Python code, and the contexts created for it by
+     * {@link #contextBuilder(VirtualFileSystem, Engine)} or {@link #contextBuilder(Path, Engine)}
+     * are compatible with the engine options.
+     * <p>
+     * <b>Example</b>
+     *
+     * <pre>
+     * try (Engine engine = GraalPyResources.engineBuilder().option("engine.WarnInterpreterOnly", "false").build();
+     *                 Context context1 = GraalPyResources.contextBuilder(engine).build();
+     *                 Context context2 = GraalPyResources.contextBuilder(engine).build()) {
+     *     // the second import reuses the code parsed by the first one
+     *     context1.eval("python", "import mymodule");
+     *     context2.eval("python", "import mymodule");
+     * }
+     * </pre>
+     * </p>
+     *
+     * @return a new {@link org.graalvm.polyglot.Engine.Builder} instance
+     * @see #createEngine()
+     * @since 25.0.0
+     */
+    public static Engine.Builder engineBuilder() {
+        return Engine.newBuilder("python").options(PYTHON_OPTIONS);
+    }
+
+    /**
+     * Creates an engine preconfigured with the same GraalPy options as the context builders
+     * created by this class, see {@link #engineBuilder()}.
+     *
+     * @return a new {@link Engine} instance
+     * @since 25.0.0
+     */
+    public static Engine createEngine() {
+        return engineBuilder().build();
+    }
+
+    /**
+     * Same as {@link #contextBuilder()}, but the created contexts use the given shared engine.
+     *
+     * @param engine the engine shared by the created contexts, typically created by
+     *            {@link #createEngine()}
+     * @return a new {@link org.graalvm.polyglot.Context.Builder} instance
+     * @since 25.0.0
+     */
+    public static Context.Builder contextBuilder(Engine engine) {
+        return contextBuilder().engine(engine);
+    }
+
+    /**
+     * Same as {@link #contextBuilder(VirtualFileSystem)}, but the created contexts use the given
+     * shared engine.
+     *
+     * @param vfs the {@link VirtualFileSystem} to be used with the created {@link Context}
+     * @param engine the engine shared by the created contexts, typically created by
+     *            {@link #createEngine()}
+     * @return a new {@link org.graalvm.polyglot.Context.Builder} instance
+     * @since 25.0.0
+     */
+    public static Context.Builder contextBuilder(VirtualFileSystem vfs, Engine engine) {
+        return contextBuilder(vfs).engine(engine);
+    }
+
+    /**
+     * Same as {@link #contextBuilder(Path)}, but the created contexts use the given shared engine.
+     *
+     * @param externalResourcesDirectory the root directory with GraalPy specific embedding
+     *            resources
+     * @param engine the engine shared by the created contexts, typically created by
+     *            {@link #createEngine()}
+     * @return a new {@link org.graalvm.polyglot.Context.Builder} instance
+     * @since 25.0.0
+     */
+    public static Context.Builder contextBuilder(Path externalResourcesDirectory, Engine engine) {
+        return contextBuilder(externalResourcesDirectory).engine(engine);
+    }
+
+    /**
+     * Returns a Python {@link Source} with the given name and code, reusing the instance returned
+     * for the same name and code before. Contexts sharing an {@link Engine} parse and compile an
+     * equal source only once, so evaluating the source returned by this method avoids building and
+     * hashing the source again for frequently evaluated entry scripts. The most recently used
+     * sources are kept.
+     *
+     * <pre>
+     * context.eval(GraalPyResources.cachedSource("handler.py", "import handler; handler.run()"));
+     * </pre>
+     *
+     * @param name the name of the source, used in stack traces
+     * @param code the Python code
+     * @return the cached {@link Source}
+     * @since 25.0.0
+     */
+    public static Source cachedSource(String name, CharSequence code) {
+        SourceKey key = new SourceKey(name, code.toString());
+        synchronized (sourceCache) {
+            Source source = sourceCache.get(key);
+            if (source == null) {
+                source = Source.newBuilder("python", key.code(), name).cached(true).buildLiteral();
+                sourceCache.put(key, source);
+            }
+            return source;
+        }
     }
 
     /**
@@ -482,6 +637,13 @@ public final class GraalPyResources {
      * </p>
      * </p>
      * <p>
+     * A manifest of the extracted files is written into the directory as well. If the directory
+     * already contains the resources of the same virtual filesystem, nothing is extracted again,
+     * otherwise only the files which changed are written, so that it is cheap to call this method
+     * on every start of the application. The files are written atomically, so the directory can be
+     * shared by multiple processes.
+     * </p>
+     * <p>
      * <b>Example</b>
      *
      * <pre>
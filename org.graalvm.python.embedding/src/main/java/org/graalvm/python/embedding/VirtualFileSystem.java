@@ -60,6 +60,8 @@ public final class VirtualFileSystem implements AutoCloseable {
 
     final VirtualFileSystemImpl impl;
     final FileSystem delegatingFileSystem;
+    final boolean moduleIndex;
+    private boolean closed;
 
     /**
      * Determines if and how much host IO is allowed outside the {@link VirtualFileSystem}.
@@ -87,6 +89,21 @@ public final class VirtualFileSystem implements AutoCloseable {
         READ_WRITE,
     }
 
+    /**
+     * Statistics of the cache of file contents kept in memory by a {@link VirtualFileSystem}.
+     *
+     * @param hitCount the number of file reads served from the cache, including reads that waited
+     *            for a concurrent read of the same file to complete
+     * @param missCount the number of file reads that had to access the Java resources
+     * @param evictionCount the number of files evicted from the cache, either because the cache
+     *            limit was exceeded or because the garbage collector cleared them
+     * @param cachedBytes the total size of the file contents currently in the cache
+     * @see Builder#contentCacheLimit(long)
+     * @since 25.0.0
+     */
+    public record ContentCacheStatistics(long hitCount, long missCount, long evictionCount, long cachedBytes) {
+    }
+
     /**
      * Builder class to create {@link VirtualFileSystem} instances.
      *
@@ -96,12 +113,33 @@ public final class VirtualFileSystem implements AutoCloseable {
         private static final Pattern DEFAULT_EXTRACT_REGEX = Pattern.compile(".*(\\.(so|dylib|pyd|dll|ttf)$|\\.so\\..*)");
         private static final Predicate<Path> DEFAULT_EXTRACT_FILTER = (p) -> DEFAULT_EXTRACT_REGEX.matcher(p.toString()).matches();
 
+        /*
+         * A record, so that virtual filesystems configured with the same filter are equal and can
+         * share their state.
+         */
+        private record CombinedExtractFilter(Predicate<Path> filter) implements Predicate<Path> {
+            @Override
+            public boolean test(Path p) {
+                return filter.test(p) || DEFAULT_EXTRACT_FILTER.test(p);
+            }
+        }
+
         private static final String DEFAULT_WINDOWS_MOUNT_POINT = "X:\\graalpy_vfs";
         private static final String DEFAULT_UNIX_MOUNT_POINT = "/graalpy_vfs";
+        private static final long DEFAULT_STREAMING_READ_THRESHOLD = 16 * 1024 * 1024;
         private Path mountPoint;
         private Predicate<Path> extractFilter = DEFAULT_EXTRACT_FILTER;
         private HostIO allowHostIO = HostIO.READ_WRITE;
         private boolean caseInsensitive = VirtualFileSystemImpl.isWindows();
+        private long contentCacheLimit = Long.MAX_VALUE;
+        private boolean contentCacheSoftReferences;
+        private boolean contentCacheOffHeap;
+        private long streamingReadThreshold = DEFAULT_STREAMING_READ_THRESHOLD;
+        private Path extractionCacheDirectory;
+        private Path accessProfile;
+        private Path prefetchProfile;
+        private boolean shared;
+        private boolean moduleIndex;
 
         private Class<?> resourceLoadingClass;
         private String resourceDirectory;
@@ -243,8 +281,184 @@ public final class VirtualFileSystem implements AutoCloseable {
             if (filter == null) {
                 extractFilter = null;
             } else {
-                extractFilter = (p) -> filter.test(p) || DEFAULT_EXTRACT_FILTER.test(p);
+                extractFilter = new CombinedExtractFilter(filter);
+            }
+            return this;
+        }
+
+        /**
+         * Limits the total size of file contents cached in memory by the virtual filesystem. Files
+         * read from the Java resources are kept in memory so that repeated reads do not have to
+         * access the resources again. When the limit is exceeded, the least recently used files are
+         * evicted from the cache and read from the resources again on the next access. Files larger
+         * than the limit are never cached. Setting the limit to {@code 0} disables the cache. By
+         * default, the cache is not limited.
+         *
+         * @param maxBytes the maximum number of bytes kept in the cache
+         * @throws IllegalArgumentException if the limit is negative
+         * @see VirtualFileSystem#getContentCacheStatistics()
+         * @since 25.0.0
+         */
+        public Builder contentCacheLimit(long maxBytes) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("Content cache limit must not be negative.");
+            }
+            contentCacheLimit = maxBytes;
+            return this;
+        }
+
+        /**
+         * Determines if the file contents cached by the virtual filesystem are held through soft
+         * references, so that the garbage collector can reclaim them under memory pressure even
+         * before the {@link #contentCacheLimit(long) limit} is reached. Defaults to false.
+         *
+         * @since 25.0.0
+         */
+        public Builder contentCacheSoftReferences(boolean value) {
+            contentCacheSoftReferences = value;
+            return this;
+        }
+
+        /**
+         * Determines if the file contents cached by the virtual filesystem are kept in direct
+         * buffers outside of the Java heap. The cached contents then do not add to the heap size
+         * and to the work of the garbage collector, and reads of the files are served straight
+         * from the cached buffers. The memory is released once the cached contents are evicted or
+         * the virtual filesystem is {@link VirtualFileSystem#close() closed} and the buffers are
+         * collected. Defaults to false.
+         * <p/>
+         * Direct buffers are limited by the {@code -XX:MaxDirectMemorySize} option of the JVM,
+         * which defaults to the maximum heap size. Since the cache is not limited by default, the
+         * reads then fail with {@code OutOfMemoryError: Direct buffer memory} once the cached
+         * contents exceed that limit. Set a {@link #contentCacheLimit(long) content cache limit}
+         * well below the direct memory limit when using this option.
+         *
+         * @since 25.0.0
+         */
+        public Builder contentCacheOffHeap(boolean value) {
+            contentCacheOffHeap = value;
+            return this;
+        }
+
+        /**
+         * Files larger than the given threshold are not loaded into memory when opened, but are
+         * read from the Java resources on demand as the Python code consumes them. Such files are
+         * not kept in the {@link #contentCacheLimit(long) content cache}. Files from a packed
+         * virtual filesystem that is memory-mapped are never loaded into memory, regardless of
+         * this threshold. Defaults to 16 MB.
+         *
+         * @param bytes the size in bytes above which files are read on demand
+         * @throws IllegalArgumentException if the threshold is negative
+         * @since 25.0.0
+         */
+        public Builder streamingReadThreshold(long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Streaming read threshold must not be negative.");
             }
+            streamingReadThreshold = bytes;
+            return this;
+        }
+
+        /**
+         * Sets a directory in which the files matching the {@link #extractFilter(Predicate)
+         * extraction filter} are kept across runs, instead of extracting them to a new temporary
+         * directory every time. Files extracted together are stored in a subdirectory named after a
+         * digest of their contents, so that the directory can be shared by different applications
+         * or versions of an application and by multiple processes running at the same time. Files
+         * already present in the directory are reused. The directory is created if it does not
+         * exist and it is never deleted by the virtual filesystem. By default, files are extracted
+         * to a temporary directory which is deleted on exit.
+         *
+         * @param directory the extraction cache directory, or {@code null} to use a temporary
+         *            directory
+         * @since 25.0.0
+         */
+        public Builder extractionCacheDirectory(Path directory) {
+            extractionCacheDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Enables tracing of the accesses to the virtual filesystem and sets the file the access
+         * profile is written to when the virtual filesystem is closed. The profile lists the
+         * accessed files and directories in the order of their first access, together with the
+         * number of accesses, the number of bytes read and the time of the first access. It can
+         * also be written at any time with {@link VirtualFileSystem#writeAccessProfile(Path)}.
+         * <p/>
+         * If not set, the file can also be given by the
+         * {@code org.graalvm.python.vfs.accessProfile} system property. By default, the accesses
+         * are not traced.
+         *
+         * @param file the access profile file, or {@code null} to not trace the accesses
+         * @since 25.0.0
+         */
+        public Builder accessProfile(Path file) {
+            accessProfile = file;
+            return this;
+        }
+
+        /**
+         * Sets an {@link #accessProfile(Path) access profile} of a previous run used to warm up
+         * the virtual filesystem. Right after the virtual filesystem is created, the files listed
+         * in the profile are loaded into the {@link #contentCacheLimit(long) content cache}, or
+         * extracted if they match the {@link #extractFilter(Predicate) extraction filter}, by a
+         * small number of background threads in the order of the profile, so that the
+         * initialization of the Python context overlaps with reading the resources. Besides the
+         * access profile format, the file may also simply list one resource path per line, lines
+         * starting with '#' are ignored. Files which do not exist in the virtual filesystem
+         * anymore are skipped, as well as files above the
+         * {@link #streamingReadThreshold(long) streaming read threshold}.
+         * <p/>
+         * If not set, the file can also be given by the
+         * {@code org.graalvm.python.vfs.prefetchProfile} system property. By default, nothing is
+         * prefetched.
+         *
+         * @param file the profile file, or {@code null} to not prefetch any files
+         * @since 25.0.0
+         */
+        public Builder prefetchProfile(Path file) {
+            prefetchProfile = file;
+            return this;
+        }
+
+        /**
+         * Allows the virtual filesystem to share its state with other virtual filesystems built
+         * with this option, the same configuration, including the same
+         * {@link #extractFilter(Predicate) extraction filter} instance, and for the same class
+         * loader. Such virtual filesystems share the index of the files, the
+         * {@link #contentCacheLimit(long) cached file contents} and the extracted files as long as
+         * any of them is not closed, so that creating another one for the same resources does not
+         * read the index again. Only the {@link #allowHostIO(HostIO) host IO} and the
+         * {@link #moduleIndex(boolean) module index} settings are not shared. By default, each
+         * virtual filesystem has its own state.
+         *
+         * @param value {@code true} to share the state with equally configured virtual
+         *            filesystems
+         * @since 25.0.0
+         */
+        public Builder shared(boolean value) {
+            shared = value;
+            return this;
+        }
+
+        /**
+         * Makes the contexts created by {@link GraalPyResources#contextBuilder(VirtualFileSystem)}
+         * resolve imports of the modules in the sources location and in the virtual environment
+         * from the module index generated by the GraalPy Maven or Gradle plugin with the
+         * <code>moduleIndex</code> option, or by JBang with the <code>//PYTHON_MODULE_INDEX</code>
+         * comment, instead of looking them up file by file on <code>sys.path</code>. If the virtual
+         * filesystem does not contain a module index, this has no effect.
+         * <p/>
+         * The index is enabled by the <code>GRAALPY_VFS_MODULE_INDEX</code> environment variable of
+         * the context, which the Python module finder removes from <code>os.environ</code> once it
+         * is installed, so that it is not passed on to subprocesses. The default is
+         * {@code false}.
+         *
+         * @param value {@code true} to resolve imports from the module index
+         * @since 25.0.0
+         */
+        public Builder moduleIndex(boolean value) {
+            moduleIndex = value;
             return this;
         }
 
@@ -258,7 +472,8 @@ public final class VirtualFileSystem implements AutoCloseable {
             if (mountPoint == null) {
                 mountPoint = VirtualFileSystemImpl.isWindows() ? Path.of(DEFAULT_WINDOWS_MOUNT_POINT) : Path.of(DEFAULT_UNIX_MOUNT_POINT);
             }
-            return new VirtualFileSystem(extractFilter, mountPoint, allowHostIO, resourceLoadingClass, resourceDirectory, caseInsensitive);
+            return new VirtualFileSystem(extractFilter, mountPoint, allowHostIO, resourceLoadingClass, resourceDirectory, caseInsensitive, contentCacheLimit, contentCacheSoftReferences,
+                            contentCacheOffHeap, streamingReadThreshold, extractionCacheDirectory, accessProfile, prefetchProfile, shared, moduleIndex);
         }
     }
 
@@ -275,10 +490,21 @@ public final class VirtualFileSystem implements AutoCloseable {
                     HostIO allowHostIO,
                     Class<?> resourceLoadingClass,
                     String resourceDirectory,
-                    boolean caseInsensitive) {
+                    boolean caseInsensitive,
+                    long contentCacheLimit,
+                    boolean contentCacheSoftReferences,
+                    boolean contentCacheOffHeap,
+                    long streamingReadThreshold,
+                    Path extractionCacheDirectory,
+                    Path accessProfile,
+                    Path prefetchProfile,
+                    boolean shared,
+                    boolean moduleIndex) {
 
-        this.impl = new VirtualFileSystemImpl(extractFilter, mountPoint, resourceDirectory, allowHostIO, resourceLoadingClass, caseInsensitive);
-        this.delegatingFileSystem = VirtualFileSystemImpl.createDelegatingFileSystem(impl);
+        this.impl = VirtualFileSystemImpl.acquire(extractFilter, mountPoint, resourceDirectory, resourceLoadingClass, caseInsensitive, contentCacheLimit,
+                        contentCacheSoftReferences, contentCacheOffHeap, streamingReadThreshold, extractionCacheDirectory, accessProfile, prefetchProfile, shared);
+        this.delegatingFileSystem = VirtualFileSystemImpl.createDelegatingFileSystem(impl, allowHostIO);
+        this.moduleIndex = moduleIndex;
     }
 
     /**
@@ -311,6 +537,35 @@ public final class VirtualFileSystem implements AutoCloseable {
         return this.impl.mountPoint.toString();
     }
 
+    /**
+     * Returns a snapshot of the statistics of the file contents cache of this
+     * {@link VirtualFileSystem}. The statistics include the accesses through all the virtual
+     * filesystems sharing the cache, see {@link Builder#shared(boolean)}.
+     *
+     * @see VirtualFileSystem.Builder#contentCacheLimit(long)
+     *
+     * @since 25.0.0
+     */
+    public ContentCacheStatistics getContentCacheStatistics() {
+        return this.impl.getContentCacheStatistics();
+    }
+
+    /**
+     * Writes the profile of the accesses to this {@link VirtualFileSystem} traced so far to the
+     * given file. The profile includes the accesses through all the virtual filesystems sharing
+     * the index of the files, see {@link Builder#shared(boolean)}.
+     *
+     * @throws IllegalStateException if the accesses are not traced
+     * @throws IOException if the file could not be written
+     *
+     * @see VirtualFileSystem.Builder#accessProfile(Path)
+     *
+     * @since 25.0.0
+     */
+    public void writeAccessProfile(Path file) throws IOException {
+        this.impl.writeAccessProfile(file);
+    }
+
     /**
      * Closes the VirtualFileSystem and frees up potentially allocated resources.
      *
@@ -318,6 +573,12 @@ public final class VirtualFileSystem implements AutoCloseable {
      */
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
         impl.close();
     }
 
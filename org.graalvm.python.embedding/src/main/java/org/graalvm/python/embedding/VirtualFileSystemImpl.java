@@ -43,25 +43,42 @@ package org.graalvm.python.embedding;
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static org.graalvm.python.embedding.VirtualFileSystem.HostIO.NONE;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.invoke.VarHandle;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessMode;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystemException;
+import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
@@ -72,30 +89,52 @@ import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import org.graalvm.nativeimage.ImageInfo;
 import org.graalvm.polyglot.io.FileSystem;
 import org.graalvm.python.embedding.VirtualFileSystem.HostIO;
 
@@ -133,6 +172,13 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
     private static final String MULTI_VSF_CHECKS_AS_WARNING_PROP = "org.graalvm.python.vfs.multiple_vfs_checks_as_warning";
     public static final String MULTI_VFS_ALLOW_PROP = "org.graalvm.python.vfs.allow_multiple";
     public static final String MULTI_VFS_SINGLE_ROOT_URL_PROP = "org.graalvm.python.vfs.root_url";
+    private static final String ACCESS_PROFILE_PROP = "org.graalvm.python.vfs.accessProfile";
+    private static final String PREFETCH_PROFILE_PROP = "org.graalvm.python.vfs.prefetchProfile";
+
+    /*
+     * The maximum number of threads prefetching the files listed in a prefetch profile.
+     */
+    private static final int MAX_PREFETCH_PARALLELISM = 4;
 
     private static final String DEFAULT_VFS_ROOT = "org.graalvm.python.vfs";
 
@@ -147,6 +193,8 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
     static final String VFS_SRC = "src";
 
     private static final String FILES_LIST = "fileslist.txt";
+    private static final String FILES_INDEX = "filesindex.bin";
+    private static final String FILES_ARCHIVE = "filesarchive.bin";
     public static final String CONTENTS_FILE = resourcePath(VFS_VENV, "contents");
     private static final String INSTALLED_FILE = resourcePath(VFS_VENV, "installed.txt");
 
@@ -162,12 +210,11 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
 
     private String platformSrcPath;
 
-    private final VirtualFileSystem.HostIO allowHostIO;
-
     /*
-     * Maps platform-specific paths to entries.
+     * The mount point directory, the root of the tree of entries. Paths are looked up by walking
+     * the tree component by component, see getEntry(Path).
      */
-    private final Map<String, BaseEntry> vfsEntries = new HashMap<>();
+    private DirEntry root;
 
     /**
      * Class used to read resources with getResource(name). By default VirtualFileSystem.class.
@@ -175,14 +222,27 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
     private Class<?> resourceLoadingClass;
 
     static final String PLATFORM_SEPARATOR = Paths.get("").getFileSystem().getSeparator();
+    private static final char PLATFORM_SEPARATOR_CHAR = PLATFORM_SEPARATOR.charAt(0);
     private static final char RESOURCE_SEPARATOR_CHAR = '/';
     private static final String RESOURCE_SEPARATOR = String.valueOf(RESOURCE_SEPARATOR_CHAR);
 
     private abstract sealed class BaseEntry permits FileEntry, DirEntry {
         final String platformPath;
+        /*
+         * Start of the last path component, i.e., the name of this entry, in the platform path.
+         */
+        private final int nameStart;
 
         private BaseEntry(String platformPath) {
             this.platformPath = platformPath;
+            this.nameStart = platformPath.lastIndexOf(PLATFORM_SEPARATOR_CHAR) + 1;
+        }
+
+        /**
+         * Checks if the name of this entry equals to the region of the given path.
+         */
+        boolean nameMatches(String path, int start, int end) {
+            return platformPath.length() - nameStart == end - start && platformPath.regionMatches(caseInsensitive, nameStart, path, start, end - start);
         }
 
         String getPlatformPath() {
@@ -196,32 +256,1256 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
         static AssertionError throwUnexpectedSubclass() {
             throw new AssertionError("Unexpected subclass of sealed DirEntry");
         }
-    }
-
-    private final class FileEntry extends BaseEntry {
-        private byte[] data;
-        private List<FileEntry> toExtract;
-
-        public FileEntry(String path) {
-            super(path);
+    }
+
+    private final class FileEntry extends BaseEntry {
+        private List<FileEntry> toExtract;
+        /*
+         * Size of the file in bytes, or -1 if it was not recorded in the virtual filesystem index
+         * and was not determined yet.
+         */
+        private volatile long size;
+        /*
+         * Set once the file was extracted to the host filesystem.
+         */
+        private volatile Path extractedPath;
+        /*
+         * The location this file comes from, or null if the file has to be looked up by the class
+         * loader.
+         */
+        private final ResourceLocation location;
+        /*
+         * The archive containing the data of this file and the offset of the data in it, or null if
+         * the file is a separate resource.
+         */
+        private final PackedArchive archive;
+        private final long offset;
+        /*
+         * SHA-256 digest of the file data, or null if it was not recorded in the virtual
+         * filesystem index and was not computed yet.
+         */
+        private volatile byte[] hash;
+
+        public FileEntry(String path, long size, ResourceLocation location, long offset, byte[] hash) {
+            super(path);
+            assert offset < 0 || (location != null && size >= 0);
+            assert hash == null || size >= 0;
+            this.size = size;
+            this.location = location;
+            this.archive = offset >= 0 ? location.getArchive() : null;
+            this.offset = offset;
+            this.hash = hash;
+        }
+
+        private long getSize() throws IOException {
+            if (size < 0) {
+                ByteBuffer loaded = contentCache.peek(this);
+                if (loaded != null) {
+                    size = loaded.remaining();
+                } else {
+                    long resourceSize = location != null ? location.readSize(getResourcePath()) : readResourceSize(getResourcePath());
+                    size = resourceSize >= 0 ? resourceSize : getContents().remaining();
+                }
+            }
+            return size;
+        }
+
+        private byte[] getData() throws IOException {
+            if (archive != null && archive.isMapped()) {
+                // reading from the mapped archive is cheap, no need to cache
+                return readData();
+            }
+            ByteBuffer contents = contentCache.getOrLoad(this);
+            byte[] data = new byte[contents.remaining()];
+            contents.get(data);
+            return data;
+        }
+
+        /**
+         * Returns the contents of this file as a read-only buffer. For files from a memory-mapped
+         * archive this is a slice of the mapping and for files cached off-heap it is the direct
+         * buffer with the cached data, so no data are copied.
+         */
+        private ByteBuffer getContents() throws IOException {
+            if (archive != null && archive.isMapped()) {
+                return archive.slice(offset, size);
+            }
+            return contentCache.getOrLoad(this);
+        }
+
+        /**
+         * Opens a stream reading the data of this file from the beginning, without loading all of
+         * it into memory.
+         */
+        private InputStream openStream() throws IOException {
+            if (archive != null) {
+                return archive.openStream(offset);
+            }
+            return location != null ? location.openStream(getResourcePath()) : getResourceUrl(getResourcePath()).openStream();
+        }
+
+        private byte[] getHash() throws IOException {
+            byte[] result = hash;
+            if (result == null) {
+                byte[] data = readData();
+                size = data.length;
+                result = hash = newDigest().digest(data);
+            }
+            return result;
+        }
+
+        /**
+         * Returns the digest of the data of this file if it is already known, e.g., from the
+         * index, otherwise the size and the modification time of the resource. Neither reads the
+         * data, unless the modification time is not known.
+         */
+        private byte[] getStamp() throws IOException {
+            byte[] result = hash;
+            if (result == null) {
+                long lastModified = location != null ? location.readLastModified(getResourcePath()) : readResourceLastModified(getResourcePath());
+                if (lastModified <= 0) {
+                    return getHash();
+                }
+                result = ByteBuffer.allocate(2 * Long.BYTES).putLong(getSize()).putLong(lastModified).array();
+            }
+            return result;
+        }
+
+        private void recordRead(long bytes) {
+            if (accessProfile != null) {
+                accessProfile.recordRead(this, bytes);
+            }
+        }
+
+        /**
+         * Reads the data of this file bypassing the content cache.
+         */
+        private byte[] readData() throws IOException {
+            if (archive != null) {
+                return archive.read(offset, size);
+            }
+            return location != null ? location.read(getResourcePath()) : readResource(getResourcePath());
+        }
+    }
+
+    /**
+     * Read-only channel which reads a file on demand instead of loading all of its data into
+     * memory. Sequential reads are served from a read-ahead buffer, seeking forward skips in the
+     * underlying stream and seeking backward reopens it.
+     */
+    private static final class StreamingByteChannel implements SeekableByteChannel {
+        private static final int READ_AHEAD_SIZE = 64 * 1024;
+
+        private final FileEntry fileEntry;
+        private final long size;
+        private InputStream stream;
+        private long streamPosition;
+        private long position;
+        private boolean open = true;
+
+        StreamingByteChannel(FileEntry fileEntry, long size) {
+            this.fileEntry = fileEntry;
+            this.size = size;
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (position >= size) {
+                return -1;
+            }
+            if (stream == null || streamPosition > position) {
+                if (stream != null) {
+                    stream.close();
+                }
+                stream = new BufferedInputStream(fileEntry.openStream(), READ_AHEAD_SIZE);
+                streamPosition = 0;
+            }
+            if (streamPosition < position) {
+                stream.skipNBytes(position - streamPosition);
+                streamPosition = position;
+            }
+            int length = (int) Math.min(dst.remaining(), size - position);
+            int n;
+            if (dst.hasArray()) {
+                n = stream.read(dst.array(), dst.arrayOffset() + dst.position(), length);
+                if (n > 0) {
+                    dst.position(dst.position() + n);
+                }
+            } else {
+                byte[] buffer = new byte[Math.min(length, READ_AHEAD_SIZE)];
+                n = stream.read(buffer, 0, buffer.length);
+                if (n > 0) {
+                    dst.put(buffer, 0, n);
+                }
+            }
+            if (n < 0) {
+                return -1;
+            }
+            position += n;
+            streamPosition += n;
+            fileEntry.recordRead(n);
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            position = Math.max(0, newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            ensureOpen();
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long newSize) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            open = false;
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+
+    /**
+     * Location of one virtual filesystem in the Java resources, i.e., the directory or the jar file
+     * containing the files list. It is resolved once during initialization, so that the files can
+     * be read directly from it instead of being looked up by the class loader on each access, which
+     * scans the whole class path. Files in locations which cannot be accessed directly, e.g., nested
+     * jar files or native image resources, are still read through the class loader.
+     */
+    private final class ResourceLocation {
+        private final URL filelistUrl;
+        /*
+         * The resources root directory, if the resources are in a directory.
+         */
+        private final Path baseDir;
+        /*
+         * The jar file, if the resources are in a jar file.
+         */
+        private final Path jarPath;
+        private ZipFile zipFile;
+        private boolean zipFileUnavailable;
+        private PackedArchive archive;
+        /*
+         * True if the groups of files extracted together were read from the index of this
+         * location, so the wheel RECORD files do not have to be parsed.
+         */
+        private boolean extractionGroupsIndexed;
+
+        ResourceLocation(URL filelistUrl) {
+            this.filelistUrl = filelistUrl;
+            Path dir = null;
+            Path jar = null;
+            String filelistPath = resourcePath(vfsRoot, FILES_LIST);
+            String url = filelistUrl.toString();
+            if (url.endsWith(filelistPath)) {
+                String base = url.substring(0, url.length() - filelistPath.length());
+                try {
+                    if (base.startsWith("file:")) {
+                        dir = Path.of(URI.create(base));
+                    } else if (base.startsWith("jar:file:") && base.indexOf("!/") == base.length() - 2) {
+                        jar = Path.of(URI.create(base.substring("jar:".length(), base.length() - 2)));
+                    }
+                } catch (IllegalArgumentException | FileSystemNotFoundException ex) {
+                    fine("VFS: cannot resolve resources location '%s': %s", base, ex);
+                }
+            }
+            this.baseDir = dir;
+            this.jarPath = jar;
+            fine("VFS: resources location '%s' resolved to %s", filelistUrl, dir != null ? dir : jar != null ? jar : "class loader");
+        }
+
+        byte[] read(String resourcePath) throws IOException {
+            String name = resourcePath.substring(1);
+            if (baseDir != null) {
+                try {
+                    return Files.readAllBytes(baseDir.resolve(name));
+                } catch (NoSuchFileException ex) {
+                    finer("VFS: '%s' not found in '%s'", name, baseDir);
+                }
+            } else if (jarPath != null) {
+                ZipFile zip = getZipFile();
+                ZipEntry entry = zip != null ? zip.getEntry(name) : null;
+                if (entry != null) {
+                    try (InputStream stream = zip.getInputStream(entry)) {
+                        return stream.readAllBytes();
+                    }
+                }
+            }
+            return readResource(resourcePath);
+        }
+
+        InputStream openStream(String resourcePath) throws IOException {
+            String name = resourcePath.substring(1);
+            if (baseDir != null) {
+                try {
+                    return Files.newInputStream(baseDir.resolve(name));
+                } catch (NoSuchFileException ex) {
+                    finer("VFS: '%s' not found in '%s'", name, baseDir);
+                }
+            } else if (jarPath != null) {
+                ZipFile zip = getZipFile();
+                ZipEntry entry = zip != null ? zip.getEntry(name) : null;
+                if (entry != null) {
+                    return zip.getInputStream(entry);
+                }
+            }
+            return getResourceUrl(resourcePath).openStream();
+        }
+
+        /**
+         * Determines the size of a resource without reading its contents. Returns -1 if the size
+         * is not known.
+         */
+        long readSize(String resourcePath) throws IOException {
+            String name = resourcePath.substring(1);
+            if (baseDir != null) {
+                try {
+                    return Files.size(baseDir.resolve(name));
+                } catch (NoSuchFileException ex) {
+                    finer("VFS: '%s' not found in '%s'", name, baseDir);
+                }
+            } else if (jarPath != null) {
+                ZipFile zip = getZipFile();
+                ZipEntry entry = zip != null ? zip.getEntry(name) : null;
+                if (entry != null) {
+                    return entry.getSize();
+                }
+            }
+            return readResourceSize(resourcePath);
+        }
+
+        /**
+         * Determines the modification time of a resource without reading its contents. Returns 0
+         * if the time is not known.
+         */
+        long readLastModified(String resourcePath) throws IOException {
+            String name = resourcePath.substring(1);
+            if (baseDir != null) {
+                try {
+                    return Files.getLastModifiedTime(baseDir.resolve(name)).toMillis();
+                } catch (NoSuchFileException ex) {
+                    finer("VFS: '%s' not found in '%s'", name, baseDir);
+                }
+            } else if (jarPath != null) {
+                ZipFile zip = getZipFile();
+                ZipEntry entry = zip != null ? zip.getEntry(name) : null;
+                if (entry != null) {
+                    return Math.max(0, entry.getTime());
+                }
+            }
+            return readResourceLastModified(resourcePath);
+        }
+
+        private synchronized ZipFile getZipFile() {
+            if (zipFile == null && !zipFileUnavailable) {
+                try {
+                    zipFile = new ZipFile(jarPath.toFile());
+                } catch (IOException ex) {
+                    fine("VFS: cannot open '%s', falling back to the class loader: %s", jarPath, ex);
+                    zipFileUnavailable = true;
+                }
+            }
+            return zipFile;
+        }
+
+        synchronized PackedArchive getArchive() {
+            if (archive == null) {
+                archive = new PackedArchive(siblingURL(filelistUrl, FILES_ARCHIVE), this, resourcePath(vfsRoot, FILES_ARCHIVE));
+            }
+            return archive;
+        }
+
+        synchronized void close() {
+            if (archive != null) {
+                archive.close();
+            }
+            if (zipFile != null) {
+                try {
+                    zipFile.close();
+                } catch (IOException ex) {
+                    fine("VFS: cannot close '%s': %s", jarPath, ex);
+                }
+                zipFile = null;
+            }
+            // do not reopen the jar file after the filesystem was closed
+            zipFileUnavailable = true;
+        }
+    }
+
+    private final List<ResourceLocation> resourceLocations = new ArrayList<>();
+
+    /**
+     * Archive with the data of all files of one virtual filesystem location packed together, see
+     * <code>VFSUtils.generateVFSFilesIndex</code>. The offsets of the files in the archive are
+     * stored in the virtual filesystem index. If the archive is a file, it is memory-mapped when it
+     * is first accessed. Otherwise, e.g., if it is in a jar file, each read opens the archive entry
+     * and skips to the offset of the file. Skipping is cheap only if the entry is stored
+     * uncompressed, so the data read this way go through the content cache.
+     */
+    private static final class PackedArchive {
+        private final URL url;
+        /*
+         * The location of the archive and the name of its jar entry, used to read an archive which
+         * is not a file.
+         */
+        private final ResourceLocation location;
+        private final String entryName;
+        private volatile boolean opened;
+        private Path path;
+        private FileChannel channel;
+        private ByteBuffer mapped;
+
+        PackedArchive(URL url, ResourceLocation location, String entryName) {
+            this.url = url;
+            this.location = location;
+            this.entryName = entryName;
+        }
+
+        /**
+         * Creates an archive with the given data, e.g., from the image heap.
+         */
+        PackedArchive(URL url, byte[] data) {
+            this.url = url;
+            this.location = null;
+            this.entryName = null;
+            this.mapped = ByteBuffer.wrap(data).asReadOnlyBuffer();
+            this.opened = true;
+        }
+
+        private synchronized void open() throws IOException {
+            if (opened) {
+                return;
+            }
+            Path archivePath = null;
+            if ("file".equals(url.getProtocol())) {
+                try {
+                    archivePath = Path.of(url.toURI());
+                } catch (URISyntaxException | IllegalArgumentException ex) {
+                    fine("VFS: cannot convert '%s' to a path: %s", url, ex);
+                }
+            }
+            if (archivePath == null) {
+                fine("VFS: packed archive '%s' is not a file, reading it as a stream", url);
+                opened = true;
+                return;
+            }
+            path = archivePath;
+            FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+            long archiveSize = fc.size();
+            if (archiveSize <= Integer.MAX_VALUE) {
+                // the mapping stays valid after the channel is closed
+                try (fc) {
+                    mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, archiveSize);
+                }
+            } else {
+                // too big to be mapped by a single buffer, use positioned reads instead
+                channel = fc;
+            }
+            opened = true;
+        }
+
+        boolean isMapped() throws IOException {
+            open();
+            return mapped != null;
+        }
+
+        /**
+         * Opens a stream reading the archive from the given offset.
+         */
+        InputStream openStream(long offset) throws IOException {
+            open();
+            InputStream stream;
+            if (path != null) {
+                stream = Files.newInputStream(path);
+            } else if (mapped != null) {
+                return new ByteArrayInputStream(read(offset, mapped.capacity() - offset));
+            } else {
+                stream = openArchiveStream();
+            }
+            try {
+                stream.skipNBytes(offset);
+            } catch (IOException ex) {
+                stream.close();
+                throw ex;
+            }
+            return stream;
+        }
+
+        ByteBuffer slice(long offset, long length) throws IOException {
+            open();
+            if (mapped != null) {
+                checkBounds(offset, length, mapped.capacity());
+                return mapped.slice((int) offset, (int) length).asReadOnlyBuffer();
+            }
+            return ByteBuffer.wrap(read(offset, length)).asReadOnlyBuffer();
+        }
+
+        byte[] read(long offset, long length) throws IOException {
+            open();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(String.format("file of size %d in '%s' is too large", length, url));
+            }
+            byte[] data = new byte[(int) length];
+            if (mapped != null) {
+                checkBounds(offset, length, mapped.capacity());
+                mapped.get((int) offset, data);
+            } else if (channel == null) {
+                try (InputStream stream = openStream(offset)) {
+                    if (stream.readNBytes(data, 0, data.length) != data.length) {
+                        throw new IOException(String.format("unexpected end of packed archive '%s'", url));
+                    }
+                }
+            } else {
+                ByteBuffer dst = ByteBuffer.wrap(data);
+                long position = offset;
+                while (dst.hasRemaining()) {
+                    int n = channel.read(dst, position);
+                    if (n < 0) {
+                        throw new IOException(String.format("unexpected end of packed archive '%s'", url));
+                    }
+                    position += n;
+                }
+            }
+            return data;
+        }
+
+        private InputStream openArchiveStream() throws IOException {
+            ZipFile zip = location != null && location.jarPath != null ? location.getZipFile() : null;
+            ZipEntry entry = zip != null ? zip.getEntry(entryName) : null;
+            return entry != null ? zip.getInputStream(entry) : url.openStream();
+        }
+
+        private void checkBounds(long offset, long length, long archiveSize) throws IOException {
+            if (offset < 0 || length < 0 || offset + length > archiveSize) {
+                throw new IOException(String.format("invalid offset %d and size %d in packed archive '%s'", offset, length, url));
+            }
+        }
+
+        synchronized void close() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            } catch (IOException e) {
+                fine("VFS: cannot close packed archive '%s': %s", url, e);
+            }
+        }
+    }
+
+    private final class DirEntry extends BaseEntry {
+        List<BaseEntry> entries = new ArrayList<>();
+        /*
+         * Open addressing hash table of the children by name, which allows to look up a child by a
+         * region of a path string without creating a substring.
+         */
+        private BaseEntry[] children = new BaseEntry[4];
+        private int childrenCount;
+
+        DirEntry(String platformPath) {
+            super(platformPath);
+        }
+
+        BaseEntry getChild(String path, int start, int end) {
+            int mask = children.length - 1;
+            for (int i = nameHash(path, start, end) & mask;; i = (i + 1) & mask) {
+                BaseEntry child = children[i];
+                if (child == null || child.nameMatches(path, start, end)) {
+                    return child;
+                }
+            }
+        }
+
+        /**
+         * Adds the child or replaces the child with the same name. Returns the replaced child.
+         */
+        BaseEntry putChild(BaseEntry entry) {
+            if (childrenCount * 2 >= children.length) {
+                BaseEntry[] old = children;
+                children = new BaseEntry[old.length * 2];
+                for (BaseEntry child : old) {
+                    if (child != null) {
+                        insertChild(child);
+                    }
+                }
+            }
+            BaseEntry previous = insertChild(entry);
+            if (previous == null) {
+                childrenCount++;
+            }
+            return previous;
+        }
+
+        private BaseEntry insertChild(BaseEntry entry) {
+            String path = entry.platformPath;
+            int mask = children.length - 1;
+            for (int i = nameHash(path, entry.nameStart, path.length()) & mask;; i = (i + 1) & mask) {
+                BaseEntry child = children[i];
+                if (child == null || child.nameMatches(path, entry.nameStart, path.length())) {
+                    children[i] = entry;
+                    return child;
+                }
+            }
+        }
+
+        private void collectEntries(List<BaseEntry> result) {
+            for (BaseEntry child : children) {
+                if (child != null) {
+                    result.add(child);
+                    if (child instanceof DirEntry dir) {
+                        dir.collectEntries(result);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Hash of a region of a path string, consistent with comparing the region using
+     * {@link String#regionMatches(boolean, int, String, int, int)}.
+     */
+    private int nameHash(String path, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            h = 31 * h + (caseInsensitive ? Character.toLowerCase(Character.toUpperCase(c)) : c);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns all entries in the virtual filesystem.
+     */
+    private List<BaseEntry> getAllEntries() {
+        List<BaseEntry> result = new ArrayList<>();
+        if (root != null) {
+            result.add(root);
+            root.collectEntries(result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the directory entry with the given path in the given parent directory, which is
+     * {@code null} for the mount point, and creates it if it does not exist yet.
+     */
+    private DirEntry getOrCreateDirEntry(DirEntry parent, String platformPath) {
+        BaseEntry genericEntry = parent == null ? root : parent.getChild(platformPath, platformPath.lastIndexOf(PLATFORM_SEPARATOR_CHAR) + 1, platformPath.length());
+        if (genericEntry instanceof DirEntry de) {
+            return de;
+        } else if (genericEntry != null) {
+            throw fileDirDuplicateMismatchError(toCaseComparable(platformPath));
+        }
+        DirEntry dirEntry = new DirEntry(platformPath);
+        finest("  %s", dirEntry.getResourcePath());
+        if (parent == null) {
+            root = dirEntry;
+        } else {
+            parent.putChild(dirEntry);
+            parent.entries.add(dirEntry);
+        }
+        return dirEntry;
+    }
+
+    /**
+     * Cache of the file contents read from the resources. The total size of the cached data is
+     * bounded, least recently used files are evicted first and read again from the resources on the
+     * next access. Optionally, the data is held through soft references, so that the garbage
+     * collector can reclaim it under memory pressure before the limit is reached. Concurrent loads
+     * of the same file are coalesced, so that only one thread reads it from the resources and the
+     * other threads wait for its result. The data is kept either in heap buffers, or in direct
+     * buffers outside of the Java heap, which do not add to the work of the garbage collector.
+     */
+    private static final class ContentCache {
+        private final long maxBytes;
+        private final boolean softReferences;
+        private final boolean offHeap;
+        private final LinkedHashMap<FileEntry, CachedData> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final HashMap<FileEntry, CompletableFuture<ByteBuffer>> pendingLoads = new HashMap<>();
+        private long cachedBytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        /*
+         * The cached buffers are read-only and never handed out directly, only their duplicates, so
+         * that their positions cannot be changed by the users.
+         */
+        private record CachedData(ByteBuffer data, SoftReference<ByteBuffer> ref, int length) {
+            ByteBuffer get() {
+                return data != null ? data : ref.get();
+            }
+        }
+
+        ContentCache(long maxBytes, boolean softReferences, boolean offHeap) {
+            this.maxBytes = maxBytes;
+            this.softReferences = softReferences;
+            this.offHeap = offHeap;
+        }
+
+        /**
+         * Returns the contents of the file as a read-only buffer.
+         */
+        ByteBuffer getOrLoad(FileEntry entry) throws IOException {
+            CompletableFuture<ByteBuffer> pending;
+            CompletableFuture<ByteBuffer> load = null;
+            synchronized (this) {
+                ByteBuffer data = peek(entry);
+                if (data != null) {
+                    hits++;
+                    return data;
+                }
+                pending = pendingLoads.get(entry);
+                if (pending != null) {
+                    hits++;
+                } else {
+                    misses++;
+                    load = new CompletableFuture<>();
+                    pendingLoads.put(entry, load);
+                }
+            }
+            if (pending != null) {
+                return awaitLoad(pending).duplicate();
+            }
+            try {
+                ByteBuffer data = load(entry);
+                put(entry, data);
+                load.complete(data);
+                return data.duplicate();
+            } catch (Throwable t) {
+                load.completeExceptionally(t);
+                throw t;
+            } finally {
+                synchronized (this) {
+                    pendingLoads.remove(entry);
+                }
+            }
+        }
+
+        private ByteBuffer load(FileEntry entry) throws IOException {
+            if (!offHeap) {
+                return ByteBuffer.wrap(entry.readData()).asReadOnlyBuffer();
+            }
+            long size = entry.size;
+            if (size >= 0 && size <= Integer.MAX_VALUE) {
+                // read the data straight into the direct buffer
+                ByteBuffer data = ByteBuffer.allocateDirect((int) size);
+                boolean complete;
+                try (ReadableByteChannel channel = Channels.newChannel(entry.openStream())) {
+                    while (data.hasRemaining() && channel.read(data) >= 0) {
+                    }
+                    complete = !data.hasRemaining() && channel.read(ByteBuffer.allocate(1)) < 0;
+                }
+                if (complete) {
+                    return data.flip().asReadOnlyBuffer();
+                }
+                // the resource does not have the expected size, read it as it is
+            }
+            byte[] bytes = entry.readData();
+            return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().asReadOnlyBuffer();
+        }
+
+        private static ByteBuffer awaitLoad(CompletableFuture<ByteBuffer> pending) throws IOException {
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException ioe) {
+                    throw ioe;
+                } else if (cause instanceof RuntimeException re) {
+                    throw re;
+                } else if (cause instanceof Error err) {
+                    throw err;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        /**
+         * Returns the cached data without updating the statistics.
+         */
+        synchronized ByteBuffer peek(FileEntry entry) {
+            CachedData cached = entries.get(entry);
+            if (cached == null) {
+                return null;
+            }
+            ByteBuffer data = cached.get();
+            if (data == null) {
+                // cleared by the garbage collector
+                entries.remove(entry);
+                cachedBytes -= cached.length();
+                evictions++;
+                return null;
+            }
+            return data.duplicate();
+        }
+
+        synchronized void put(FileEntry entry, ByteBuffer data) {
+            int length = data.remaining();
+            if (length > maxBytes) {
+                return;
+            }
+            CachedData cached = softReferences ? new CachedData(null, new SoftReference<>(data), length) : new CachedData(data, null, length);
+            CachedData previous = entries.put(entry, cached);
+            if (previous != null) {
+                cachedBytes -= previous.length();
+            }
+            cachedBytes += length;
+            Iterator<CachedData> it = entries.values().iterator();
+            while (cachedBytes > maxBytes && it.hasNext()) {
+                CachedData eldest = it.next();
+                it.remove();
+                cachedBytes -= eldest.length();
+                evictions++;
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            cachedBytes = 0;
+        }
+
+        synchronized VirtualFileSystem.ContentCacheStatistics getStatistics() {
+            return new VirtualFileSystem.ContentCacheStatistics(hits, misses, evictions, cachedBytes);
+        }
+    }
+
+    private final ContentCache contentCache;
+
+    /**
+     * Files larger than this are not loaded into memory when opened, but read on demand.
+     */
+    private final long streamingReadThreshold;
+
+    /**
+     * Accesses to the entries of the virtual filesystem through the {@link FileSystem} API. Each
+     * successful lookup of an entry counts as an access, and the bytes read through the channels
+     * opened for a file are added to it. Reads of extracted files go to the host filesystem and
+     * are not counted.
+     * <p>
+     * The profile is a text file with a header line starting with {@link #HEADER}, followed by one
+     * line per accessed entry in the order of the first access. The tab separated columns are the
+     * number of accesses, the number of bytes read, the time of the first access in microseconds
+     * since the virtual filesystem was created and the resource path of the entry as in the files
+     * list, i.e., with a trailing '/' for directories.
+     */
+    private static final class AccessProfile {
+        static final String HEADER = "# GraalPy VFS access profile";
+
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong accessOrder = new AtomicLong();
+        private final ConcurrentHashMap<BaseEntry, Access> accesses = new ConcurrentHashMap<>();
+
+        private static final class Access {
+            final long order;
+            final long firstAccessNanos;
+            final AtomicLong count = new AtomicLong();
+            final AtomicLong bytesRead = new AtomicLong();
+
+            Access(long order, long firstAccessNanos) {
+                this.order = order;
+                this.firstAccessNanos = firstAccessNanos;
+            }
+        }
+
+        private Access get(BaseEntry entry) {
+            Access access = accesses.get(entry);
+            if (access == null) {
+                access = accesses.computeIfAbsent(entry, (e) -> new Access(accessOrder.getAndIncrement(), System.nanoTime() - startNanos));
+            }
+            return access;
+        }
+
+        void recordAccess(BaseEntry entry) {
+            get(entry).count.incrementAndGet();
+        }
+
+        void recordRead(FileEntry entry, long bytes) {
+            get(entry).bytesRead.addAndGet(bytes);
+        }
+
+        void write(Path file) throws IOException {
+            List<Map.Entry<BaseEntry, Access>> sorted = new ArrayList<>(accesses.entrySet());
+            sorted.sort((a, b) -> Long.compare(a.getValue().order, b.getValue().order));
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.write(" (accesses, bytes read, first access [us], resource path)\n");
+                for (Map.Entry<BaseEntry, Access> e : sorted) {
+                    Access access = e.getValue();
+                    String resourcePath = e.getKey().getResourcePath();
+                    writer.write(String.format("%d\t%d\t%d\t%s%s\n", access.count.get(), access.bytesRead.get(), access.firstAccessNanos / 1000, resourcePath,
+                                    e.getKey() instanceof DirEntry ? RESOURCE_SEPARATOR : ""));
+                }
+            }
+        }
+    }
+
+    /*
+     * Null if the accesses are not traced.
+     */
+    private final AccessProfile accessProfile;
+    private final Path accessProfileFile;
+
+    /**
+     * Binary index of the virtual filesystem entries generated at build time next to the files
+     * list. Format has to match with <code>VFSUtils.generateVFSFilesIndex</code>. Entries are
+     * sorted like in the files list, so that a directory always precedes its children, and refer
+     * to their parent directory by its index.
+     */
+    record FilesIndex(String[] names, int[] parents, byte[] flags, long[] sizes, long[] offsets, byte[][] hashes, int[][] extractionGroups) {
+        private static final int MAGIC = 0x47505649;
+        private static final int VERSION = 1;
+        private static final byte FLAG_DIR = 0x1;
+        private static final byte FLAG_SIZE = 0x2;
+        private static final byte FLAG_PACKED = 0x4;
+        private static final byte FLAG_HASH = 0x8;
+        private static final byte KNOWN_FLAGS = FLAG_DIR | FLAG_SIZE | FLAG_PACKED | FLAG_HASH;
+        private static final int HASH_LENGTH = 32;
+        private static final int GROUPS_MAGIC = 0x47505647;
+
+        static FilesIndex read(InputStream stream) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a virtual filesystem index");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("unsupported virtual filesystem index version %d", version));
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("corrupted virtual filesystem index");
+            }
+            String[] names = new String[count];
+            int[] parents = new int[count];
+            byte[] flags = new byte[count];
+            long[] sizes = new long[count];
+            long[] offsets = new long[count];
+            byte[][] hashes = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                names[i] = in.readUTF();
+                parents[i] = in.readInt();
+                flags[i] = in.readByte();
+                sizes[i] = (flags[i] & FLAG_SIZE) != 0 ? in.readLong() : -1;
+                offsets[i] = (flags[i] & FLAG_PACKED) != 0 ? in.readLong() : -1;
+                if ((flags[i] & FLAG_HASH) != 0) {
+                    hashes[i] = new byte[HASH_LENGTH];
+                    in.readFully(hashes[i]);
+                }
+                if (parents[i] >= i || (parents[i] >= 0 && (flags[parents[i]] & FLAG_DIR) == 0) || (flags[i] & ~KNOWN_FLAGS) != 0 ||
+                                ((flags[i] & FLAG_PACKED) != 0 && (sizes[i] < 0 || offsets[i] < 0))) {
+                    throw new IOException("corrupted virtual filesystem index");
+                }
+            }
+            return new FilesIndex(names, parents, flags, sizes, offsets, hashes, readExtractionGroups(in, flags));
+        }
+
+        /**
+         * Reads the groups of files extracted together, which follow the entries. Each group starts
+         * with the index of the wheel RECORD file listing the files. Returns {@code null} if the
+         * index was generated without the groups.
+         */
+        private static int[][] readExtractionGroups(DataInputStream in, byte[] flags) throws IOException {
+            int magic;
+            try {
+                magic = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            int count = in.readInt();
+            if (magic != GROUPS_MAGIC || count < 0) {
+                throw new IOException("corrupted virtual filesystem index");
+            }
+            int[][] groups = new int[count][];
+            for (int i = 0; i < count; i++) {
+                int record = in.readInt();
+                int membersCount = in.readInt();
+                if (membersCount < 0) {
+                    throw new IOException("corrupted virtual filesystem index");
+                }
+                int[] group = new int[membersCount + 1];
+                group[0] = record;
+                for (int j = 0; j < group.length; j++) {
+                    if (j > 0) {
+                        group[j] = in.readInt();
+                    }
+                    if (group[j] < 0 || group[j] >= flags.length || (flags[group[j]] & FLAG_DIR) != 0) {
+                        throw new IOException("corrupted virtual filesystem index");
+                    }
+                }
+                groups[i] = group;
+            }
+            return groups;
+        }
+
+        boolean isDirectory(int i) {
+            return (flags[i] & FLAG_DIR) != 0;
+        }
+
+        boolean isPacked(int i) {
+            return (flags[i] & FLAG_PACKED) != 0;
+        }
+
+        boolean hasPackedFiles() {
+            for (int i = 0; i < flags.length; i++) {
+                if (isPacked(i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Creates the index from the resource paths listed in a files list. Returns {@code null}
+         * if the files list contains an entry outside of the given root.
+         */
+        static FilesIndex fromFilesList(List<String> resourcePaths, String rootPath, ToLongFunction<String> sizes) {
+            Map<String, Integer> dirs = new HashMap<>();
+            List<String> names = new ArrayList<>();
+            List<Integer> parents = new ArrayList<>();
+            List<Byte> flags = new ArrayList<>();
+            List<Long> sizesList = new ArrayList<>();
+            for (String resourcePath : resourcePaths) {
+                if (resourcePath.isBlank()) {
+                    continue;
+                }
+                if (!resourcePath.startsWith(rootPath)) {
+                    return null;
+                }
+                if (resourcePath.endsWith(RESOURCE_SEPARATOR)) {
+                    addDirectory(resourcePath, rootPath, dirs, names, parents, flags, sizesList);
+                } else {
+                    int slash = resourcePath.lastIndexOf(RESOURCE_SEPARATOR);
+                    parents.add(addDirectory(resourcePath.substring(0, slash + 1), rootPath, dirs, names, parents, flags, sizesList));
+                    names.add(resourcePath.substring(slash + 1));
+                    long size = sizes.applyAsLong(resourcePath);
+                    flags.add(size >= 0 ? FLAG_SIZE : 0);
+                    sizesList.add(size);
+                }
+            }
+            int count = names.size();
+            int[] parentsArray = new int[count];
+            byte[] flagsArray = new byte[count];
+            long[] sizesArray = new long[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                parentsArray[i] = parents.get(i);
+                flagsArray[i] = flags.get(i);
+                sizesArray[i] = sizesList.get(i);
+                offsets[i] = -1;
+            }
+            return new FilesIndex(names.toArray(new String[0]), parentsArray, flagsArray, sizesArray, offsets, new byte[count][], null);
+        }
+
+        private static int addDirectory(String dirPath, String rootPath, Map<String, Integer> dirs, List<String> names, List<Integer> parents, List<Byte> flags, List<Long> sizes) {
+            Integer index = dirs.get(dirPath);
+            if (index != null) {
+                return index;
+            }
+            int parent;
+            String name;
+            if (dirPath.equals(rootPath)) {
+                parent = -1;
+                name = rootPath;
+            } else {
+                int slash = dirPath.lastIndexOf(RESOURCE_SEPARATOR, dirPath.length() - 2);
+                parent = addDirectory(dirPath.substring(0, slash + 1), rootPath, dirs, names, parents, flags, sizes);
+                name = dirPath.substring(slash + 1, dirPath.length() - 1);
+            }
+            index = names.size();
+            names.add(name);
+            parents.add(parent);
+            flags.add(FLAG_DIR);
+            sizes.add(-1L);
+            dirs.put(dirPath, index);
+            return index;
+        }
+
+        /**
+         * Returns the resource path of each entry, directories end with '/'.
+         */
+        String[] resourcePaths() {
+            String[] paths = new String[names.length];
+            for (int i = 0; i < names.length; i++) {
+                String path = parents[i] >= 0 ? paths[parents[i]] + names[i] : names[i];
+                paths[i] = isDirectory(i) && parents[i] >= 0 ? path + RESOURCE_SEPARATOR : path;
+            }
+            return paths;
+        }
+
+        /**
+         * Returns a copy of this index in which the files with the given offsets are packed, with
+         * the given sizes.
+         */
+        FilesIndex withPackedFiles(long[] packedOffsets, long[] packedSizes) {
+            byte[] newFlags = flags.clone();
+            long[] newSizes = sizes.clone();
+            long[] newOffsets = offsets.clone();
+            for (int i = 0; i < flags.length; i++) {
+                if (packedOffsets[i] >= 0) {
+                    newFlags[i] |= FLAG_PACKED | FLAG_SIZE;
+                    newSizes[i] = packedSizes[i];
+                    newOffsets[i] = packedOffsets[i];
+                }
+            }
+            return new FilesIndex(names, parents, newFlags, newSizes, newOffsets, hashes, extractionGroups);
+        }
+    }
+
+    /**
+     * Index of a virtual filesystem stored in the image heap of a native executable, together with
+     * the data of the files packed into it, if any.
+     */
+    record ImageHeapIndex(FilesIndex index, byte[] packedFiles) {
+    }
+
+    /**
+     * The indices stored in the image heap by {@code VirtualFileSystemFeature}, keyed by the
+     * resource path of the files list. Only files lists found in a single location at image build
+     * time are stored. This class is initialized at image build time.
+     */
+    static final class ImageHeapIndices {
+        static final Map<String, ImageHeapIndex> INDICES = new HashMap<>();
+
+        private ImageHeapIndices() {
+        }
+    }
+
+    /**
+     * Creates the index of the virtual filesystem in the given resource directory at image build
+     * time and stores it in {@link ImageHeapIndices}. The files listed in the hot files profile,
+     * which are not larger than the given limit, are packed into the index, unless the virtual
+     * filesystem is already packed.
+     */
+    static void storeInImageHeap(ClassLoader classLoader, String resourceDirectory, Path hotFilesProfile, long hotFileLimit) throws IOException {
+        String filelistPath = resourcePath(resourceDirectory, FILES_LIST);
+        Set<String> urls = new HashSet<>();
+        URL filelistUrl = null;
+        for (URL url : Collections.list(classLoader.getResources(filelistPath))) {
+            if (urls.add(url.toString())) {
+                filelistUrl = url;
+            }
+        }
+        if (urls.size() != 1) {
+            // multiple locations are resolved at run time
+            fine("VFS: not storing the index of '%s' in the image heap, found %d locations", filelistPath, urls.size());
+            return;
+        }
+        String rootPath = absoluteResourcePath(resourceDirectory) + RESOURCE_SEPARATOR;
+        FilesIndex index = null;
+        try (InputStream stream = siblingURL(filelistUrl, FILES_INDEX).openStream()) {
+            index = FilesIndex.read(stream);
+        } catch (IOException ex) {
+            // not generated by the build tools, use the files list
+        }
+        if (index != null) {
+            for (int i = 0; i < index.names().length; i++) {
+                if (index.parents()[i] < 0 && !index.names()[i].equals(rootPath)) {
+                    index = null;
+                    break;
+                }
+            }
+        }
+        if (index == null) {
+            List<String> lines;
+            try (InputStream stream = filelistUrl.openStream()) {
+                lines = new String(stream.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+            }
+            index = FilesIndex.fromFilesList(lines, rootPath, (resourcePath) -> {
+                try {
+                    URL url = classLoader.getResource(resourcePath.substring(1));
+                    return url != null ? url.openConnection().getContentLengthLong() : -1;
+                } catch (IOException ex) {
+                    return -1;
+                }
+            });
+            if (index == null) {
+                fine("VFS: not storing the index of '%s' in the image heap, unexpected entries in the files list", filelistUrl);
+                return;
+            }
         }
-
-        private byte[] getData() throws IOException {
-            if (data == null) {
-                byte[] loaded = readResource(getResourcePath());
-                VarHandle.storeStoreFence();
-                data = loaded;
+        byte[] packedFiles = null;
+        if (hotFilesProfile != null && !index.hasPackedFiles()) {
+            Set<String> hotFiles = new HashSet<>();
+            for (String line : Files.readAllLines(hotFilesProfile, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    hotFiles.add(line.substring(line.lastIndexOf('\t') + 1));
+                }
+            }
+            String[] resourcePaths = index.resourcePaths();
+            long[] offsets = new long[resourcePaths.length];
+            long[] sizes = new long[resourcePaths.length];
+            ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            for (int i = 0; i < resourcePaths.length; i++) {
+                offsets[i] = -1;
+                if (!index.isDirectory(i) && hotFiles.contains(resourcePaths[i]) && index.sizes()[i] <= hotFileLimit) {
+                    try (InputStream stream = classLoader.getResourceAsStream(resourcePaths[i].substring(1))) {
+                        if (stream != null) {
+                            byte[] data = stream.readNBytes((int) Math.min(hotFileLimit + 1, Integer.MAX_VALUE));
+                            if (data.length <= hotFileLimit) {
+                                offsets[i] = packed.size();
+                                sizes[i] = data.length;
+                                packed.write(data);
+                            }
+                        }
+                    }
+                }
+            }
+            if (packed.size() > 0) {
+                packedFiles = packed.toByteArray();
+                index = index.withPackedFiles(offsets, sizes);
             }
-            return data;
         }
+        ImageHeapIndices.INDICES.put(filelistPath, new ImageHeapIndex(index, packedFiles));
+        fine("VFS: stored the index of '%s' with %d entries and %d bytes of files data in the image heap", filelistUrl, index.names().length, packedFiles != null ? packedFiles.length : 0);
     }
 
-    private final class DirEntry extends BaseEntry {
-        List<BaseEntry> entries = new ArrayList<>();
-
-        DirEntry(String platformPath) {
-            super(platformPath);
+    /**
+     * Returns the index stored in the image heap for the given files list, if running in a native
+     * executable.
+     */
+    private static ImageHeapIndex getImageHeapIndex(String filelistPath) {
+        if (ImageInfo.inImageRuntimeCode()) {
+            return ImageHeapIndices.INDICES.get(filelistPath);
         }
+        return null;
     }
 
     /*
@@ -232,14 +1516,60 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
      * accessible.
      */
     final Path mountPoint;
-    private final String mountPointLowerCase;
+    private final String mountPointString;
 
     /**
-     * The temporary directory where to extract files/directories to.
+     * The temporary directory where to extract files/directories to, or the persistent extraction
+     * cache directory.
      */
     private final Path extractDir;
 
-    private boolean extractOnStartup = "true".equals(System.getProperty("org.graalvm.python.vfs.extractOnStartup")) || "true".equals(System.getProperty("graalpy.vfs.extractOnStartup"));
+    /**
+     * If {@code true}, {@link #extractDir} is a persistent cache possibly shared with other
+     * processes. Files are then extracted into subdirectories named after a digest of the contents
+     * of the files extracted together, see {@link #getExtractionGroupDir(List)}.
+     */
+    private final boolean extractionCache;
+
+    /**
+     * Bumped whenever the layout of the persistent extraction cache changes.
+     */
+    private static final String EXTRACTION_CACHE_VERSION = "1";
+
+    private final ConcurrentHashMap<List<FileEntry>, Path> extractionGroupDirs = new ConcurrentHashMap<>();
+
+    /*
+     * Eager extraction of all the files matching the extract filter. If set to "true", the files
+     * are extracted during the initialization, if set to "background", the extraction only starts
+     * during the initialization and continues in the background. Intentionally not static final
+     * to avoid constant folding it during image build time.
+     */
+    private final String extractOnStartupMode = getExtractOnStartupMode();
+    private final boolean extractOnStartup = "true".equals(extractOnStartupMode);
+    private final boolean extractInBackground = "background".equals(extractOnStartupMode);
+
+    /*
+     * The maximum number of threads extracting files on startup.
+     */
+    private final int extractionParallelism = getExtractionParallelism();
+
+    private static String getExtractOnStartupMode() {
+        return System.getProperty("org.graalvm.python.vfs.extractOnStartup", System.getProperty("graalpy.vfs.extractOnStartup"));
+    }
+
+    private static int getExtractionParallelism() {
+        return Integer.getInteger("org.graalvm.python.vfs.extractionParallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+     * The executor extracting files in the background, if any.
+     */
+    private ExecutorService extractionExecutor;
+
+    /*
+     * The executor prefetching the files listed in the prefetch profile, if any.
+     */
+    private ExecutorService prefetchExecutor;
 
     /**
      * A filter to determine if a path should be extracted (see {@link #shouldExtract(BaseEntry)}).
@@ -297,6 +1627,147 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
      */
     private final String vfsRootURL = System.getProperty(MULTI_VFS_SINGLE_ROOT_URL_PROP);
 
+    /**
+     * Configuration identifying virtual filesystems which can share one
+     * {@link VirtualFileSystemImpl} instance. The class loader is not part of the key, the shared
+     * instances are kept per class loader, see {@link #sharedInstances}. The key must not
+     * reference any objects which may keep the class loader alive.
+     */
+    private record SharedKey(String resourceDirectory, Path mountPoint, boolean caseInsensitive, WeakFilter extractFilter, long contentCacheLimit,
+                    boolean contentCacheSoftReferences, boolean contentCacheOffHeap, long streamingReadThreshold, Path extractionCacheDirectory, Path accessProfile,
+                    Path prefetchProfile,
+                    String extractOnStartupMode,
+                    int extractionParallelism, boolean allowMultipleLocations, String vfsRootURL) {
+    }
+
+    /**
+     * Compares extraction filters by equality without retaining them. A filter is typically
+     * defined by a class of the class loader the shared instance is kept for, so referencing it
+     * strongly from {@link #sharedInstances} would prevent unloading the class loader. The filter
+     * stays reachable through the shared instance for as long as the instance is used.
+     */
+    private static final class WeakFilter {
+        private final WeakReference<Predicate<Path>> filter;
+        private final int hash;
+
+        WeakFilter(Predicate<Path> filter) {
+            this.filter = filter != null ? new WeakReference<>(filter) : null;
+            this.hash = Objects.hashCode(filter);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof WeakFilter other) || hash != other.hash) {
+                return false;
+            }
+            if (filter == null || other.filter == null) {
+                return filter == other.filter;
+            }
+            Predicate<Path> f = filter.get();
+            return f != null && f.equals(other.filter.get());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Holds the shared instance for one {@link SharedKey}. The instance is referenced weakly, so
+     * that virtual filesystems which are not closed do not keep it alive.
+     */
+    private static final class SharedSlot {
+        private WeakReference<VirtualFileSystemImpl> instance;
+    }
+
+    /*
+     * The index of entries and the file contents are immutable, so all shared virtual filesystems
+     * with the same configuration and class loader use one instance. The class loaders are
+     * referenced weakly to allow unloading them.
+     */
+    private static final WeakHashMap<ClassLoader, Map<SharedKey, SharedSlot>> sharedInstances = new WeakHashMap<>();
+
+    /*
+     * Number of VirtualFileSystem instances using this instance, guarded by this. Once it drops to
+     * zero, the instance is closed and is not shared anymore.
+     */
+    private int references = 1;
+
+    /**
+     * Returns a virtual filesystem with the given configuration. If {@code shared} is
+     * {@code true}, an instance which was created as shared for the same configuration and class
+     * loader and was not closed yet is reused. Each returned instance has to be
+     * {@link #close() closed} separately.
+     */
+    static VirtualFileSystemImpl acquire(Predicate<Path> extractFilter,
+                    Path mountPoint,
+                    String resourceDirectory,
+                    Class<?> resourceLoadingClass,
+                    boolean caseInsensitive,
+                    long contentCacheLimit,
+                    boolean contentCacheSoftReferences,
+                    boolean contentCacheOffHeap,
+                    long streamingReadThreshold,
+                    Path extractionCacheDirectory,
+                    Path accessProfile,
+                    Path prefetchProfile,
+                    boolean shared) {
+        if (accessProfile == null) {
+            accessProfile = getPathProperty(ACCESS_PROFILE_PROP);
+        }
+        if (prefetchProfile == null) {
+            prefetchProfile = getPathProperty(PREFETCH_PROFILE_PROP);
+        }
+        if (!shared) {
+            return new VirtualFileSystemImpl(extractFilter, mountPoint, resourceDirectory, resourceLoadingClass, caseInsensitive, contentCacheLimit,
+                            contentCacheSoftReferences, contentCacheOffHeap, streamingReadThreshold, extractionCacheDirectory, accessProfile, prefetchProfile);
+        }
+        ClassLoader classLoader = (resourceLoadingClass != null ? resourceLoadingClass : VirtualFileSystem.class).getClassLoader();
+        SharedKey key = new SharedKey(resourceDirectory, mountPoint, caseInsensitive, new WeakFilter(extractFilter), contentCacheLimit, contentCacheSoftReferences, contentCacheOffHeap,
+                        streamingReadThreshold,
+                        extractionCacheDirectory != null ? extractionCacheDirectory.toAbsolutePath() : null, accessProfile != null ? accessProfile.toAbsolutePath() : null,
+                        prefetchProfile != null ? prefetchProfile.toAbsolutePath() : null,
+                        getExtractOnStartupMode(), getExtractionParallelism(),
+                        Boolean.getBoolean(MULTI_VFS_ALLOW_PROP), System.getProperty(MULTI_VFS_SINGLE_ROOT_URL_PROP));
+        SharedSlot slot;
+        synchronized (sharedInstances) {
+            // drop the slots of instances which were not closed, but are not used anymore
+            for (Map<SharedKey, SharedSlot> slots : sharedInstances.values()) {
+                slots.values().removeIf((s) -> s.instance != null && s.instance.get() == null);
+            }
+            slot = sharedInstances.computeIfAbsent(classLoader, (k) -> new HashMap<>()).computeIfAbsent(key, (k) -> new SharedSlot());
+        }
+        // concurrent requests for the same configuration wait for a single initialization
+        synchronized (slot) {
+            VirtualFileSystemImpl existing = slot.instance != null ? slot.instance.get() : null;
+            if (existing != null && existing.retain()) {
+                fine("VFS: reusing virtual filesystem %s for resources in '%s'", mountPoint, existing.vfsRoot);
+                return existing;
+            }
+            VirtualFileSystemImpl impl = new VirtualFileSystemImpl(extractFilter, mountPoint, resourceDirectory, resourceLoadingClass, caseInsensitive, contentCacheLimit,
+                            contentCacheSoftReferences, contentCacheOffHeap, streamingReadThreshold, extractionCacheDirectory, accessProfile, prefetchProfile);
+            impl.sharedSlot = slot;
+            slot.instance = new WeakReference<>(impl);
+            return impl;
+        }
+    }
+
+    private static Path getPathProperty(String name) {
+        String value = System.getProperty(name);
+        return value != null && !value.isEmpty() ? Path.of(value) : null;
+    }
+
+    private SharedSlot sharedSlot;
+
+    private synchronized boolean retain() {
+        if (references == 0) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
     /**
      * If an extract filter is given, the virtual file system will lazily extract files and
      * directories matching the filter to a temporary directory. This happens if the
@@ -306,28 +1777,49 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
     VirtualFileSystemImpl(Predicate<Path> extractFilter,
                           Path mountPoint,
                           String resourceDirectory,
-                          HostIO allowHostIO,
                           Class<?> resourceLoadingClass,
-                          boolean caseInsensitive) {
+                          boolean caseInsensitive,
+                          long contentCacheLimit,
+                          boolean contentCacheSoftReferences,
+                          boolean contentCacheOffHeap,
+                          long streamingReadThreshold,
+                          Path extractionCacheDirectory,
+                          Path accessProfile,
+                          Path prefetchProfile) {
         if (resourceLoadingClass != null) {
             this.resourceLoadingClass = resourceLoadingClass;
         } else {
             this.resourceLoadingClass = VirtualFileSystem.class;
         }
         this.caseInsensitive = caseInsensitive;
+        this.contentCache = new ContentCache(contentCacheLimit, contentCacheSoftReferences, contentCacheOffHeap);
+        this.streamingReadThreshold = streamingReadThreshold;
+        this.accessProfileFile = accessProfile;
+        this.accessProfile = accessProfile != null ? new AccessProfile() : null;
         this.mountPoint = mountPoint;
-        this.mountPointLowerCase = mountPoint.toString().toLowerCase(Locale.ROOT);
+        this.mountPointString = mountPoint.toString();
         this.vfsRoot = resourceDirectory == null ? DEFAULT_VFS_ROOT : resourceDirectory;
         this.platformVenvPath = resourcePathToPlatformPath(absoluteResourcePath(vfsRoot, VFS_VENV));
         this.platformSrcPath = resourcePathToPlatformPath(absoluteResourcePath(vfsRoot, VFS_SRC));
 
-        fine("VirtualFilesystem %s, allowHostIO: %s, resourceLoadingClass: %s, caseInsensitive: %s, extractOnStartup: %s%s",
-                mountPoint, allowHostIO.toString(), this.resourceLoadingClass.getName(), caseInsensitive, extractOnStartup, extractFilter != null ? "" : ", extractFilter: null");
+        fine("VirtualFilesystem %s, resourceLoadingClass: %s, caseInsensitive: %s, extractOnStartup: %s%s",
+                mountPoint, this.resourceLoadingClass.getName(), caseInsensitive, extractOnStartupMode, extractFilter != null ? "" : ", extractFilter: null");
 
         this.extractFilter = extractFilter;
-        if (extractFilter != null) {
+        if (extractFilter != null && extractionCacheDirectory != null) {
+            this.extractDir = extractionCacheDirectory.toAbsolutePath();
+            this.extractionCache = true;
+            this.deleteTempDir = null;
+            try {
+                Files.createDirectories(this.extractDir);
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Cannot create the virtual filesystem extraction cache directory '%s'.", extractDir), e);
+            }
+            fine("VFS: using extraction cache directory '%s'", extractDir);
+        } else if (extractFilter != null) {
             try {
                 this.extractDir = Files.createTempDirectory("org.graalvm.python.vfsx");
+                this.extractionCache = false;
                 this.deleteTempDir = new DeleteTempDir(this.extractDir);
                 Runtime.getRuntime().addShutdownHook(deleteTempDir);
             } catch (IOException e) {
@@ -335,10 +1827,13 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
             }
         } else {
             this.extractDir = null;
+            this.extractionCache = false;
             this.deleteTempDir = null;
         }
-        this.allowHostIO = allowHostIO;
         initEntries();
+        if (prefetchProfile != null) {
+            prefetch(prefetchProfile);
+        }
     }
 
     /**
@@ -347,8 +1842,8 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
      */
     private FileSystem extractedFilesFS = FileSystem.newReadOnlyFileSystem(FileSystem.newDefaultFileSystem());
 
-    static FileSystem createDelegatingFileSystem(VirtualFileSystemImpl vfs) {
-        FileSystem d = switch (vfs.allowHostIO) {
+    static FileSystem createDelegatingFileSystem(VirtualFileSystemImpl vfs, HostIO allowHostIO) {
+        FileSystem d = switch (allowHostIO) {
             case NONE -> FileSystem.newDenyIOFileSystem();
             case READ -> FileSystem.newReadOnlyFileSystem(FileSystem.newDefaultFileSystem());
             case READ_WRITE -> FileSystem.newDefaultFileSystem();
@@ -360,14 +1855,62 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
                 return vfs.pathIsInVfs(toAbsoluteNormalizedPath(path));
             }
         });
-        if (vfs.allowHostIO == NONE) {
+        if (allowHostIO == NONE) {
             delegatingFS.setCurrentWorkingDirectory(vfs.mountPoint.resolve("src"));
         }
         return delegatingFS;
     }
 
+    /**
+     * Releases this instance. The resources are freed once all the virtual filesystems sharing it
+     * are closed.
+     */
     @Override
     public void close() {
+        synchronized (this) {
+            if (references == 0 || --references > 0) {
+                return;
+            }
+        }
+        if (sharedSlot != null) {
+            synchronized (sharedInstances) {
+                Map<SharedKey, SharedSlot> slots = sharedInstances.get(resourceLoadingClass.getClassLoader());
+                if (slots != null) {
+                    slots.values().remove(sharedSlot);
+                }
+            }
+        }
+        if (extractionExecutor != null) {
+            extractionExecutor.shutdownNow();
+            try {
+                if (!extractionExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    warn("VFS: background extraction did not finish on close");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            try {
+                if (!prefetchExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    warn("VFS: prefetching did not finish on close");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (accessProfile != null) {
+            try {
+                writeAccessProfile(accessProfileFile);
+            } catch (IOException e) {
+                warn("VFS: failed to write the access profile to '%s': %s", accessProfileFile, e);
+            }
+        }
+        contentCache.clear();
+        for (ResourceLocation location : resourceLocations) {
+            location.close();
+        }
         if (deleteTempDir != null) {
             deleteTempDir.removeExtractDir();
         }
@@ -377,6 +1920,18 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
         return System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("windows");
     }
 
+    VirtualFileSystem.ContentCacheStatistics getContentCacheStatistics() {
+        return contentCache.getStatistics();
+    }
+
+    void writeAccessProfile(Path file) throws IOException {
+        if (accessProfile == null) {
+            throw new IllegalStateException("The accesses to the virtual filesystem are not traced, see VirtualFileSystem.Builder.accessProfile(Path).");
+        }
+        accessProfile.write(file);
+        fine("VFS: access profile with %d entries written to '%s'", accessProfile.accesses.size(), file);
+    }
+
     String vfsSrcPath() {
         return this.platformSrcPath;
     }
@@ -416,7 +1971,6 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
      * Returns absolute resource path.
      */
     private String platformPathToResourcePath(String inputPath) {
-        String mountPointString = mountPoint.toString();
         String path = inputPath;
         assert path.startsWith(mountPointString) : String.format("path `%s` expected to start with `%s`", path, mountPointString);
         if (path.startsWith(mountPointString)) {
@@ -450,155 +2004,404 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
         throw new IllegalStateException(multipleLocationsErrorMessage("Entry %s is a file in one virtual filesystem location, but a directory in another.", key));
     }
 
+    private boolean hasNativeFiles = false;
+
     private void initEntries() {
         String filelistPath = resourcePath(vfsRoot, FILES_LIST);
-        String absFilelistPath = absoluteResourcePath(vfsRoot, FILES_LIST);
-        String srcPath = absoluteResourcePath(vfsRoot, VFS_SRC);
-        String venvPath = absoluteResourcePath(vfsRoot, VFS_VENV);
         List<URL> filelistUrls = getFilelistURLs(filelistPath);
-        boolean hasNativeFiles = false;
+        // the locations are still looked up at run time, so that the checks of multiple locations
+        // apply also in a native executable
+        ImageHeapIndex imageHeapIndex = filelistUrls.size() == 1 ? getImageHeapIndex(filelistPath) : null;
         for (URL url : filelistUrls) {
-            try (InputStream stream = url.openStream()) {
-                if (stream == null) {
-                    warn("VFS.initEntries: could not read resource %s", filelistPath);
-                    return;
-                }
-                BufferedReader br = new BufferedReader(new InputStreamReader(stream));
-                String resourcePath;
-                finest("VFS entries:");
-                while ((resourcePath = br.readLine()) != null) {
-                    if (resourcePath.isBlank()) {
-                        // allow empty lines, some tools insert empty lines when concatenating files
-                        continue;
-                    }
-
-                    String projPath = absoluteResourcePath(vfsRoot, PROJ_DIR);
-                    if (!projWarning && resourcePath.startsWith(projPath)) {
-                        projWarning = true;
-                        extendedWarn(String.format("%s source root was deprecated, use %s instead.", projPath, srcPath));
-                    }
-                    if (!hasNativeFiles && resourcePath.startsWith(venvPath) && (resourcePath.endsWith(".so") || resourcePath.endsWith(".dylib") || resourcePath.endsWith(".dll"))) {
-                        hasNativeFiles = true;
+            ResourceLocation location = new ResourceLocation(url);
+            resourceLocations.add(location);
+            FilesIndex index;
+            if (imageHeapIndex != null) {
+                fine("VFS.initEntries: using the index of '%s' from the image heap", url);
+                index = imageHeapIndex.index();
+                if (imageHeapIndex.packedFiles() != null) {
+                    location.archive = new PackedArchive(url, imageHeapIndex.packedFiles());
+                }
+            } else {
+                index = readFilesIndex(url);
+            }
+            if (index != null) {
+                initEntriesFromIndex(index, location, filelistUrls.size());
+            } else {
+                initEntriesFromFilesList(location, filelistUrls.size());
+            }
+        }
+        if (root == null) {
+            warn("VFS.getEntry: no entries after init");
+        }
+        if (filelistUrls.size() > 1) {
+            validateMultipleVFSLocations(filelistUrls);
+        }
+        if (hasNativeFiles) {
+            checkPlatform();
+        }
+        if (extractFilter != null) {
+            for (BaseEntry entry : getAllEntries()) {
+                Path baseDir = null;
+                if (entry instanceof FileEntry fileEntry && (fileEntry.location == null || !fileEntry.location.extractionGroupsIndexed)) {
+                    Path path = Paths.get(fileEntry.getPlatformPath());
+                    Path name = path.getFileName();
+                    if (name != null && name.endsWith("RECORD")) {
+                        Path distInfo = path.getParent();
+                        if (distInfo != null && distInfo.toString().endsWith(".dist-info")) {
+                            baseDir = distInfo.getParent();
+                        }
                     }
-
-                    String platformPath = resourcePathToPlatformPath(resourcePath);
-                    int i = mountPoint.toString().length();
-                    DirEntry parent = null;
-                    do {
-                        String dir = platformPath.substring(0, i);
-                        String dirKey = toCaseComparable(dir);
-                        BaseEntry genericEntry = vfsEntries.get(dirKey);
-                        DirEntry dirEntry;
-                        if (genericEntry instanceof DirEntry de) {
-                            dirEntry = de;
-                        } else if (genericEntry == null) {
-                            dirEntry = new DirEntry(dir);
-                            vfsEntries.put(dirKey, dirEntry);
-                            finest("  %s", dirEntry.getResourcePath());
-                            if (parent != null) {
-                                parent.entries.add(dirEntry);
+                }
+                if (baseDir != null) {
+                    try (BufferedReader is = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(((FileEntry) entry).readData())))) {
+                        String line;
+                        List<FileEntry> extractedTogether = new ArrayList<>();
+                        while ((line = is.readLine()) != null) {
+                            int commaIndex = line.indexOf(',');
+                            if (commaIndex < 0) {
+                                warn("Failed to parse wheel entry in record file %s: %s", entry.getPlatformPath(), line);
+                                continue;
                             }
-                        } else {
-                            throw fileDirDuplicateMismatchError(dirKey);
-                        }
-                        parent = dirEntry;
-                        i++;
-                    } while ((i = platformPath.indexOf(PLATFORM_SEPARATOR, i)) != -1);
-
-                    assert parent != null;
-                    if (!platformPath.endsWith(PLATFORM_SEPARATOR)) {
-                        FileEntry fileEntry = new FileEntry(platformPath);
-                        if (extractFilter != null && extractFilter.test(Paths.get(platformPath))) {
-                            fileEntry.toExtract = List.of(fileEntry);
-                        }
-                        BaseEntry previous = vfsEntries.put(toCaseComparable(platformPath), fileEntry);
-                        if (previous != null) {
-                            if (previous instanceof DirEntry) {
-                                throw fileDirDuplicateMismatchError(platformPath);
+                            Path platformPath = baseDir.resolve(line.substring(0, commaIndex).replace("/", PLATFORM_SEPARATOR));
+                            if (extractFilter.test(platformPath)) {
+                                BaseEntry extractableEntry = findEntry(platformPath);
+                                if (extractableEntry instanceof FileEntry extractableFileEntry) {
+                                    extractedTogether.add(extractableFileEntry);
+                                } else {
+                                    warn("Could not find file referred from wheel record file %s: %s", entry.getPlatformPath(), platformPath);
+                                }
                             }
-                            if (filelistUrls.size() > 1 && !resourcePath.startsWith(venvPath) && !resourcePath.equals(absFilelistPath)) {
-                                reportFailedMultiVFSCheck(multipleLocationsErrorMessage("There are duplicate entries originating from different virtual " +
-                                        "filesystem instances. The duplicate entries path: %s.", resourcePath));
+                        }
+                        if (!extractedTogether.isEmpty()) {
+                            for (FileEntry extractableFileEntry : extractedTogether) {
+                                extractableFileEntry.toExtract = extractedTogether;
                             }
-                            fine(multipleLocationsErrorMessage("Duplicate entries virtual filesystem entries: " + resourcePath));
                         }
-                        finest("  %s", fileEntry.getResourcePath());
-                        parent.entries.add(fileEntry);
+                    } catch (IOException ex) {
+                        // This is just best-effort attempt at guessing which libraries to extract
+                        // together, ignore errors
+                        warn("Exception when reading wheel record file %s: %s", entry.getPlatformPath(), ex);
                     }
                 }
-            } catch (IOException ex) {
-                throw new IllegalStateException(String.format("IO error during VirtualFileSystem initialization from location '%s'.", url), ex);
+            }
+            if (extractOnStartup || extractInBackground) {
+                extractAll();
+            }
+        }
+    }
+
+    /**
+     * Extracts all files matching the extract filter. The groups of files extracted together are
+     * extracted in parallel by a bounded number of threads. If the extraction runs in the
+     * background, accessing a file which was not extracted yet either waits until the extraction
+     * of that file finishes or extracts it right away, see {@link #extractSingleFile(FileEntry)}.
+     */
+    private void extractAll() {
+        Set<List<FileEntry>> groups = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BaseEntry entry : getAllEntries()) {
+            if (entry instanceof FileEntry fileEntry && fileEntry.toExtract != null) {
+                groups.add(fileEntry.toExtract);
+            }
+        }
+        int parallelism = Math.max(1, Math.min(extractionParallelism, groups.size()));
+        fine("VFS: extracting %d groups of files using %d threads%s", groups.size(), parallelism, extractInBackground ? " in the background" : "");
+        if (parallelism == 1 && !extractInBackground) {
+            for (List<FileEntry> group : groups) {
+                extractGroup(group);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, (r) -> {
+            Thread t = new Thread(r, "GraalPy VFS extraction");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<?>> futures = new ArrayList<>(groups.size());
+        for (List<FileEntry> group : groups) {
+            futures.add(executor.submit(() -> {
+                try {
+                    extractGroup(group);
+                } catch (RuntimeException e) {
+                    if (extractInBackground) {
+                        // the extraction is attempted again when the file is accessed
+                        fine("VFS: background extraction failed: %s", e);
+                    } else {
+                        throw e;
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+        if (extractInBackground) {
+            extractionExecutor = executor;
+            return;
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while extracting the virtual filesystem files", e);
+        }
+    }
+
+    /**
+     * Starts loading the files listed in the given profile in the background, in the order of the
+     * profile. The resource path is the last tab separated column of each line, so that both the
+     * {@link AccessProfile access profile} and a plain list of resource paths can be used. Entries
+     * which are not in the virtual filesystem, directories and files which would not be kept in
+     * memory anyway are skipped.
+     */
+    private void prefetch(Path profile) {
+        List<FileEntry> toPrefetch = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(profile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String resourcePath = line.substring(line.lastIndexOf('\t') + 1);
+                if (resourcePath.endsWith(RESOURCE_SEPARATOR)) {
+                    continue;
+                }
+                BaseEntry entry;
+                try {
+                    entry = findEntry(Path.of(resourcePathToPlatformPath(resourcePath)));
+                } catch (IllegalArgumentException e) {
+                    entry = null;
+                }
+                if (entry instanceof FileEntry fileEntry && shouldPrefetch(fileEntry)) {
+                    toPrefetch.add(fileEntry);
+                } else if (LOGGER.isLoggable(Level.FINEST)) {
+                    finest("VFS: not prefetching '%s'", resourcePath);
+                }
+            }
+        } catch (IOException e) {
+            fine("VFS: cannot read the prefetch profile '%s': %s", profile, e);
+            return;
+        }
+        if (toPrefetch.isEmpty()) {
+            return;
+        }
+        int parallelism = Math.max(1, Math.min(Math.min(extractionParallelism, MAX_PREFETCH_PARALLELISM), toPrefetch.size()));
+        fine("VFS: prefetching %d files from '%s' using %d threads", toPrefetch.size(), profile, parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, (r) -> {
+            Thread t = new Thread(r, "GraalPy VFS prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+        for (FileEntry entry : toPrefetch) {
+            executor.execute(() -> {
+                try {
+                    if (shouldExtract(entry)) {
+                        getExtractedPath(entry);
+                    } else if (entry.getSize() <= getPrefetchSizeLimit()) {
+                        entry.getContents();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // the file is read again when it is accessed
+                    fine("VFS: prefetching '%s' failed: %s", entry.getPlatformPath(), e);
+                }
+            });
+        }
+        executor.shutdown();
+        prefetchExecutor = executor;
+    }
+
+    private boolean shouldPrefetch(FileEntry entry) {
+        if (shouldExtract(entry)) {
+            return extractDir != null;
+        }
+        // the data of packed files are not cached, the size may not be known until the file is
+        // read
+        return entry.archive == null && contentCache.maxBytes > 0 && entry.size <= getPrefetchSizeLimit();
+    }
+
+    private long getPrefetchSizeLimit() {
+        return Math.min(streamingReadThreshold, contentCache.maxBytes);
+    }
+
+    private void extractGroup(List<FileEntry> group) {
+        for (FileEntry entry : group) {
+            try {
+                extractSingleFile(entry);
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Error while extracting virtual filesystem path '%s' to the disk", entry.getPlatformPath()), e);
+            }
+        }
+    }
+
+    /**
+     * Reads the binary index stored next to the files list, if there is one. Returns {@code null}
+     * if the index is not available or cannot be used, in which case the files list is parsed
+     * instead.
+     */
+    private FilesIndex readFilesIndex(URL filelistUrl) {
+        URL indexUrl;
+        try {
+            indexUrl = siblingURL(filelistUrl, FILES_INDEX);
+        } catch (IllegalArgumentException ex) {
+            fine("VFS.initEntries: cannot resolve index next to '%s': %s", filelistUrl, ex);
+            return null;
+        }
+        FilesIndex index;
+        try (InputStream stream = indexUrl.openStream()) {
+            index = FilesIndex.read(stream);
+        } catch (IOException ex) {
+            fine("VFS.initEntries: cannot read index '%s', falling back to files list: %s", indexUrl, ex);
+            return null;
+        }
+        String rootPath = absoluteResourcePath(vfsRoot) + RESOURCE_SEPARATOR;
+        for (int i = 0; i < index.names().length; i++) {
+            if (index.parents()[i] < 0 && !index.names()[i].equals(rootPath)) {
+                fine("VFS.initEntries: index '%s' contains unexpected root '%s', falling back to files list", indexUrl, index.names()[i]);
+                return null;
             }
         }
-        if (vfsEntries.isEmpty()) {
-            warn("VFS.getEntry: no entries after init");
-        }
-        if (filelistUrls.size() > 1) {
-            validateMultipleVFSLocations(filelistUrls);
-        }
-        if (hasNativeFiles) {
-            checkPlatform();
+        return index;
+    }
+
+    /**
+     * Returns the URL of a resource in the same directory as the files list.
+     */
+    private static URL siblingURL(URL filelistUrl, String name) {
+        String filelist = filelistUrl.toString();
+        assert filelist.endsWith(FILES_LIST) : filelist;
+        try {
+            return URI.create(filelist.substring(0, filelist.length() - FILES_LIST.length()) + name).toURL();
+        } catch (MalformedURLException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    private void initEntriesFromIndex(FilesIndex index, ResourceLocation location, int locationsCount) {
+        URL url = location.filelistUrl;
+        finest("VFS entries from index %s:", url);
+        String projPlatformPath = mountPoint.resolve(PROJ_DIR).toString();
+        BaseEntry[] entries = new BaseEntry[index.names().length];
+        for (int i = 0; i < entries.length; i++) {
+            int parentIndex = index.parents()[i];
+            DirEntry parent = parentIndex >= 0 ? (DirEntry) entries[parentIndex] : null;
+            String platformPath = parent == null ? mountPoint.toString() : parent.platformPath + PLATFORM_SEPARATOR + index.names()[i];
+            if (index.isDirectory(i)) {
+                entries[i] = getOrCreateDirEntry(parent, platformPath);
+                if (!projWarning && platformPath.equals(projPlatformPath)) {
+                    projWarning = true;
+                    extendedWarn(String.format("%s source root was deprecated, use %s instead.", absoluteResourcePath(vfsRoot, PROJ_DIR), absoluteResourcePath(vfsRoot, VFS_SRC)));
+                }
+            } else {
+                if (parent == null) {
+                    throw new IllegalStateException(String.format("Invalid virtual filesystem index '%s'.", url));
+                }
+                if (!hasNativeFiles && platformPath.startsWith(platformVenvPath) && isNativeLibrary(platformPath)) {
+                    hasNativeFiles = true;
+                }
+                entries[i] = addFileEntry(parent, platformPath, null, location, index.sizes()[i], index.offsets()[i], index.hashes()[i], locationsCount);
+            }
         }
-        if (extractFilter != null) {
-            for (BaseEntry entry : vfsEntries.values()) {
-                Path baseDir = null;
-                if (entry instanceof FileEntry fileEntry) {
-                    Path path = Paths.get(fileEntry.getPlatformPath());
-                    Path name = path.getFileName();
-                    if (name != null && name.endsWith("RECORD")) {
-                        Path distInfo = path.getParent();
-                        if (distInfo != null && distInfo.toString().endsWith(".dist-info")) {
-                            baseDir = distInfo.getParent();
-                        }
+        if (extractFilter != null && index.extractionGroups() != null) {
+            for (int[] group : index.extractionGroups()) {
+                List<FileEntry> extractedTogether = new ArrayList<>();
+                for (int j = 1; j < group.length; j++) {
+                    FileEntry member = (FileEntry) entries[group[j]];
+                    if (extractFilter.test(Paths.get(member.getPlatformPath()))) {
+                        extractedTogether.add(member);
                     }
                 }
-                if (baseDir != null) {
-                    try (BufferedReader is = new BufferedReader(new InputStreamReader(getResourceUrl(entry.getResourcePath()).openStream()))) {
-                        String line;
-                        List<FileEntry> extractedTogether = new ArrayList<>();
-                        while ((line = is.readLine()) != null) {
-                            int commaIndex = line.indexOf(',');
-                            if (commaIndex < 0) {
-                                warn("Failed to parse wheel entry in record file %s: %s", entry.getPlatformPath(), line);
-                                continue;
-                            }
-                            Path platformPath = baseDir.resolve(line.substring(0, commaIndex).replace("/", PLATFORM_SEPARATOR));
-                            if (extractFilter.test(platformPath)) {
-                                BaseEntry extractableEntry = getEntry(platformPath);
-                                if (extractableEntry instanceof FileEntry extractableFileEntry) {
-                                    extractedTogether.add(extractableFileEntry);
-                                } else {
-                                    warn("Could not find file referred from wheel record file %s: %s", entry.getPlatformPath(), platformPath);
-                                }
-                            }
-                        }
-                        if (!extractedTogether.isEmpty()) {
-                            for (FileEntry extractableFileEntry : extractedTogether) {
-                                extractableFileEntry.toExtract = extractedTogether;
-                            }
-                        }
-                    } catch (IOException ex) {
-                        // This is just best-effort attempt at guessing which libraries to extract
-                        // together, ignore errors
-                        warn("Exception when reading wheel record file %s: %s", entry.getPlatformPath(), ex);
+                if (!extractedTogether.isEmpty()) {
+                    finest("VFS: files extracted together with wheel record file %s: %s", entries[group[0]].getPlatformPath(), extractedTogether.size());
+                    for (FileEntry member : extractedTogether) {
+                        member.toExtract = extractedTogether;
                     }
                 }
             }
-            if (extractOnStartup) {
-                for (BaseEntry entry : vfsEntries.values()) {
-                    if (entry instanceof FileEntry fileEntry) {
-                        if (fileEntry.toExtract != null) {
-                            getExtractedPath(fileEntry);
-                        }
-                    }
+            location.extractionGroupsIndexed = true;
+        }
+    }
+
+    private void initEntriesFromFilesList(ResourceLocation location, int locationsCount) {
+        URL url = location.filelistUrl;
+        String srcPath = absoluteResourcePath(vfsRoot, VFS_SRC);
+        String venvPath = absoluteResourcePath(vfsRoot, VFS_VENV);
+        String projPath = absoluteResourcePath(vfsRoot, PROJ_DIR);
+        try (InputStream stream = url.openStream()) {
+            if (stream == null) {
+                warn("VFS.initEntries: could not read resource %s", url);
+                return;
+            }
+            BufferedReader br = new BufferedReader(new InputStreamReader(stream));
+            String resourcePath;
+            finest("VFS entries:");
+            while ((resourcePath = br.readLine()) != null) {
+                if (resourcePath.isBlank()) {
+                    // allow empty lines, some tools insert empty lines when concatenating files
+                    continue;
                 }
+
+                if (!projWarning && resourcePath.startsWith(projPath)) {
+                    projWarning = true;
+                    extendedWarn(String.format("%s source root was deprecated, use %s instead.", projPath, srcPath));
+                }
+                if (!hasNativeFiles && resourcePath.startsWith(venvPath) && isNativeLibrary(resourcePath)) {
+                    hasNativeFiles = true;
+                }
+
+                String platformPath = resourcePathToPlatformPath(resourcePath);
+                int i = mountPoint.toString().length();
+                DirEntry parent = null;
+                do {
+                    parent = getOrCreateDirEntry(parent, platformPath.substring(0, i));
+                    i++;
+                } while ((i = platformPath.indexOf(PLATFORM_SEPARATOR, i)) != -1);
+
+                assert parent != null;
+                if (!platformPath.endsWith(PLATFORM_SEPARATOR)) {
+                    addFileEntry(parent, platformPath, resourcePath, location, -1, -1, null, locationsCount);
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(String.format("IO error during VirtualFileSystem initialization from location '%s'.", url), ex);
+        }
+    }
+
+    private static boolean isNativeLibrary(String path) {
+        return path.endsWith(".so") || path.endsWith(".dylib") || path.endsWith(".dll");
+    }
+
+    private FileEntry addFileEntry(DirEntry parent, String platformPath, String resourcePath, ResourceLocation location, long size, long offset, byte[] hash, int locationsCount) {
+        FileEntry fileEntry = new FileEntry(platformPath, size, location, offset, hash);
+        if (extractFilter != null && extractFilter.test(Paths.get(platformPath))) {
+            fileEntry.toExtract = List.of(fileEntry);
+        }
+        BaseEntry previous = parent.putChild(fileEntry);
+        if (previous != null) {
+            if (previous instanceof DirEntry) {
+                throw fileDirDuplicateMismatchError(platformPath);
             }
+            String path = resourcePath != null ? resourcePath : fileEntry.getResourcePath();
+            if (locationsCount > 1 && !path.startsWith(absoluteResourcePath(vfsRoot, VFS_VENV)) && !path.equals(absoluteResourcePath(vfsRoot, FILES_LIST))) {
+                reportFailedMultiVFSCheck(multipleLocationsErrorMessage("There are duplicate entries originating from different virtual " +
+                                "filesystem instances. The duplicate entries path: %s.", path));
+            }
+            fine(multipleLocationsErrorMessage("Duplicate entries virtual filesystem entries: " + path));
         }
+        finest("  %s", fileEntry.getResourcePath());
+        parent.entries.add(fileEntry);
+        return fileEntry;
     }
 
     private void checkPlatform() {
         Path contentsPath = mountPoint.resolve("venv").resolve("contents");
-        BaseEntry contentsEntry = getEntry(contentsPath);
+        BaseEntry contentsEntry = findEntry(contentsPath);
         if (contentsEntry != null) {
             assert contentsEntry instanceof FileEntry;
             String contents;
@@ -827,30 +2630,114 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
         }
     }
 
+    /**
+     * Determines the size of a resource from the content length of its URL. Only if the protocol
+     * does not report the length, the contents are read and counted.
+     */
+    private long readResourceSize(String path) throws IOException {
+        URLConnection connection = getResourceUrl(path).openConnection();
+        long size = connection.getContentLengthLong();
+        if (size >= 0) {
+            return size;
+        }
+        try (InputStream stream = connection.getInputStream()) {
+            return stream.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private long readResourceLastModified(String path) throws IOException {
+        return getResourceUrl(path).openConnection().getLastModified();
+    }
+
     private List<URL> getURLInRoot(List<URL> urls) {
         return urls.stream().filter(x -> x.toString().startsWith(vfsRootURL)).findFirst().map(List::of).orElseGet(List::of);
     }
 
+    /**
+     * Looks up the entry for an access through the {@link FileSystem} API.
+     */
     private BaseEntry getEntry(Path inputPath) {
+        BaseEntry entry = findEntry(inputPath);
+        if (accessProfile != null && entry != null) {
+            accessProfile.recordAccess(entry);
+        }
+        return entry;
+    }
+
+    private BaseEntry findEntry(Path inputPath) {
         Path path = toAbsoluteNormalizedPath(inputPath);
-        return vfsEntries.get(toCaseComparable(path.toString()));
+        // the string of a path is cached, walk its components without creating any substrings
+        String pathString = path.toString();
+        if (root == null || !startsWithMountPoint(pathString)) {
+            return null;
+        }
+        BaseEntry entry = root;
+        int start = mountPointString.length() + 1;
+        while (start <= pathString.length()) {
+            if (!(entry instanceof DirEntry dir)) {
+                return null;
+            }
+            int end = pathString.indexOf(PLATFORM_SEPARATOR_CHAR, start);
+            if (end < 0) {
+                end = pathString.length();
+            }
+            entry = dir.getChild(pathString, start, end);
+            if (entry == null) {
+                return null;
+            }
+            start = end + 1;
+        }
+        return entry;
+    }
+
+    /**
+     * Checks if the path string equals to the mount point or starts with the mount point followed
+     * by a separator.
+     */
+    private boolean startsWithMountPoint(String path) {
+        int length = mountPointString.length();
+        return path.regionMatches(caseInsensitive, 0, mountPointString, 0, length) && (path.length() == length || path.charAt(length) == PLATFORM_SEPARATOR_CHAR);
     }
 
     private BaseEntry getEntrySafe(String callerId, Path path) throws NoSuchFileException {
         BaseEntry entry = getEntry(path);
         if (entry == null) {
-            finer("%s: no such file or directory: '%s'", callerId, path);
-            throw new NoSuchFileException(path.toString());
+            throw noSuchEntry(callerId, path);
         }
         return entry;
     }
 
+    private static NoSuchFileException noSuchEntry(String callerId, Path path) {
+        if (LOGGER.isLoggable(Level.FINER)) {
+            finer("%s: no such file or directory: '%s'", callerId, path);
+        }
+        return new NoSuchEntryException(path.toString());
+    }
+
+    /**
+     * Thrown for paths which do not exist in the virtual filesystem. Python imports probe many
+     * nonexistent paths, so the exception does not capture the stack trace to keep the misses
+     * cheap.
+     */
+    private static final class NoSuchEntryException extends NoSuchFileException {
+        private static final long serialVersionUID = 1L;
+
+        NoSuchEntryException(String file) {
+            super(file);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
     /**
      * Determines if the given path belongs to the VFS. The path should be already normalized
      */
     private boolean pathIsInVfs(Path path) {
         assert isNormalized(path);
-        return toCaseComparable(path.toString()).startsWith(mountPointLowerCase);
+        return startsWithMountPoint(path.toString());
     }
 
     private static boolean isNormalized(Path path) {
@@ -900,49 +2787,414 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
     }
 
     private Path extractSingleFile(FileEntry toExtract) throws IOException {
-        /*
-         * Remove the mountPoint(X) (e.g. "graalpy_vfs(x)") prefix if given. Method 'file' is able
-         * to handle relative paths and we need it to compute the extract path.
-         */
-        Path relPath = mountPoint.relativize(Paths.get(toExtract.getPlatformPath()));
-        // create target path
-        Path extractedPath = extractDir.resolve(relPath);
-        if (!Files.exists(extractedPath)) {
-            // first create parent dirs
-            Path parent = extractedPath.getParent();
-            assert parent == null || !Files.exists(parent) || Files.isDirectory(parent);
-            if (parent == null) {
-                throw new NullPointerException("Parent is null during extracting path.");
+        Path extractedPath = toExtract.extractedPath;
+        if (extractedPath != null) {
+            return extractedPath;
+        }
+        // each file is extracted only once, other threads wait until it is completely written
+        synchronized (toExtract) {
+            if (toExtract.extractedPath != null) {
+                return toExtract.extractedPath;
             }
-            Files.createDirectories(parent);
+            /*
+             * Remove the mountPoint(X) (e.g. "graalpy_vfs(x)") prefix if given. Method 'file' is
+             * able to handle relative paths and we need it to compute the extract path.
+             */
+            Path relPath = mountPoint.relativize(Paths.get(toExtract.getPlatformPath()));
+            // create target path
+            extractedPath = (extractionCache ? getExtractionGroupDir(toExtract.toExtract) : extractDir).resolve(relPath);
+            if (!isExtracted(toExtract, extractedPath)) {
+                // first create parent dirs
+                Path parent = extractedPath.getParent();
+                assert parent == null || !Files.exists(parent) || Files.isDirectory(parent);
+                if (parent == null) {
+                    throw new NullPointerException("Parent is null during extracting path.");
+                }
+                Files.createDirectories(parent);
+
+                // write data to a temporary file first, so that the extracted file never appears
+                // partially written
+                // the extracted file is accessed directly from now on, do not keep its data cached
+                Path tmpFile = Files.createTempFile(parent, ".extracting", null);
+                try {
+                    Files.write(tmpFile, toExtract.readData());
+                    moveExtractedFile(tmpFile, extractedPath);
+                    if (extractionCache) {
+                        writeExtractedMarker(toExtract, extractedPath);
+                    }
+                } catch (FileSystemException e) {
+                    // another process may have extracted the same file concurrently and may
+                    // keep it open, which prevents replacing it on some platforms
+                    if (!extractionCache || !isExtracted(toExtract, extractedPath)) {
+                        throw e;
+                    }
+                } finally {
+                    Files.deleteIfExists(tmpFile);
+                }
+                finest("extracted '%s' -> '%s'", toExtract.getPlatformPath(), extractedPath);
+            }
+            toExtract.extractedPath = extractedPath;
+            return extractedPath;
+        }
+    }
+
+    /**
+     * Checks if the file was already extracted. Files in the persistent extraction cache may have
+     * been extracted by another process or a previous run. After a file is moved into place, a
+     * marker with its digest, size and modification time is written next to it. If the marker
+     * matches, the file is reused without reading it. Otherwise, e.g., if the extracting process
+     * was terminated before writing the marker or the file was modified, the digest of the file is
+     * compared with the digest from the index.
+     */
+    private boolean isExtracted(FileEntry entry, Path extractedPath) throws IOException {
+        if (!extractionCache) {
+            return Files.exists(extractedPath);
+        }
+        if (!Files.isRegularFile(extractedPath)) {
+            return false;
+        }
+        String expectedMarker = getExtractedMarker(entry, extractedPath);
+        try {
+            if (expectedMarker.equals(Files.readString(getExtractedMarkerPath(extractedPath), StandardCharsets.UTF_8))) {
+                finest("VFS: reusing extracted file '%s'", extractedPath);
+                return true;
+            }
+        } catch (IOException e) {
+            // no marker, check the contents
+        }
+        MessageDigest digest = newDigest();
+        try (InputStream stream = new DigestInputStream(Files.newInputStream(extractedPath), digest)) {
+            stream.transferTo(OutputStream.nullOutputStream());
+        }
+        if (!Arrays.equals(digest.digest(), entry.getHash())) {
+            fine("VFS: extracted file '%s' does not match '%s', extracting it again", extractedPath, entry.getResourcePath());
+            return false;
+        }
+        finest("VFS: reusing extracted file '%s' with matching contents", extractedPath);
+        writeExtractedMarker(entry, extractedPath);
+        return true;
+    }
+
+    private static Path getExtractedMarkerPath(Path extractedPath) {
+        return extractedPath.resolveSibling("." + extractedPath.getFileName() + ".extracted");
+    }
+
+    private static String getExtractedMarker(FileEntry entry, Path extractedPath) throws IOException {
+        return String.format("%s\t%d\t%d", HexFormat.of().formatHex(entry.getHash()), Files.size(extractedPath), Files.getLastModifiedTime(extractedPath).toMillis());
+    }
+
+    private static void writeExtractedMarker(FileEntry entry, Path extractedPath) throws IOException {
+        writeAtomically(getExtractedMarkerPath(extractedPath), getExtractedMarker(entry, extractedPath).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the directory in the persistent extraction cache, into which the given group of
+     * files extracted together is extracted. The name of the directory is a digest of the paths
+     * and contents of all the files in the group, so that the files referring to each other always
+     * stay together and a different version of any of them is extracted elsewhere.
+     */
+    private Path getExtractionGroupDir(List<FileEntry> group) throws IOException {
+        Path dir = extractionGroupDirs.get(group);
+        if (dir == null) {
+            MessageDigest digest = newDigest();
+            digest.update(EXTRACTION_CACHE_VERSION.getBytes(StandardCharsets.UTF_8));
+            for (FileEntry entry : group) {
+                digest.update((byte) 0);
+                digest.update(entry.getResourcePath().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(entry.getHash());
+            }
+            // 128 bits are enough to avoid collisions and keep the extracted paths short
+            dir = extractDir.resolve(HexFormat.of().formatHex(digest.digest(), 0, 16));
+            Path previous = extractionGroupDirs.putIfAbsent(group, dir);
+            if (previous != null) {
+                dir = previous;
+            }
+        }
+        return dir;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 digest is not available", e);
+        }
+    }
 
-            // write data extracted file
-            Files.write(extractedPath, toExtract.getData());
-            finest("extracted '%s' -> '%s'", toExtract.getPlatformPath(), extractedPath);
+    private static void moveExtractedFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
-        return extractedPath;
     }
 
+    /**
+     * The name of the manifest written to the directory with the extracted resources, see
+     * {@link #extractResources(Path)}.
+     */
+    static final String RESOURCES_MANIFEST = ".graalpy-vfs-manifest";
+    private static final String RESOURCES_MANIFEST_HEADER = "# GraalPy VFS resources manifest";
+    private static final String RESOURCES_MANIFEST_VERSION = "3";
+
+    /**
+     * Extracts all the resources to the given directory. A manifest with a digest identifying the
+     * whole virtual filesystem and the size, digest and modification time of each extracted file
+     * is written to the directory. The digest identifying the virtual filesystem is computed from
+     * the digests of the files in the index, or from the sizes and modification times of the
+     * resources, so that checking if the previous extraction is up to date does not read any file
+     * data. If the manifest of the previous extraction matches and the files are still there with
+     * the recorded sizes and modification times, nothing is written. Otherwise,
+     * the files which are no longer in the virtual filesystem are deleted and only the files which
+     * changed or are missing are written again, in parallel. Each file and the manifest are
+     * written to a temporary file first and then atomically renamed, so that processes sharing the
+     * directory never see partially written files.
+     */
     void extractResources(Path externalResourceDirectory) throws IOException {
         fine("VFS.extractResources '%s'", externalResourceDirectory);
-        for (BaseEntry entry : vfsEntries.values()) {
+        List<DirEntry> dirs = new ArrayList<>();
+        List<FileEntry> files = new ArrayList<>();
+        for (BaseEntry entry : getAllEntries()) {
             String resourcePath = entry.getResourcePath();
             assert resourcePath.length() >= vfsRoot.length() + 1;
             if (resourcePath.length() == vfsRoot.length() + 1) {
                 continue;
             }
-            Path destFile = externalResourceDirectory.resolve(Path.of(resourcePath.substring(vfsRoot.length() + 2)));
-            if (entry instanceof DirEntry) {
-                Files.createDirectories(destFile);
+            if (entry instanceof DirEntry dirEntry) {
+                dirs.add(dirEntry);
             } else {
                 assert entry instanceof FileEntry;
-                Path parent = destFile.getParent();
-                if (parent != null) {
-                    Files.createDirectories(parent);
+                files.add((FileEntry) entry);
+            }
+        }
+        MessageDigest digest = newDigest();
+        digest.update(RESOURCES_MANIFEST_VERSION.getBytes(StandardCharsets.UTF_8));
+        for (FileEntry entry : files) {
+            digest.update((byte) 0);
+            digest.update(getRelativeResourcePath(entry).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(entry.getStamp());
+        }
+        String vfsHash = HexFormat.of().formatHex(digest.digest());
+
+        Path manifestFile = externalResourceDirectory.resolve(RESOURCES_MANIFEST);
+        ResourcesManifest previous = readResourcesManifest(manifestFile);
+        if (previous != null && previous.vfsHash().equals(vfsHash)) {
+            boolean complete = true;
+            for (FileEntry entry : files) {
+                String relativePath = getRelativeResourcePath(entry);
+                if (!isExtractedResource(entry, externalResourceDirectory.resolve(relativePath), previous.files().get(relativePath))) {
+                    complete = false;
+                    break;
+                }
+            }
+            if (complete) {
+                fine("VFS.extractResources: '%s' is up to date", externalResourceDirectory);
+                return;
+            }
+        }
+
+        // the digests are computed from the data unless they are already known from the index
+        forEachInParallel(files, FileEntry::getHash);
+        Set<String> relativePaths = new HashSet<>();
+        List<FileEntry> changed = new ArrayList<>();
+        Map<String, Long> lastModifiedTimes = new ConcurrentHashMap<>();
+        for (FileEntry entry : files) {
+            String relativePath = getRelativeResourcePath(entry);
+            relativePaths.add(relativePath);
+            ExtractedFile extracted = previous != null ? previous.files().get(relativePath) : null;
+            if (extracted == null || !extracted.content().equals(getExtractedContent(entry)) || !isExtractedResource(entry, externalResourceDirectory.resolve(relativePath), extracted)) {
+                changed.add(entry);
+            } else {
+                lastModifiedTimes.put(relativePath, extracted.lastModified());
+            }
+        }
+        if (previous != null) {
+            deleteStaleResources(externalResourceDirectory, previous, relativePaths);
+        }
+        for (DirEntry entry : dirs) {
+            Files.createDirectories(externalResourceDirectory.resolve(getRelativeResourcePath(entry)));
+        }
+        fine("VFS.extractResources: writing %d of %d files to '%s'", changed.size(), files.size(), externalResourceDirectory);
+        forEachInParallel(changed, (entry) -> {
+            String relativePath = getRelativeResourcePath(entry);
+            Path destFile = externalResourceDirectory.resolve(relativePath);
+            finest("VFS.extractResources '%s' -> '%s'", entry.getResourcePath(), destFile);
+            writeAtomically(destFile, entry.readData());
+            lastModifiedTimes.put(relativePath, Files.getLastModifiedTime(destFile).toMillis());
+        });
+        StringBuilder manifest = new StringBuilder(RESOURCES_MANIFEST_HEADER).append('\n').append(vfsHash).append('\n');
+        for (FileEntry entry : files) {
+            String relativePath = getRelativeResourcePath(entry);
+            manifest.append(getExtractedContent(entry)).append('\t').append(lastModifiedTimes.get(relativePath)).append('\t').append(relativePath).append('\n');
+        }
+        writeAtomically(manifestFile, manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes the files listed in the manifest of the previous extraction which are no longer in
+     * the virtual filesystem, together with the directories which became empty.
+     */
+    private static void deleteStaleResources(Path externalResourceDirectory, ResourcesManifest previous, Set<String> relativePaths) throws IOException {
+        Path dir = externalResourceDirectory.toAbsolutePath().normalize();
+        for (String relativePath : previous.files().keySet()) {
+            if (relativePaths.contains(relativePath)) {
+                continue;
+            }
+            Path file = dir.resolve(relativePath).normalize();
+            if (!file.startsWith(dir) || file.equals(dir) || Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                fine("VFS.extractResources: not deleting '%s' listed in the manifest", relativePath);
+                continue;
+            }
+            finest("VFS.extractResources: deleting '%s'", file);
+            Files.deleteIfExists(file);
+            for (Path parent = file.getParent(); parent != null && !parent.equals(dir); parent = parent.getParent()) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(parent)) {
+                    if (stream.iterator().hasNext()) {
+                        break;
+                    }
+                } catch (NoSuchFileException ex) {
+                    continue;
+                }
+                Files.deleteIfExists(parent);
+            }
+        }
+    }
+
+    private String getRelativeResourcePath(BaseEntry entry) {
+        String resourcePath = entry.getResourcePath();
+        int end = resourcePath.endsWith(RESOURCE_SEPARATOR) ? resourcePath.length() - 1 : resourcePath.length();
+        return resourcePath.substring(vfsRoot.length() + 2, end);
+    }
+
+    private static String getExtractedContent(FileEntry entry) throws IOException {
+        return entry.getSize() + "\t" + HexFormat.of().formatHex(entry.getHash());
+    }
+
+    /**
+     * Checks that the file is still the one written by the previous extraction, without reading its
+     * data. A file modified since then has a different size or modification time.
+     */
+    private static boolean isExtractedResource(FileEntry entry, Path file, ExtractedFile extracted) throws IOException {
+        if (extracted == null || !Files.isRegularFile(file)) {
+            return false;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        return attrs.size() == entry.getSize() && attrs.lastModifiedTime().toMillis() == extracted.lastModified();
+    }
+
+    /**
+     * A file listed in the manifest of a previous extraction: its size and digest, and the
+     * modification time it had after it was written.
+     */
+    private record ExtractedFile(String content, long lastModified) {
+    }
+
+    /**
+     * The manifest of a previous extraction: the digest of the whole virtual filesystem and the
+     * extracted files by their relative paths.
+     */
+    private record ResourcesManifest(String vfsHash, Map<String, ExtractedFile> files) {
+    }
+
+    /**
+     * Reads the manifest of a previous extraction, returns {@code null} if there is no valid
+     * manifest.
+     */
+    private static ResourcesManifest readResourcesManifest(Path manifestFile) {
+        if (!Files.isRegularFile(manifestFile)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            if (!RESOURCES_MANIFEST_HEADER.equals(reader.readLine())) {
+                return null;
+            }
+            String vfsHash = reader.readLine();
+            if (vfsHash == null) {
+                return null;
+            }
+            Map<String, ExtractedFile> files = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int hashStart = line.indexOf('\t');
+                int lastModifiedStart = hashStart > 0 ? line.indexOf('\t', hashStart + 1) : -1;
+                int pathStart = lastModifiedStart > 0 ? line.indexOf('\t', lastModifiedStart + 1) : -1;
+                if (pathStart > 0) {
+                    try {
+                        long lastModified = Long.parseLong(line.substring(lastModifiedStart + 1, pathStart));
+                        files.put(line.substring(pathStart + 1), new ExtractedFile(line.substring(0, lastModifiedStart), lastModified));
+                    } catch (NumberFormatException e) {
+                        // the file is written again
+                    }
                 }
-                finest("VFS.extractResources '%s' -> '%s'", resourcePath, destFile);
-                Files.write(destFile, readResource(resourcePath));
             }
+            return new ResourcesManifest(vfsHash, files);
+        } catch (IOException e) {
+            fine("VFS.extractResources: cannot read manifest '%s': %s", manifestFile, e);
+            return null;
+        }
+    }
+
+    private static void writeAtomically(Path file, byte[] data) throws IOException {
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmpFile = Files.createTempFile(parent, ".extracting", null);
+        try {
+            Files.write(tmpFile, data);
+            moveExtractedFile(tmpFile, file);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    private interface FileEntryTask {
+        void run(FileEntry entry) throws IOException;
+    }
+
+    /**
+     * Runs the task for all the given files using at most {@link #extractionParallelism} threads
+     * and waits until it finishes.
+     */
+    private void forEachInParallel(List<FileEntry> files, FileEntryTask task) throws IOException {
+        int parallelism = Math.max(1, Math.min(extractionParallelism, files.size()));
+        if (parallelism == 1) {
+            for (FileEntry entry : files) {
+                task.run(entry);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, (r) -> {
+            Thread t = new Thread(r, "GraalPy VFS extraction");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(files.size());
+            for (FileEntry entry : files) {
+                futures.add(executor.submit(() -> {
+                    task.run(entry);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while extracting the virtual filesystem files", e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -981,7 +3233,9 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
         Objects.requireNonNull(path);
         // same as in c.o.t.polyglot.FileSystems.DeniedIOFileSystem
         Path p = Paths.get(path);
-        finer("VFS.parsePath '%s' -> '%s'", path, p);
+        if (LOGGER.isLoggable(Level.FINER)) {
+            finer("VFS.parsePath '%s' -> '%s'", path, p);
+        }
         return p;
     }
 
@@ -1011,8 +3265,12 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
             throw securityException("VFS.checkAccess", String.format("execute access not supported for  '%s'", p));
         }
 
-        getEntrySafe("VFS.checkAccess", path);
-        finer("VFS.checkAccess %s OK", path);
+        if (entry == null) {
+            throw noSuchEntry("VFS.checkAccess", path);
+        }
+        if (LOGGER.isLoggable(Level.FINER)) {
+            finer("VFS.checkAccess %s OK", path);
+        }
     }
 
     @Override
@@ -1068,21 +3326,29 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
             // appropriate python error
             throw new FileSystemException(path.toString(), null, "Is a directory");
         }
+        long size = fileEntry.getSize();
+        if (size > streamingReadThreshold && (fileEntry.archive == null || !fileEntry.archive.isMapped())) {
+            finer("VFS.newByteChannel streaming '%s' of size %d", path, size);
+            return new StreamingByteChannel(fileEntry, size);
+        }
         return new SeekableByteChannel() {
             long position = 0;
 
-            final byte[] bytes = fileEntry.getData();
+            final ByteBuffer contents = fileEntry.getContents();
 
             @Override
             public int read(ByteBuffer dst) throws IOException {
-                if (position > bytes.length) {
+                int size = contents.limit();
+                if (position > size) {
                     return -1;
-                } else if (position == bytes.length) {
+                } else if (position == size) {
                     return 0;
                 } else {
-                    int length = Math.min(bytes.length - (int) position, dst.remaining());
-                    dst.put(bytes, (int) position, length);
+                    int length = Math.min(size - (int) position, dst.remaining());
+                    dst.put(dst.position(), contents, (int) position, length);
+                    dst.position(dst.position() + length);
                     position += length;
+                    fileEntry.recordRead(length);
                     if (dst.hasRemaining()) {
                         position++;
                     }
@@ -1109,7 +3375,7 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
 
             @Override
             public long size() throws IOException {
-                return bytes.length;
+                return contents.limit();
             }
 
             @Override
@@ -1265,7 +3531,7 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
         attrs.put("isDirectory", entry instanceof DirEntry);
         attrs.put("isSymbolicLink", extractable);
         attrs.put("isOther", false);
-        attrs.put("size", (long) (entry instanceof FileEntry fileEntry ? fileEntry.getData().length : 0));
+        attrs.put("size", entry instanceof FileEntry fileEntry ? fileEntry.getSize() : 0L);
         attrs.put("mode", 0555);
         attrs.put("dev", 0L);
         attrs.put("nlink", 1);
@@ -1372,7 +3638,7 @@ final class VirtualFileSystemImpl implements FileSystem, AutoCloseable {
         try {
             long size = entry.getResourcePath().length() + 1;
             if (entry instanceof FileEntry fe) {
-                size = Math.addExact(size, fe.getData().length);
+                size = Math.addExact(size, fe.getSize());
             } else if (entry instanceof DirEntry de) {
                 for (BaseEntry e : de.entries) {
                     size = Math.addExact(size, getEntryTotalSpace(e));
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.nativeimage.hosted.RuntimeClassInitialization;
+import org.graalvm.python.embedding.VirtualFileSystem;
+
+/**
+ * Native Image feature which stores the index of the {@link VirtualFileSystem} in the image heap,
+ * so that a virtual filesystem created in a native executable does not have to read and decode its
+ * index from the resources. The feature is registered automatically and is not meant to be used
+ * directly, which is why it is in a package which is not exported.
+ * <p/>
+ * The index is stored for the default resource directory and for the resource directories given
+ * by the image build time system properties starting with
+ * {@code org.graalvm.python.vfs.imageHeapResourceDirectory}, as a comma separated list. Resource
+ * directories found in multiple locations are not stored, they are resolved at run time as usual,
+ * so that the {@code org.graalvm.python.vfs.allow_multiple} and
+ * {@code org.graalvm.python.vfs.root_url} system properties keep working.
+ * <p/>
+ * If the image build time system property {@code org.graalvm.python.vfs.imageHeapProfile} points
+ * to an {@link VirtualFileSystem.Builder#accessProfile(Path) access profile}, the data of the
+ * files listed in it are also stored in the image heap, up to the size given by
+ * {@code org.graalvm.python.vfs.imageHeapFileLimit} per file, 64 KB by default. Setting
+ * {@code org.graalvm.python.vfs.imageHeapIndex} to {@code false} disables the feature.
+ * <p/>
+ * The index is created by the package-private {@code VirtualFileSystemImpl}, which is accessed
+ * reflectively, so that none of it has to be public.
+ */
+public final class VirtualFileSystemFeature implements Feature {
+    private static final String PROPERTY_PREFIX = "org.graalvm.python.vfs.imageHeap";
+    private static final String ENABLED_PROP = PROPERTY_PREFIX + "Index";
+    private static final String RESOURCE_DIRECTORY_PROP = PROPERTY_PREFIX + "ResourceDirectory";
+    private static final String PROFILE_PROP = PROPERTY_PREFIX + "Profile";
+    private static final String FILE_LIMIT_PROP = PROPERTY_PREFIX + "FileLimit";
+    private static final long DEFAULT_FILE_LIMIT = 64 * 1024;
+    private static final String DEFAULT_RESOURCE_DIRECTORY = "org.graalvm.python.vfs";
+    private static final String IMPL_CLASS = "org.graalvm.python.embedding.VirtualFileSystemImpl";
+
+    @Override
+    public String getDescription() {
+        return "Stores the GraalPy virtual filesystem index in the image heap";
+    }
+
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return !"false".equals(System.getProperty(ENABLED_PROP));
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        RuntimeClassInitialization.initializeAtBuildTime(getImplClass("$ImageHeapIndices"), getImplClass("$ImageHeapIndex"), getImplClass("$FilesIndex"));
+    }
+
+    @Override
+    public void beforeAnalysis(BeforeAnalysisAccess access) {
+        String profile = System.getProperty(PROFILE_PROP);
+        Path profilePath = profile != null && !profile.isEmpty() ? Path.of(profile) : null;
+        long fileLimit = Long.getLong(FILE_LIMIT_PROP, DEFAULT_FILE_LIMIT);
+        Method storeInImageHeap;
+        try {
+            storeInImageHeap = getImplClass("").getDeclaredMethod("storeInImageHeap", ClassLoader.class, String.class, Path.class, long.class);
+            storeInImageHeap.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String resourceDirectory : getResourceDirectories()) {
+            try {
+                storeInImageHeap.invoke(null, access.getApplicationClassLoader(), resourceDirectory, profilePath, fileLimit);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                Throwable cause = e instanceof InvocationTargetException ite ? ite.getCause() : e;
+                throw new IllegalStateException(String.format("Cannot store the virtual filesystem index of '%s' in the image heap.", resourceDirectory), cause);
+            }
+        }
+    }
+
+    private static Class<?> getImplClass(String nestedName) {
+        try {
+            return Class.forName(IMPL_CLASS + nestedName, false, VirtualFileSystemFeature.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Set<String> getResourceDirectories() {
+        Set<String> directories = new LinkedHashSet<>();
+        directories.add(DEFAULT_RESOURCE_DIRECTORY);
+        for (Map.Entry<Object, Object> e : System.getProperties().entrySet()) {
+            if (e.getKey() instanceof String key && key.startsWith(RESOURCE_DIRECTORY_PROP) && e.getValue() instanceof String value) {
+                for (String directory : value.split(",")) {
+                    if (!directory.isBlank()) {
+                        directories.add(directory.trim());
+                    }
+                }
+            }
+        }
+        return directories;
+    }
+}
@@ -50,6 +50,10 @@
  * For passing python keyword and positional arguments from java to python, see:
  * {@link org.graalvm.python.embedding.KeywordArguments} and
  * {@link org.graalvm.python.embedding.PositionalArguments}
+ * <p/>
+ * For sharing pre-initialized contexts between the threads serving requests, see
+ * {@link org.graalvm.python.embedding.GraalPyContextPool}. For calling Python asynchronously, for
+ * example from virtual threads, see {@link org.graalvm.python.embedding.GraalPyExecutor}.
  *
  * @since 24.2.0
  */
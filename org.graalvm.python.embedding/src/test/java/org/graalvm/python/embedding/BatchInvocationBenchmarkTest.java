@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Value;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares calling a small Python function for each element of a list from Java with calling it
+ * for the whole list by {@link BatchInvocation}. Not run by default, enable with
+ * {@code -Dgraalpy.batch.benchmark=true}. The number of elements can be set with
+ * {@code -Dgraalpy.batch.benchmark.elements}.
+ */
+@EnabledIfSystemProperty(named = "graalpy.batch.benchmark", matches = "true")
+public class BatchInvocationBenchmarkTest {
+    private static final int ELEMENTS = Integer.getInteger("graalpy.batch.benchmark.elements", 10_000);
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 20;
+
+    private static Context context;
+    private static Value fn;
+    private static List<Object[]> calls;
+    private static List<Object[]> kwCalls;
+
+    @BeforeAll
+    public static void setUp() {
+        context = Context.newBuilder().engine(Engine.newBuilder("python").option("engine.WarnInterpreterOnly", "false").build()).allowAllAccess(true).build();
+        fn = context.eval("python", "def fn(a, b, scale=1):\n    return (a + b) * scale\nfn");
+        calls = new ArrayList<>(ELEMENTS);
+        kwCalls = new ArrayList<>(ELEMENTS);
+        for (int i = 0; i < ELEMENTS; i++) {
+            calls.add(new Object[]{i, 1});
+            kwCalls.add(new Object[]{i, 1, KeywordArguments.of("scale", 2)});
+        }
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        context.close();
+        context.getEngine().close();
+    }
+
+    private interface Round {
+        long run();
+    }
+
+    private static double best(Round round, long expected) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            assertEquals(expected, round.run());
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            round.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / ELEMENTS;
+    }
+
+    private static long perCall(List<Object[]> args) {
+        long sum = 0;
+        for (Object[] call : args) {
+            sum += fn.execute(call).asLong();
+        }
+        return sum;
+    }
+
+    private static long batch(List<Object[]> args) {
+        long sum = 0;
+        for (long result : BatchInvocation.invoke(fn, args).as(long[].class)) {
+            sum += result;
+        }
+        return sum;
+    }
+
+    @Test
+    public void positionalArguments() {
+        long expected = (long) ELEMENTS * (ELEMENTS + 1) / 2;
+        double perCall = best(() -> perCall(calls), expected);
+        double batch = best(() -> batch(calls), expected);
+        System.out.printf("Batch benchmark: %d calls, per call %.1f ns, batch %.1f ns per element%n", ELEMENTS, perCall, batch);
+    }
+
+    @Test
+    public void keywordArguments() {
+        long expected = (long) ELEMENTS * (ELEMENTS + 1);
+        double perCall = best(() -> perCall(kwCalls), expected);
+        double batch = best(() -> batch(kwCalls), expected);
+        System.out.printf("Batch benchmark: %d calls with keyword arguments, per call %.1f ns, batch %.1f ns per element%n", ELEMENTS, perCall, batch);
+    }
+}
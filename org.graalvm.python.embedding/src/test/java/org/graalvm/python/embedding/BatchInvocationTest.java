@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Value;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class BatchInvocationTest {
+    private static Context context;
+
+    @BeforeAll
+    public static void setUp() {
+        context = Context.newBuilder().engine(Engine.create("python")).allowAllAccess(true).build();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        context.close();
+        context.getEngine().close();
+    }
+
+    @Test
+    public void singleArguments() {
+        Value square = context.eval("python", "lambda x: x * x");
+        assertEquals(List.of(1, 4, 9), BatchInvocation.invoke(square, List.of(1, 2, 3), Integer.class));
+        Value results = BatchInvocation.invoke(square, IntStream.range(0, 100).boxed());
+        assertEquals(100, results.getArraySize());
+        assertEquals(99 * 99, results.getArrayElement(99).asInt());
+        assertEquals(List.of(), BatchInvocation.invoke(square, List.of(), Integer.class));
+
+        Value add = context.eval("python", "lambda *args: sum(args)");
+        assertEquals(List.of(0, 0), BatchInvocation.invoke(add, List.of(new Object[0], List.of()), Integer.class));
+        assertEquals(List.of(10, 26), BatchInvocation.invoke(add, List.of(List.of(1, 2, 3, 4), List.of(5, 6, 7, 8)), Integer.class));
+        assertEquals(List.of(15, 40), BatchInvocation.invoke(add, List.of(List.of(1, 2, 3, 4, 5), List.of(6, 7, 8, 9, 10)), Integer.class));
+    }
+
+    @Test
+    public void argumentTuples() {
+        Value fn = context.eval("python", """
+                        def fn(a, *args, sep='-', **kwargs):
+                            return sep.join(str(x) for x in (a, *args, *sorted(kwargs.items())))
+                        fn
+                        """);
+        List<?> calls = List.of(
+                        new Object[]{1, 2},
+                        List.of("a", "b", "c"),
+                        new Object[]{0, PositionalArguments.of(1, 2), 3},
+                        new Object[]{"x", "y", KeywordArguments.of("sep", "+")},
+                        new Object[]{PositionalArguments.of("k"), KeywordArguments.from(Map.of("key", 1))},
+                        "single");
+        assertEquals(List.of("1-2", "a-b-c", "0-1-2-3", "x+y", "k-('key', 1)", "single"), BatchInvocation.invoke(fn, calls, String.class));
+    }
+
+    @Test
+    public void defaultContext() {
+        // the helpers are kept by the context, also when it does not allow polyglot access
+        try (Context ctx = Context.create("python")) {
+            Value square = ctx.eval("python", "lambda x: x * x");
+            assertEquals(List.of(1, 4), BatchInvocation.invoke(square, List.of(1, 2), Integer.class));
+            System.gc();
+            assertEquals(List.of(9, 16), BatchInvocation.invoke(square, List.of(3, 4), Integer.class));
+        }
+    }
+
+    @Test
+    public void errors() {
+        Value fn = context.eval("python", "def fn(x):\n    return 1 // x\nfn");
+        assertThrows(PolyglotException.class, () -> BatchInvocation.invoke(fn, List.of(1, 0)));
+        assertThrows(IllegalArgumentException.class, () -> BatchInvocation.invoke(fn, List.of(new Object[][]{{KeywordArguments.of("x", 1), 2}})));
+        assertThrows(IllegalArgumentException.class, () -> BatchInvocation.invoke(context.eval("python", "42"), List.of(1)));
+    }
+}
@@ -49,10 +49,14 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.ByteBuffer;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
@@ -71,14 +75,25 @@ import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
@@ -690,6 +705,10 @@ public class VirtualFileSystemTest {
         assertFalse((Boolean) attrs.get("isSymbolicLink"));
         assertTrue((Boolean) attrs.get("isRegularFile"));
 
+        assertEquals(12L, fs.readAttributes(Path.of(pathPrefix, "file1"), "size").get("size"));
+        assertEquals(0L, fs.readAttributes(Path.of(pathPrefix, "SomeFile"), "size").get("size"));
+        assertEquals(0L, fs.readAttributes(Path.of(pathPrefix, "dir1"), "size").get("size"));
+
         assertThrows(NoSuchFileException.class, () -> fs.readAttributes(Path.of(pathPrefix, "does-not-exist", "extractme"), "creationTime", LinkOption.NOFOLLOW_LINKS));
         assertThrows(NoSuchFileException.class, () -> fs.readAttributes(Path.of(pathPrefix, "does-not-exist", "extractme"), "creationTime"));
 
@@ -733,6 +752,769 @@ public class VirtualFileSystemTest {
         }
     }
 
+    @Test
+    public void extractionCache() throws Exception {
+        Path cacheDir = Files.createTempDirectory("graalpy.vfs.test").toRealPath();
+        try {
+            checkExtractionCache(cacheDir);
+        } finally {
+            deleteDirectory(cacheDir);
+        }
+    }
+
+    private void checkExtractionCache(Path cacheDir) throws Exception {
+        Path lib;
+        FileTime libModified;
+        try (VirtualFileSystem vfs = newExtractionCacheVFS(cacheDir)) {
+            FileSystem fs = getDelegatingFS(vfs);
+            lib = fs.toRealPath(VFS_ROOT_PATH.resolve("src/pkg1/pkg1-fake-library.so"));
+            assertTrue(lib.startsWith(cacheDir));
+            checkExtractedFile(lib, null);
+            // files extracted together share a directory
+            Path groupDir = lib.getParent().getParent().getParent();
+            assertEquals(cacheDir, groupDir.getParent());
+            checkExtractedFile(groupDir.resolve("src/package1.libs/fake-dependency1.so"), null);
+            checkExtractedFile(groupDir.resolve("src/package1.libs/fake-dependency2.so.2"), null);
+            // files extracted separately do not
+            Path extractme = fs.toRealPath(VFS_ROOT_PATH.resolve("extractme"));
+            checkExtractedFile(extractme, new String[]{"text1", "text2"});
+            assertEquals(cacheDir, extractme.getParent().getParent());
+            assertNotEquals(groupDir, extractme.getParent());
+            libModified = Files.getLastModifiedTime(lib);
+        }
+        // the cache is kept after close and reused by another instance
+        assertTrue(Files.exists(lib));
+        Files.setLastModifiedTime(lib, FileTime.fromMillis(libModified.toMillis() - 10000));
+        libModified = Files.getLastModifiedTime(lib);
+        try (VirtualFileSystem vfs = newExtractionCacheVFS(cacheDir)) {
+            assertEquals(lib, getDelegatingFS(vfs).toRealPath(VFS_ROOT_PATH.resolve("src/pkg1/pkg1-fake-library.so")));
+            assertEquals(libModified, Files.getLastModifiedTime(lib));
+        }
+        // a damaged file is extracted again
+        byte[] data = Files.readAllBytes(lib);
+        Files.write(lib, new byte[]{1});
+        try (VirtualFileSystem vfs = newExtractionCacheVFS(cacheDir)) {
+            assertEquals(lib, getDelegatingFS(vfs).toRealPath(VFS_ROOT_PATH.resolve("src/pkg1/pkg1-fake-library.so")));
+            assertArrayEquals(data, Files.readAllBytes(lib));
+        }
+        // also if its size did not change
+        Path extractme;
+        try (VirtualFileSystem vfs = newExtractionCacheVFS(cacheDir)) {
+            extractme = getDelegatingFS(vfs).toRealPath(VFS_ROOT_PATH.resolve("extractme"));
+        }
+        Files.writeString(extractme, "text1\ntext3\n");
+        try (VirtualFileSystem vfs = newExtractionCacheVFS(cacheDir)) {
+            assertEquals(extractme, getDelegatingFS(vfs).toRealPath(VFS_ROOT_PATH.resolve("extractme")));
+            checkExtractedFile(extractme, new String[]{"text1", "text2"});
+        }
+        // a file without a marker, e.g., if the extracting process was terminated, is reused if it
+        // is complete
+        try (Stream<Path> s = Files.walk(cacheDir)) {
+            for (Path marker : s.filter((p) -> p.getFileName().toString().endsWith(".extracted")).toList()) {
+                Files.delete(marker);
+            }
+        }
+        libModified = Files.getLastModifiedTime(lib);
+        try (VirtualFileSystem vfs = newExtractionCacheVFS(cacheDir)) {
+            assertEquals(lib, getDelegatingFS(vfs).toRealPath(VFS_ROOT_PATH.resolve("src/pkg1/pkg1-fake-library.so")));
+            assertEquals(libModified, Files.getLastModifiedTime(lib));
+        }
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void extractOnStartup() throws Exception {
+        String[] libs = {"src/pkg1/pkg1-fake-library.so", "src/package1.libs/fake-dependency1.so", "src/package1.libs/fake-dependency2.so.2", "src/package2.libs/not-extracted.so"};
+        List<Path> cacheDirs = new ArrayList<>();
+        try {
+            System.setProperty("org.graalvm.python.vfs.extractionParallelism", "4");
+            System.setProperty("org.graalvm.python.vfs.extractOnStartup", "true");
+            Path cacheDir = Files.createTempDirectory("graalpy.vfs.test").toRealPath();
+            cacheDirs.add(cacheDir);
+            try (VirtualFileSystem vfs = newExtractionCacheVFS(cacheDir)) {
+                // all files are extracted before any access
+                List<String> extracted;
+                try (Stream<Path> s = Files.walk(cacheDir)) {
+                    extracted = s.filter(Files::isRegularFile).map(p -> p.getFileName().toString()).toList();
+                }
+                for (String lib : libs) {
+                    assertTrue(extracted.contains(Path.of(lib).getFileName().toString()), lib);
+                }
+                assertTrue(extracted.contains("extractme"));
+                checkExtractedFile(getDelegatingFS(vfs).toRealPath(VFS_ROOT_PATH.resolve(libs[0])), null);
+            }
+
+            System.setProperty("org.graalvm.python.vfs.extractOnStartup", "background");
+            cacheDir = Files.createTempDirectory("graalpy.vfs.test").toRealPath();
+            cacheDirs.add(cacheDir);
+            try (VirtualFileSystem vfs = newExtractionCacheVFS(cacheDir)) {
+                // accessing files waits for their extraction if it is not finished yet
+                FileSystem fs = getDelegatingFS(vfs);
+                for (String lib : libs) {
+                    Path p = fs.toRealPath(VFS_ROOT_PATH.resolve(lib));
+                    assertTrue(p.startsWith(cacheDir));
+                    checkExtractedFile(p, null);
+                }
+            }
+        } finally {
+            System.clearProperty("org.graalvm.python.vfs.extractOnStartup");
+            System.clearProperty("org.graalvm.python.vfs.extractionParallelism");
+            for (Path cacheDir : cacheDirs) {
+                deleteDirectory(cacheDir);
+            }
+        }
+    }
+
+    private static VirtualFileSystem newExtractionCacheVFS(Path cacheDir) {
+        return VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(p -> p.getFileName().toString().endsWith("extractme")).//
+                        extractionCacheDirectory(cacheDir).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build();
+    }
+
+    @Test
+    public void contentCache() throws Exception {
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(null).//
+                        contentCacheLimit(420).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            FileSystem fs = getDelegatingFS(vfs);
+            Path file1 = VFS_ROOT_PATH.resolve("file1");
+            Path record = VFS_ROOT_PATH.resolve("src/package1.dist-info/RECORD");
+
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 0, 0, 0), vfs.getContentCacheStatistics());
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, file1)));
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 1, 0, 12), vfs.getContentCacheStatistics());
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, file1)));
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(1, 1, 0, 12), vfs.getContentCacheStatistics());
+
+            // 12 + 409 bytes do not fit, file1 is evicted
+            assertEquals(409, readAllBytes(fs, record).length);
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(1, 2, 1, 409), vfs.getContentCacheStatistics());
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, file1)));
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(1, 3, 2, 12), vfs.getContentCacheStatistics());
+
+            // size does not need the data
+            assertEquals(409L, fs.readAttributes(record, "size").get("size"));
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(1, 3, 2, 12), vfs.getContentCacheStatistics());
+        }
+        assertThrows(IllegalArgumentException.class, () -> VirtualFileSystem.newBuilder().contentCacheLimit(-1));
+    }
+
+    @Test
+    public void contentCacheDisabled() throws Exception {
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(null).//
+                        contentCacheLimit(0).//
+                        contentCacheSoftReferences(true).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            FileSystem fs = getDelegatingFS(vfs);
+            for (int i = 0; i < 3; i++) {
+                assertEquals("text1\ntext2\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("file1"))));
+            }
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 3, 0, 0), vfs.getContentCacheStatistics());
+        }
+    }
+
+    @Test
+    public void contentCacheOffHeap() throws Exception {
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(null).//
+                        contentCacheOffHeap(true).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            FileSystem fs = getDelegatingFS(vfs);
+            Path file1 = VFS_ROOT_PATH.resolve("file1");
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, file1)));
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, file1)));
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(1, 1, 0, 12), vfs.getContentCacheStatistics());
+
+            // reads at a position do not disturb the cached data
+            try (SeekableByteChannel ch = fs.newByteChannel(file1, Set.of(StandardOpenOption.READ))) {
+                ByteBuffer buffer = ByteBuffer.allocate(5);
+                ch.position(6);
+                assertEquals(5, ch.read(buffer));
+                assertEquals("text2", new String(buffer.array()));
+            }
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, file1)));
+            assertEquals(0, readAllBytes(fs, VFS_ROOT_PATH.resolve("dir1/file2")).length);
+        }
+    }
+
+    @Test
+    public void contentCacheOffHeapStaleSize() throws Exception {
+        // the resource is longer than the size in the index, e.g., because it was modified after
+        // the index was generated
+        Path tmpDir = Files.createTempDirectory("contentCacheOffHeapStaleSize");
+        tmpDir.toFile().deleteOnExit();
+        Path jar = tmpDir.resolve("vfs.jar");
+        String markerClass = JarMarker.class.getName().replace('.', '/') + ".class";
+        String contents = "text1\ntext2\ntext3\n";
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (String name : List.of(markerClass, "org.graalvm.python.vfs/fileslist.txt", "org.graalvm.python.vfs/filesindex.bin")) {
+                out.putNextEntry(new JarEntry(name));
+                try (InputStream in = VirtualFileSystemTest.class.getClassLoader().getResourceAsStream(name)) {
+                    in.transferTo(out);
+                }
+            }
+            out.putNextEntry(new JarEntry("org.graalvm.python.vfs/file1"));
+            out.write(contents.getBytes());
+        }
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null)) {
+            for (boolean offHeap : new boolean[]{false, true}) {
+                try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                                unixMountPoint(VFS_MOUNT_POINT).//
+                                windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                                extractFilter(null).//
+                                contentCacheOffHeap(offHeap).//
+                                resourceLoadingClass(loader.loadClass(JarMarker.class.getName())).build()) {
+                    FileSystem fs = getDelegatingFS(vfs);
+                    try (SeekableByteChannel ch = fs.newByteChannel(VFS_ROOT_PATH.resolve("file1"), Set.of(StandardOpenOption.READ))) {
+                        ByteBuffer buffer = ByteBuffer.allocate(64);
+                        while (ch.read(buffer) > 0) {
+                        }
+                        assertEquals(contents, new String(buffer.array(), 0, buffer.position()), "offHeap: " + offHeap);
+                    }
+                }
+            }
+        } finally {
+            Files.delete(jar);
+        }
+    }
+
+    @Test
+    public void caseInsensitiveLookup() throws Exception {
+        for (boolean caseInsensitive : new boolean[]{true, false}) {
+            try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                            unixMountPoint(VFS_MOUNT_POINT).//
+                            windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                            caseInsensitive(caseInsensitive).//
+                            extractFilter(null).//
+                            resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+                FileSystem fs = getDelegatingFS(vfs);
+                fs.checkAccess(VFS_ROOT_PATH.resolve("dir1").resolve("file2"), Set.of(AccessMode.READ));
+                Executable checkUpperCase = () -> fs.checkAccess(VFS_ROOT_PATH.resolve("DIR1").resolve("File2"), Set.of(AccessMode.READ));
+                if (caseInsensitive) {
+                    assertDoesNotThrow(checkUpperCase);
+                } else {
+                    assertThrows(NoSuchFileException.class, checkUpperCase);
+                }
+                // a file cannot be used as a directory
+                assertThrows(NoSuchFileException.class, () -> fs.checkAccess(VFS_ROOT_PATH.resolve("file1").resolve("file2"), Set.of(AccessMode.READ)));
+                assertThrows(NoSuchFileException.class, () -> fs.checkAccess(VFS_ROOT_PATH.resolve("dir1").resolve("file2x"), Set.of(AccessMode.READ)));
+            }
+        }
+    }
+
+    @Test
+    public void rootMountPoint() {
+        // the virtual filesystem must not shadow the whole host filesystem
+        if (IS_WINDOWS) {
+            assertThrows(IllegalArgumentException.class, () -> VirtualFileSystem.newBuilder().windowsMountPoint("X:\\"));
+        } else {
+            assertThrows(IllegalArgumentException.class, () -> VirtualFileSystem.newBuilder().unixMountPoint("/"));
+        }
+    }
+
+    @Test
+    public void sharedInstances() throws Exception {
+        VirtualFileSystem.Builder builder = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(null).//
+                        contentCacheLimit(1000).//
+                        shared(true).//
+                        resourceLoadingClass(VirtualFileSystemTest.class);
+        Path file1 = VFS_ROOT_PATH.resolve("file1");
+        VirtualFileSystem vfs1 = builder.build();
+        try (VirtualFileSystem vfs2 = builder.allowHostIO(NONE).build()) {
+            assertEquals("text1\ntext2\n", new String(readAllBytes(getDelegatingFS(vfs1), file1)));
+            // the second instance shares the contents read by the first one
+            assertEquals("text1\ntext2\n", new String(readAllBytes(getDelegatingFS(vfs2), file1)));
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(1, 1, 0, 12), vfs2.getContentCacheStatistics());
+            // a different configuration is not shared
+            try (VirtualFileSystem vfs3 = builder.contentCacheLimit(2000).build()) {
+                assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 0, 0, 0), vfs3.getContentCacheStatistics());
+            }
+            // neither is a virtual filesystem which does not opt in
+            try (VirtualFileSystem vfs3 = builder.contentCacheLimit(1000).shared(false).build()) {
+                assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 0, 0, 0), vfs3.getContentCacheStatistics());
+            }
+            builder.shared(true);
+            // closing one instance does not affect the other, closing it again has no effect
+            vfs1.close();
+            vfs1.close();
+            assertEquals("text1\ntext2\n", new String(readAllBytes(getDelegatingFS(vfs2), file1)));
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(2, 1, 0, 12), vfs2.getContentCacheStatistics());
+        }
+        // once all instances are closed, a new one starts from scratch
+        try (VirtualFileSystem vfs = builder.contentCacheLimit(1000).build()) {
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 0, 0, 0), vfs.getContentCacheStatistics());
+        }
+    }
+
+    @Test
+    public void sharedInstanceDoesNotRetainFilter() throws Exception {
+        WeakReference<Predicate<Path>> filter = buildUnclosedSharedVFS();
+        // the shared instances are looked up per class loader, they must not keep the filter
+        // (and thus its class loader) alive once the virtual filesystem is not used anymore
+        for (int i = 0; i < 100 && filter.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(filter.get());
+    }
+
+    private static WeakReference<Predicate<Path>> buildUnclosedSharedVFS() {
+        Predicate<Path> filter = new Predicate<>() {
+            @Override
+            public boolean test(Path p) {
+                return false;
+            }
+        };
+        VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(filter).//
+                        shared(true).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build();
+        return new WeakReference<>(filter);
+    }
+
+    @Test
+    public void packedArchive() throws Exception {
+        // the packed VFS contains only the files list, index and archive, the files themselves are
+        // not available as separate resources
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        resourceDirectory("GRAALPY-VFS/packed").//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            FileSystem fs = getDelegatingFS(vfs);
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("file1"))));
+            assertEquals("packed\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("dir1/file2"))));
+            assertEquals(0, readAllBytes(fs, VFS_ROOT_PATH.resolve("dir1/empty")).length);
+            assertEquals(12L, fs.readAttributes(VFS_ROOT_PATH.resolve("file1"), "size").get("size"));
+            Set<String> dir1 = new HashSet<>();
+            try (DirectoryStream<Path> ds = fs.newDirectoryStream(VFS_ROOT_PATH.resolve("dir1"), (p) -> true)) {
+                ds.forEach(p -> dir1.add(p.getFileName().toString()));
+            }
+            assertEquals(Set.of("empty", "file2"), dir1);
+
+            try (SeekableByteChannel ch = fs.newByteChannel(VFS_ROOT_PATH.resolve("file1"), Set.of(StandardOpenOption.READ))) {
+                ch.position(6);
+                ByteBuffer buffer = ByteBuffer.allocate(5);
+                assertEquals(5, ch.read(buffer));
+                assertEquals("text2", new String(buffer.array()));
+            }
+            // packed files are not cached
+            assertEquals(0, vfs.getContentCacheStatistics().cachedBytes());
+        }
+    }
+
+    @Test
+    public void streamingRead() throws Exception {
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(null).//
+                        streamingReadThreshold(5).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            FileSystem fs = getDelegatingFS(vfs);
+            try (SeekableByteChannel ch = fs.newByteChannel(VFS_ROOT_PATH.resolve("file1"), Set.of(StandardOpenOption.READ))) {
+                assertEquals(12, ch.size());
+                ByteBuffer buffer = ByteBuffer.allocate(5);
+                assertEquals(5, ch.read(buffer));
+                assertEquals("text1", new String(buffer.array()));
+                assertEquals(5, ch.position());
+
+                // seek forward
+                ch.position(6);
+                buffer.clear();
+                assertEquals(5, ch.read(buffer));
+                assertEquals("text2", new String(buffer.array()));
+
+                // seek backward
+                ch.position(1);
+                ByteBuffer direct = ByteBuffer.allocateDirect(3);
+                assertEquals(3, ch.read(direct));
+                direct.flip();
+                byte[] bytes = new byte[3];
+                direct.get(bytes);
+                assertEquals("ext", new String(bytes));
+
+                // end of file
+                ch.position(11);
+                buffer.clear();
+                assertEquals(1, ch.read(buffer));
+                assertEquals(-1, ch.read(buffer));
+                ch.position(100);
+                assertEquals(-1, ch.read(buffer));
+
+                assertThrows(NonWritableChannelException.class, () -> ch.write(ByteBuffer.allocate(1)));
+            }
+            // files below the threshold are still read at once
+            assertEquals(0, readAllBytes(fs, VFS_ROOT_PATH.resolve("SomeFile")).length);
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 1, 0, 0), vfs.getContentCacheStatistics());
+        }
+        assertThrows(IllegalArgumentException.class, () -> VirtualFileSystem.newBuilder().streamingReadThreshold(-1));
+    }
+
+    @Test
+    public void accessProfile() throws Exception {
+        Path profile = Files.createTempDirectory("graalpy.vfs.profile").resolve("profile.txt");
+        Path onDemand = profile.resolveSibling("ondemand.txt");
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(null).//
+                        accessProfile(profile).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            FileSystem fs = getDelegatingFS(vfs);
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("file1"))));
+            fs.checkAccess(VFS_ROOT_PATH.resolve("dir1"), Set.of(AccessMode.READ));
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("file1"))));
+            // missing files are not traced
+            assertThrows(NoSuchFileException.class, () -> fs.checkAccess(VFS_ROOT_PATH.resolve("file1x"), Set.of(AccessMode.READ)));
+
+            vfs.writeAccessProfile(onDemand);
+            assertFalse(Files.exists(profile));
+        }
+        for (Path p : new Path[]{onDemand, profile}) {
+            List<String> lines = Files.readAllLines(p);
+            assertTrue(lines.get(0).startsWith("#"), lines.get(0));
+            assertEquals(3, lines.size(), lines.toString());
+            String[] file1 = lines.get(1).split("\t");
+            assertEquals(4, file1.length, lines.get(1));
+            assertTrue(Long.parseLong(file1[0]) >= 2, lines.get(1));
+            assertEquals("24", file1[1]);
+            assertTrue(file1[3].endsWith("/file1"), lines.get(1));
+            String[] dir1 = lines.get(2).split("\t");
+            assertEquals("0", dir1[1]);
+            assertTrue(dir1[3].endsWith("/dir1/"), lines.get(2));
+        }
+
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            assertThrows(IllegalStateException.class, () -> vfs.writeAccessProfile(onDemand));
+        }
+    }
+
+    @Test
+    public void prefetchProfile() throws Exception {
+        Path dir = Files.createTempDirectory("graalpy.vfs.prefetch");
+        Path profile = dir.resolve("profile.txt");
+        Files.write(profile, List.of("# comment",
+                        "2\t24\t10\t/org.graalvm.python.vfs/file1",
+                        "1\t0\t20\t/org.graalvm.python.vfs/dir1/",
+                        // missing entries and plain resource paths
+                        "/org.graalvm.python.vfs/missing",
+                        "/some.other.vfs/file1",
+                        "/org.graalvm.python.vfs/extractme"));
+        Path cacheDir = dir.resolve("cache");
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        extractFilter(p -> p.getFileName().toString().endsWith("extractme")).//
+                        extractionCacheDirectory(cacheDir).//
+                        prefetchProfile(profile).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!(vfs.getContentCacheStatistics().cachedBytes() == 12 && isExtracted(cacheDir, "extractme")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 1, 0, 12), vfs.getContentCacheStatistics());
+            assertTrue(isExtracted(cacheDir, "extractme"));
+
+            assertEquals("text1\ntext2\n", new String(readAllBytes(getDelegatingFS(vfs), VFS_ROOT_PATH.resolve("file1"))));
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(1, 1, 0, 12), vfs.getContentCacheStatistics());
+        }
+
+        // a missing profile is ignored
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        prefetchProfile(dir.resolve("missing.txt")).//
+                        resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            assertEquals(new VirtualFileSystem.ContentCacheStatistics(0, 0, 0, 0), vfs.getContentCacheStatistics());
+        }
+    }
+
+    private static boolean isExtracted(Path dir, String name) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.anyMatch((p) -> p.getFileName().toString().equals(name) && Files.isRegularFile(p));
+        }
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int iteration = 0; iteration < 20; iteration++) {
+                try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                                unixMountPoint(VFS_MOUNT_POINT).//
+                                windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                                extractFilter(p -> p.getFileName().toString().equals("RECORD")).//
+                                resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+                    FileSystem fs = getDelegatingFS(vfs);
+                    CyclicBarrier barrier = new CyclicBarrier(threads);
+                    List<Future<Path>> results = new ArrayList<>();
+                    for (int i = 0; i < threads; i++) {
+                        results.add(executor.submit(() -> {
+                            barrier.await();
+                            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("file1"))));
+                            Path lib = fs.toRealPath(VFS_ROOT_PATH.resolve("src/pkg1/pkg1-fake-library.so"));
+                            assertTrue(Files.exists(lib.getParent().getParent().resolve("package1.libs/fake-dependency1.so")));
+                            Path record = fs.toRealPath(VFS_ROOT_PATH.resolve("src/package1.dist-info/RECORD"));
+                            // the extracted file must never be observed partially written
+                            assertEquals(409, Files.size(record));
+                            return record;
+                        }));
+                    }
+                    Set<Path> extracted = new HashSet<>();
+                    for (Future<Path> result : results) {
+                        extracted.add(result.get());
+                    }
+                    assertEquals(1, extracted.size());
+                    // file1 was read from the resources exactly once
+                    VirtualFileSystem.ContentCacheStatistics stats = vfs.getContentCacheStatistics();
+                    assertEquals(1, stats.missCount());
+                    assertEquals(threads - 1, stats.hitCount());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Loaded from a jar by a class loader without parent to access the resources in that jar.
+     */
+    public static final class JarMarker {
+    }
+
+    @Test
+    public void resourcesInJar() throws Exception {
+        Path tmpDir = Files.createTempDirectory("resourcesInJar");
+        tmpDir.toFile().deleteOnExit();
+        Path jar = tmpDir.resolve("vfs.jar");
+        String markerClass = JarMarker.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(markerClass));
+            try (InputStream in = JarMarker.class.getClassLoader().getResourceAsStream(markerClass)) {
+                in.transferTo(out);
+            }
+            out.putNextEntry(new JarEntry("GRAALPY-VFS/jar/fileslist.txt"));
+            out.write("/GRAALPY-VFS/jar/\n/GRAALPY-VFS/jar/dir1/\n/GRAALPY-VFS/jar/dir1/file1\n".getBytes());
+            out.putNextEntry(new JarEntry("GRAALPY-VFS/jar/dir1/file1"));
+            out.write("text in jar\n".getBytes());
+        }
+
+        List<String> messages = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord rec) {
+                messages.add(rec.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(VirtualFileSystem.class.getName());
+        logger.addHandler(handler);
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null);
+                        VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                                        unixMountPoint(VFS_MOUNT_POINT).//
+                                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                                        resourceDirectory("GRAALPY-VFS/jar").//
+                                        streamingReadThreshold(0).//
+                                        resourceLoadingClass(loader.loadClass(JarMarker.class.getName())).build()) {
+            FileSystem fs = getDelegatingFS(vfs);
+            assertEquals(12L, fs.readAttributes(VFS_ROOT_PATH.resolve("dir1/file1"), "size").get("size"));
+            assertEquals("text in jar\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("dir1/file1"))));
+        } finally {
+            logger.removeHandler(handler);
+            Files.delete(jar);
+        }
+        assertTrue(messages.stream().anyMatch(m -> m.contains("resolved to " + jar)), String.join("\n", messages));
+    }
+
+    @Test
+    public void packedArchiveInJar() throws Exception {
+        Path tmpDir = Files.createTempDirectory("packedArchiveInJar");
+        tmpDir.toFile().deleteOnExit();
+        Path jar = tmpDir.resolve("vfs.jar");
+        String markerClass = JarMarker.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (String name : List.of(markerClass, "GRAALPY-VFS/packed/fileslist.txt", "GRAALPY-VFS/packed/filesindex.bin", "GRAALPY-VFS/packed/filesarchive.bin")) {
+                out.putNextEntry(new JarEntry(name));
+                try (InputStream in = VirtualFileSystemTest.class.getClassLoader().getResourceAsStream(name)) {
+                    in.transferTo(out);
+                }
+            }
+        }
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null);
+                        VirtualFileSystem vfs = VirtualFileSystem.newBuilder().//
+                                        unixMountPoint(VFS_MOUNT_POINT).//
+                                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                                        resourceDirectory("GRAALPY-VFS/packed").//
+                                        resourceLoadingClass(loader.loadClass(JarMarker.class.getName())).build()) {
+            FileSystem fs = getDelegatingFS(vfs);
+            assertEquals("text1\ntext2\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("file1"))));
+            assertEquals("packed\n", new String(readAllBytes(fs, VFS_ROOT_PATH.resolve("dir1/file2"))));
+            try (SeekableByteChannel ch = fs.newByteChannel(VFS_ROOT_PATH.resolve("file1"), Set.of(StandardOpenOption.READ))) {
+                ch.position(6);
+                ByteBuffer buffer = ByteBuffer.allocate(5);
+                assertEquals(5, ch.read(buffer));
+                assertEquals("text2", new String(buffer.array()));
+            }
+            // the archive in the jar is read as a stream, so the read files are cached
+            assertEquals(19, vfs.getContentCacheStatistics().cachedBytes());
+        } finally {
+            Files.delete(jar);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void imageHeapIndex() throws Exception {
+        // the native image feature cannot run on the JVM, but the index it stores can be created
+        Class<?> implClass = Class.forName(VFS_IMPL_CLASS);
+        Method storeInImageHeap = implClass.getDeclaredMethod("storeInImageHeap", ClassLoader.class, String.class, Path.class, long.class);
+        storeInImageHeap.setAccessible(true);
+        Method readFilesIndex = implClass.getDeclaredMethod("readFilesIndex", URL.class);
+        readFilesIndex.setAccessible(true);
+        Field indicesField = Class.forName(VFS_IMPL_CLASS + "$ImageHeapIndices").getDeclaredField("INDICES");
+        indicesField.setAccessible(true);
+        Map<String, Object> indices = (Map<String, Object>) indicesField.get(null);
+
+        String filesList = "org.graalvm.python.vfs/fileslist.txt";
+        ClassLoader loader = VirtualFileSystemTest.class.getClassLoader();
+        Path resources = Path.of(loader.getResource(filesList).toURI()).getParent();
+        Path tmpDir = Files.createTempDirectory("imageHeapIndex");
+        try (VirtualFileSystem vfs = VirtualFileSystem.newBuilder().resourceLoadingClass(VirtualFileSystemTest.class).build()) {
+            Field implField = vfs.getClass().getDeclaredField("impl");
+            implField.setAccessible(true);
+            Object expected = readFilesIndex.invoke(implField.get(vfs), loader.getResource(filesList));
+            assertNotNull(expected);
+
+            // the index generated by the build tools is stored as it is
+            storeInImageHeap.invoke(null, loader, "org.graalvm.python.vfs", null, 0L);
+            Object stored = indices.get(filesList);
+            assertNull(call(stored, "packedFiles"));
+            for (var component : expected.getClass().getRecordComponents()) {
+                assertTrue(Objects.deepEquals(call(expected, component.getName()), call(call(stored, "index"), component.getName())), component.getName());
+            }
+
+            // without it, the index is created from the files list
+            Path copy = tmpDir.resolve("org.graalvm.python.vfs");
+            try (Stream<Path> files = Files.walk(resources)) {
+                for (Path p : (Iterable<Path>) files::iterator) {
+                    if (!p.getFileName().toString().equals("filesindex.bin")) {
+                        Files.copy(p, copy.resolve(resources.relativize(p).toString()));
+                    }
+                }
+            }
+            try (URLClassLoader filesListLoader = new URLClassLoader(new URL[]{tmpDir.toUri().toURL()}, null)) {
+                storeInImageHeap.invoke(null, filesListLoader, "org.graalvm.python.vfs", null, 0L);
+                assertEquals(getIndexedSizes(expected), getIndexedSizes(call(indices.get(filesList), "index")));
+
+                // the hot files up to the limit are packed into the index, in both cases
+                Path profile = tmpDir.resolve("profile.txt");
+                Files.write(profile, List.of("# profile",
+                                "1\t12\t0\t/org.graalvm.python.vfs/file1",
+                                "/org.graalvm.python.vfs/dir1/",
+                                "/org.graalvm.python.vfs/src/package2.dist-info/RECORD",
+                                "/org.graalvm.python.vfs/src/package1.dist-info/RECORD"));
+                for (ClassLoader l : new ClassLoader[]{loader, filesListLoader}) {
+                    storeInImageHeap.invoke(null, l, "org.graalvm.python.vfs", profile, 200L);
+                    stored = indices.get(filesList);
+                    assertEquals(getIndexedSizes(expected), getIndexedSizes(call(stored, "index")));
+                    assertEquals(Set.of("/org.graalvm.python.vfs/file1", "/org.graalvm.python.vfs/src/package2.dist-info/RECORD"), checkPackedFiles(stored, resources));
+                }
+            }
+        } finally {
+            indices.remove(filesList);
+            deleteDirectory(tmpDir);
+        }
+    }
+
+    private static final String VFS_IMPL_CLASS = "org.graalvm.python.embedding.VirtualFileSystemImpl";
+
+    private static Object call(Object receiver, String method) throws Exception {
+        Method m = receiver.getClass().getDeclaredMethod(method);
+        m.setAccessible(true);
+        return m.invoke(receiver);
+    }
+
+    /**
+     * Returns the resource paths of the entries of an index with the sizes of the files, or -1
+     * for directories.
+     */
+    private static Map<String, Long> getIndexedSizes(Object index) throws Exception {
+        String[] paths = (String[]) call(index, "resourcePaths");
+        long[] sizes = (long[]) call(index, "sizes");
+        byte[] flags = (byte[]) call(index, "flags");
+        Map<String, Long> result = new HashMap<>();
+        for (int i = 0; i < paths.length; i++) {
+            result.put(paths[i], (flags[i] & 0x1) != 0 ? -1 : sizes[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the data of the files packed into an image heap index matches the resources and
+     * returns their resource paths.
+     */
+    private static Set<String> checkPackedFiles(Object imageHeapIndex, Path resources) throws Exception {
+        Object index = call(imageHeapIndex, "index");
+        byte[] packedFiles = (byte[]) call(imageHeapIndex, "packedFiles");
+        String[] paths = (String[]) call(index, "resourcePaths");
+        long[] sizes = (long[]) call(index, "sizes");
+        long[] offsets = (long[]) call(index, "offsets");
+        byte[] flags = (byte[]) call(index, "flags");
+        Set<String> packed = new HashSet<>();
+        for (int i = 0; i < paths.length; i++) {
+            if ((flags[i] & 0x4) != 0) {
+                byte[] data = Arrays.copyOfRange(packedFiles, (int) offsets[i], (int) (offsets[i] + sizes[i]));
+                assertArrayEquals(Files.readAllBytes(resources.getParent().resolve(paths[i].substring(1))), data, paths[i]);
+                packed.add(paths[i]);
+            }
+        }
+        return packed;
+    }
+
+    private static byte[] readAllBytes(FileSystem fs, Path path) throws IOException {
+        try (SeekableByteChannel ch = fs.newByteChannel(path, Set.of(StandardOpenOption.READ))) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) ch.size());
+            while (buffer.hasRemaining() && ch.read(buffer) > 0) {
+            }
+            return buffer.array();
+        }
+    }
+
     private static void checkExtractedFile(Path extractedFile, String[] expectedContents) throws IOException {
         assertTrue(Files.exists(extractedFile));
         List<String> lines = Files.readAllLines(extractedFile);
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding.test.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.python.embedding.GraalPyContextPool;
+import org.graalvm.python.embedding.VirtualFileSystem;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class GraalPyContextPoolTest {
+    private static Engine engine;
+    private static VirtualFileSystem vfs;
+
+    @BeforeAll
+    public static void setUp() {
+        engine = Engine.newBuilder("python").option("engine.WarnInterpreterOnly", "false").build();
+        vfs = VirtualFileSystem.create();
+    }
+
+    @AfterAll
+    public static void tearDown() throws IOException {
+        vfs.close();
+        engine.close();
+    }
+
+    @Test
+    public void borrowAndReturn() throws Exception {
+        try (GraalPyContextPool pool = GraalPyContextPool.newBuilder(engine, vfs).size(2).initScript("initialized = 42").build()) {
+            assertEquals(new GraalPyContextPool.Statistics(2, 2, 0, 0, 0, 0, 0, 0), pool.getStatistics());
+            Context first;
+            try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+                first = pooled.getContext();
+                assertEquals(42, first.eval("python", "initialized").asInt());
+            }
+            // the context last used by this thread is preferred
+            try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+                assertSame(first, pooled.getContext());
+            }
+
+            GraalPyContextPool.PooledContext a = pool.borrow();
+            GraalPyContextPool.PooledContext b = pool.borrow();
+            assertNotSame(a.getContext(), b.getContext());
+            assertNull(pool.borrow(Duration.ofMillis(10)));
+            GraalPyContextPool.Statistics stats = pool.getStatistics();
+            assertEquals(0, stats.idleCount());
+            assertEquals(4, stats.borrowCount());
+            assertEquals(1, stats.timeoutCount());
+
+            // the borrowed context can only be used by the borrowing thread
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<?> other = executor.submit(() -> a.getContext());
+                Exception e = assertThrows(Exception.class, other::get);
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                // a waiting thread gets the context once it is returned
+                Future<Integer> waiting = executor.submit(() -> {
+                    try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+                        return pooled.getContext().eval("python", "initialized").asInt();
+                    }
+                });
+                a.close();
+                assertEquals(42, waiting.get());
+            } finally {
+                executor.shutdown();
+            }
+            b.close();
+            assertThrows(IllegalStateException.class, b::getContext);
+            stats = pool.getStatistics();
+            assertEquals(2, stats.idleCount());
+            assertEquals(5, stats.borrowCount());
+        }
+    }
+
+    @Test
+    public void eviction() throws Exception {
+        try (GraalPyContextPool pool = GraalPyContextPool.newBuilder(engine, vfs).//
+                        size(1).//
+                        maxUses(2).//
+                        healthCheck((ctx) -> !ctx.getBindings("python").hasMember("broken")).build()) {
+            Context first;
+            try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+                first = pooled.getContext();
+            }
+            try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+                assertSame(first, pooled.getContext());
+            }
+            // used twice, replaced by a new context
+            Context second;
+            try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+                second = pooled.getContext();
+                assertNotSame(first, second);
+                pooled.getContext().eval("python", "broken = True");
+            }
+            // failed the health check
+            Context third;
+            try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+                third = pooled.getContext();
+                assertNotSame(second, third);
+                pooled.invalidate();
+            }
+            try (GraalPyContextPool.PooledContext pooled = pool.borrow()) {
+                assertNotSame(third, pooled.getContext());
+            }
+            assertEquals(3, pool.getStatistics().evictionCount());
+        }
+    }
+
+    @Test
+    public void closed() throws Exception {
+        GraalPyContextPool pool = GraalPyContextPool.newBuilder(engine, vfs).size(1).build();
+        GraalPyContextPool.PooledContext pooled = pool.borrow();
+        pool.close();
+        assertThrows(IllegalStateException.class, pool::borrow);
+        assertEquals(1, pooled.getContext().eval("python", "1").asInt());
+        pooled.close();
+        assertEquals(0, pool.getStatistics().contextCount());
+        assertThrows(IllegalArgumentException.class, () -> GraalPyContextPool.newBuilder(engine, vfs).size(0));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding.test.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+import org.graalvm.python.embedding.GraalPyExecutor;
+import org.graalvm.python.embedding.GraalPyResources;
+import org.graalvm.python.embedding.VirtualFileSystem;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class GraalPyExecutorTest {
+    private static Engine engine;
+    private static VirtualFileSystem vfs;
+
+    @BeforeAll
+    public static void setUp() {
+        engine = GraalPyResources.engineBuilder().option("engine.WarnInterpreterOnly", "false").build();
+        vfs = VirtualFileSystem.create();
+    }
+
+    @AfterAll
+    public static void tearDown() throws IOException {
+        vfs.close();
+        engine.close();
+    }
+
+    @Test
+    public void submitFromVirtualThreads() throws Exception {
+        Source source = GraalPyResources.cachedSource("square.py", "import threading\n(threading.get_ident(), x * x)");
+        try (GraalPyExecutor executor = GraalPyExecutor.newBuilder(engine, vfs).threads(2).build();
+                        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Long>> results = new ArrayList<>();
+            Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+            for (int i = 0; i < 20; i++) {
+                int x = i;
+                results.add(callers.submit(() -> executor.submit((context) -> {
+                    threads.add(Thread.currentThread().getName());
+                    context.getBindings("python").putMember("x", x);
+                    return context.eval(source).getArrayElement(1).asLong();
+                }).join()));
+            }
+            for (int i = 0; i < 20; i++) {
+                assertEquals((long) i * i, results.get(i).get());
+            }
+            assertTrue(threads.stream().allMatch((name) -> name.startsWith("GraalPy executor ")));
+            assertEquals(42, executor.eval(Source.create("python", "6 * 7"), (v) -> v.asInt()).join());
+        }
+    }
+
+    @Test
+    public void backpressureAndCancellation() throws Exception {
+        GraalPyExecutor executor = GraalPyExecutor.newBuilder(engine, vfs).queueCapacity(1).build();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> blocking = executor.submit((context) -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return 1;
+        });
+        running.await();
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        CompletableFuture<Integer> queued = executor.trySubmit((context) -> {
+            queuedRan.set(true);
+            return 2;
+        });
+        assertThrows(RejectedExecutionException.class, () -> executor.trySubmit((context) -> 3));
+
+        // a cancelled task is removed from the queue and never runs
+        assertTrue(queued.cancel(false));
+        CompletableFuture<Integer> next = executor.trySubmit((context) -> 4);
+        release.countDown();
+        assertEquals(1, blocking.join());
+        assertEquals(4, next.join());
+        assertFalse(queuedRan.get());
+        assertThrows(CancellationException.class, queued::join);
+
+        // a running task is interrupted
+        CountDownLatch looping = new CountDownLatch(1);
+        CompletableFuture<Object> endless = executor.submit((context) -> {
+            looping.countDown();
+            return context.eval("python", "while True: pass");
+        });
+        looping.await();
+        Thread.sleep(100);
+        assertTrue(endless.cancel(true));
+        assertThrows(CancellationException.class, endless::join);
+        assertEquals(5, executor.submit((context) -> context.eval("python", "5").asInt()).join());
+
+        executor.close();
+        assertThrows(RejectedExecutionException.class, () -> executor.submit((context) -> 6));
+        assertThrows(IllegalArgumentException.class, () -> GraalPyExecutor.newBuilder(engine, vfs).queueCapacity(0));
+    }
+
+    @Test
+    public void contextCreationFailure() {
+        // errors fail the build as well, after the contexts created by the other threads are closed
+        List<Context> created = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean failed = new AtomicBoolean();
+        GraalPyExecutor.Builder builder = GraalPyExecutor.newBuilder(() -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new AssertionError("cannot create context");
+            }
+            Context context = GraalPyResources.contextBuilder(vfs, engine).build();
+            created.add(context);
+            return context;
+        }).threads(2);
+        AssertionError error = assertThrows(AssertionError.class, builder::build);
+        assertEquals("cannot create context", error.getMessage());
+        assertEquals(1, created.size());
+        assertThrows(IllegalStateException.class, () -> created.get(0).eval("python", "1"));
+
+        assertThrows(IllegalStateException.class, GraalPyExecutor.newBuilder(() -> {
+            throw new IllegalStateException("cannot create context");
+        })::build);
+    }
+}
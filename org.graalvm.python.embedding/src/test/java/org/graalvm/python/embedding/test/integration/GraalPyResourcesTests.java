@@ -40,9 +40,15 @@
  */
 package org.graalvm.python.embedding.test.integration;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
 import java.nio.file.Path;
 
+import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
 import org.graalvm.python.embedding.GraalPyResources;
 import org.graalvm.python.embedding.VirtualFileSystem;
 import org.junit.jupiter.api.Test;
@@ -58,4 +64,21 @@ public class GraalPyResourcesTests {
         GraalPyResources.contextBuilder(VirtualFileSystem.newBuilder().build()).engine(sharedEngine).build().close();
         sharedEngine.close();
     }
+
+    @Test
+    public void preconfiguredEngine() {
+        try (Engine engine = GraalPyResources.engineBuilder().option("engine.WarnInterpreterOnly", "false").build()) {
+            Source source = GraalPyResources.cachedSource("entry.py", "import sys\nsys.flags.dont_write_bytecode");
+            assertSame(source, GraalPyResources.cachedSource("entry.py", "import sys\nsys.flags.dont_write_bytecode"));
+            assertNotSame(source, GraalPyResources.cachedSource("other.py", "import sys\nsys.flags.dont_write_bytecode"));
+            try (Context ctx1 = GraalPyResources.contextBuilder(engine).build();
+                            Context ctx2 = GraalPyResources.contextBuilder(VirtualFileSystem.newBuilder().build(), engine).build();
+                            Context ctx3 = GraalPyResources.contextBuilder(Path.of("test"), engine).build()) {
+                assertSame(engine, ctx1.getEngine());
+                for (Context ctx : new Context[]{ctx1, ctx2, ctx3}) {
+                    assertEquals(1, ctx.eval(source).asInt());
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2025, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.python.embedding.test.integration;
+
+import static org.graalvm.python.embedding.test.TestUtils.IS_WINDOWS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.AccessMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.io.FileSystem;
+import org.graalvm.python.embedding.GraalPyResources;
+import org.graalvm.python.embedding.VirtualFileSystem;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Measures how fast Python imports probe a virtual filesystem with a large package tree spread
+ * over several {@code sys.path} entries, so that most of the probed paths do not exist. Not run by
+ * default, enable with {@code -Dgraalpy.vfs.benchmark=true}. The size of the tree can be set with
+ * {@code -Dgraalpy.vfs.benchmark.packages} and {@code -Dgraalpy.vfs.benchmark.modules}.
+ */
+@EnabledIfSystemProperty(named = "graalpy.vfs.benchmark", matches = "true")
+public class VirtualFileSystemBenchmarkTest {
+    private static final int PACKAGES = Integer.getInteger("graalpy.vfs.benchmark.packages", 100);
+    private static final int MODULES = Integer.getInteger("graalpy.vfs.benchmark.modules", 20);
+    private static final int PATH_ENTRIES = 4;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private static final String VFS_DIR = "GRAALPY-VFS/benchmark";
+    private static final String VFS_UNIX_MOUNT_POINT = "/graalpy_benchmark";
+    private static final String VFS_WIN_MOUNT_POINT = "X:\\graalpy_benchmark";
+    private static final String VFS_MOUNT_POINT = IS_WINDOWS ? VFS_WIN_MOUNT_POINT : VFS_UNIX_MOUNT_POINT;
+
+    private static final Set<AccessMode> READ = Set.of(AccessMode.READ);
+
+    public static final class Marker {
+    }
+
+    private static Path classPathRoot;
+
+    @BeforeAll
+    public static void createPackageTree() throws IOException {
+        classPathRoot = Files.createTempDirectory("graalpy.vfs.benchmark");
+        classPathRoot.toFile().deleteOnExit();
+        String markerClass = Marker.class.getName().replace('.', '/') + ".class";
+        Path markerFile = classPathRoot.resolve(markerClass);
+        Files.createDirectories(markerFile.getParent());
+        try (InputStream in = Marker.class.getClassLoader().getResourceAsStream(markerClass)) {
+            Files.copy(in, markerFile);
+        }
+
+        // all packages are in the last sys.path entry, the others are probed in vain
+        TreeSet<String> filesList = new TreeSet<>();
+        for (int k = 0; k < PATH_ENTRIES; k++) {
+            addFile(filesList, "lib" + k + "/README", "");
+        }
+        for (int i = 0; i < PACKAGES; i++) {
+            addFile(filesList, "lib" + (PATH_ENTRIES - 1) + "/pkg" + i + "/__init__.py", "");
+            for (int j = 0; j < MODULES; j++) {
+                addFile(filesList, "lib" + (PATH_ENTRIES - 1) + "/pkg" + i + "/mod" + j + ".py", "VALUE = " + j + "\n");
+            }
+        }
+        Files.write(classPathRoot.resolve(VFS_DIR).resolve("fileslist.txt"), filesList);
+    }
+
+    private static void addFile(TreeSet<String> filesList, String path, String contents) throws IOException {
+        Path file = classPathRoot.resolve(VFS_DIR).resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, contents);
+        String resourcePath = "/" + VFS_DIR + "/" + path;
+        filesList.add(resourcePath);
+        for (int i = resourcePath.indexOf('/', VFS_DIR.length() + 1); i >= 0; i = resourcePath.indexOf('/', i + 1)) {
+            filesList.add(resourcePath.substring(0, i + 1));
+        }
+    }
+
+    private static VirtualFileSystem newVFS(URLClassLoader loader) throws ClassNotFoundException {
+        return VirtualFileSystem.newBuilder().//
+                        unixMountPoint(VFS_UNIX_MOUNT_POINT).//
+                        windowsMountPoint(VFS_WIN_MOUNT_POINT).//
+                        resourceDirectory(VFS_DIR).//
+                        resourceLoadingClass(loader.loadClass(Marker.class.getName())).build();
+    }
+
+    private static URLClassLoader newLoader() throws IOException {
+        return new URLClassLoader(new URL[]{classPathRoot.toUri().toURL()}, null);
+    }
+
+    private static FileSystem getDelegatingFS(VirtualFileSystem vfs) throws NoSuchFieldException, IllegalAccessException {
+        Field f = vfs.getClass().getDeclaredField("delegatingFileSystem");
+        f.setAccessible(true);
+        return (FileSystem) f.get(vfs);
+    }
+
+    /**
+     * Probes the same candidates as the Python path finders do for every module in every
+     * {@code sys.path} entry.
+     */
+    @Test
+    public void probeModules() throws Exception {
+        try (URLClassLoader loader = newLoader(); VirtualFileSystem vfs = newVFS(loader)) {
+            FileSystem fs = getDelegatingFS(vfs);
+            List<Path> probes = new ArrayList<>();
+            for (int k = 0; k < PATH_ENTRIES; k++) {
+                Path entry = Path.of(VFS_MOUNT_POINT, "lib" + k);
+                for (int i = 0; i < PACKAGES; i++) {
+                    Path pkg = entry.resolve("pkg" + i);
+                    for (int j = 0; j < MODULES; j++) {
+                        String mod = "mod" + j;
+                        probes.add(pkg.resolve(mod));
+                        probes.add(pkg.resolve(mod + ".py"));
+                        probes.add(pkg.resolve(mod + ".pyc"));
+                        probes.add(pkg.resolve(mod + ".so"));
+                        probes.add(pkg.resolve(mod + ".abi3.so"));
+                        probes.add(pkg.resolve(mod).resolve("__init__.py"));
+                    }
+                }
+            }
+            for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                assertEquals(PACKAGES * MODULES, probe(fs, probes));
+            }
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                probe(fs, probes);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("VFS benchmark: %d probes, %d found, best %.1f ns per probe%n", probes.size(), PACKAGES * MODULES, (double) best / probes.size());
+        }
+    }
+
+    private static int probe(FileSystem fs, List<Path> probes) {
+        int found = 0;
+        for (Path p : probes) {
+            try {
+                fs.checkAccess(p, READ);
+                found++;
+            } catch (IOException e) {
+                // expected for most of the probes
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Imports all modules of the package tree in a new context.
+     */
+    @Test
+    public void importModules() throws Exception {
+        StringBuilder pythonPath = new StringBuilder();
+        for (int k = 0; k < PATH_ENTRIES; k++) {
+            if (k > 0) {
+                pythonPath.append(File.pathSeparator);
+            }
+            pythonPath.append(Path.of(VFS_MOUNT_POINT, "lib" + k));
+        }
+        String script = String.format("""
+                        import time
+                        start = time.perf_counter()
+                        for i in range(%d):
+                            for j in range(%d):
+                                __import__(f'pkg{i}.mod{j}')
+                        (time.perf_counter() - start) * 1000
+                        """, PACKAGES, MODULES);
+        try (URLClassLoader loader = newLoader(); Engine engine = Engine.newBuilder("python").option("engine.WarnInterpreterOnly", "false").build()) {
+            double best = Double.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                try (VirtualFileSystem vfs = newVFS(loader);
+                                Context ctx = GraalPyResources.contextBuilder(vfs).engine(engine).option("python.PythonPath", pythonPath.toString()).build()) {
+                    best = Math.min(best, ctx.eval("python", script).asDouble());
+                }
+            }
+            System.out.printf("VFS benchmark: imported %d modules, best %.1f ms%n", PACKAGES * MODULES, best);
+        }
+    }
+}
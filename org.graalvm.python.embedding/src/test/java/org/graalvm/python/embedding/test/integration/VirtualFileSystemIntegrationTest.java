@@ -54,6 +54,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -62,6 +63,7 @@ import java.util.function.Function;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import static org.graalvm.python.embedding.test.TestUtils.IS_WINDOWS;
 import static org.junit.jupiter.api.Assertions.*;
@@ -161,6 +163,17 @@ public class VirtualFileSystemIntegrationTest {
         }
     }
 
+    /**
+     * Sets the modification time of an extracted file together with the one recorded in the
+     * manifest, so that the file is still considered to be up to date.
+     */
+    private static void setExtractedLastModifiedTime(Path manifest, Path file, String relativePath, FileTime time) throws IOException {
+        Files.setLastModifiedTime(file, time);
+        List<String> lines = Files.readAllLines(manifest);
+        lines.replaceAll((l) -> l.endsWith("\t" + relativePath) ? l.replaceFirst("\t[0-9]+\t" + Pattern.quote(relativePath) + "$", "\t" + time.toMillis() + "\t" + relativePath) : l);
+        Files.write(manifest, lines);
+    }
+
     private static void checkExtractedFile(Path extractedFile, String[] expectedContens) throws IOException {
         assertTrue(Files.exists(extractedFile));
         List<String> lines = Files.readAllLines(extractedFile);
@@ -626,6 +639,73 @@ public class VirtualFileSystemIntegrationTest {
         }
     }
 
+    @ParameterizedTest
+    @MethodSource(VFS_DIRECTORIES_SOURCE)
+    public void externalResourcesIncrementalTest(String vfsDir) throws IOException {
+        Path resourcesDir = Files.createTempDirectory("vfs-test-resources");
+        try (VirtualFileSystem fs = newVirtualFileSystemBuilder(vfsDir).//
+                        resourceLoadingClass(VirtualFileSystemIntegrationTest.class).build()) {
+            GraalPyResources.extractVirtualFileSystemResources(fs, resourcesDir);
+            Path manifest = resourcesDir.resolve(".graalpy-vfs-manifest");
+            assertTrue(Files.isRegularFile(manifest));
+            Path file1 = resourcesDir.resolve("file1");
+            Path file2 = resourcesDir.resolve(Path.of("dir1", "file2"));
+            FileTime unchanged = FileTime.fromMillis(1000_000L);
+            setExtractedLastModifiedTime(manifest, file1, "file1", unchanged);
+            setExtractedLastModifiedTime(manifest, file2, "dir1/file2", unchanged);
+
+            // the manifest matches, nothing is written
+            GraalPyResources.extractVirtualFileSystemResources(fs, resourcesDir);
+            assertEquals(unchanged, Files.getLastModifiedTime(file1));
+            assertEquals(unchanged, Files.getLastModifiedTime(file2));
+
+            // only the changed and missing files are written
+            Files.writeString(file1, "changed");
+            Files.setLastModifiedTime(file1, unchanged);
+            Path extractme = resourcesDir.resolve("extractme");
+            Files.delete(extractme);
+            GraalPyResources.extractVirtualFileSystemResources(fs, resourcesDir);
+            checkExtractedFile(file1, new String[]{"text1", "text2"});
+            assertTrue(Files.exists(extractme));
+            assertEquals(unchanged, Files.getLastModifiedTime(file2));
+
+            // a file modified without changing its size is written again
+            setExtractedLastModifiedTime(manifest, file1, "file1", unchanged);
+            Files.writeString(file1, Files.readString(file1).replace("text1", "TEXT1"));
+            GraalPyResources.extractVirtualFileSystemResources(fs, resourcesDir);
+            checkExtractedFile(file1, new String[]{"text1", "text2"});
+            assertEquals(unchanged, Files.getLastModifiedTime(file2));
+
+            // a manifest of different resources causes the files to be compared one by one
+            List<String> lines = Files.readAllLines(manifest);
+            lines.set(1, "0");
+            lines.replaceAll((l) -> l.endsWith("\tfile1") ? l.replaceFirst("\t[0-9a-f]+\t", "\t00\t") : l);
+            Files.write(manifest, lines);
+            Files.setLastModifiedTime(file1, unchanged);
+            GraalPyResources.extractVirtualFileSystemResources(fs, resourcesDir);
+            assertNotEquals(unchanged, Files.getLastModifiedTime(file1));
+            assertEquals(unchanged, Files.getLastModifiedTime(file2));
+
+            // files from a previous extraction which are no longer in the VFS are deleted, other
+            // files are kept
+            Path stale = resourcesDir.resolve(Path.of("stale", "dir", "file"));
+            Files.createDirectories(stale.getParent());
+            Files.writeString(stale, "stale");
+            Path notExtracted = resourcesDir.resolve("not-extracted");
+            Files.writeString(notExtracted, "kept");
+            lines = Files.readAllLines(manifest);
+            lines.set(1, "0");
+            lines.add("5\t00\t0\tstale/dir/file");
+            lines.add("4\t00\t0\t../outside");
+            Files.write(manifest, lines);
+            GraalPyResources.extractVirtualFileSystemResources(fs, resourcesDir);
+            assertFalse(Files.exists(resourcesDir.resolve("stale")));
+            assertTrue(Files.exists(notExtracted));
+            assertEquals(unchanged, Files.getLastModifiedTime(file2));
+            assertFalse(Files.readString(manifest).contains("stale"));
+        }
+    }
+
     @Test
     public void vfsMountPointTest() {
         if (IS_WINDOWS) {
@@ -713,4 +793,25 @@ public class VirtualFileSystemIntegrationTest {
             }
         }
     }
+
+    @Test
+    public void testModuleIndex() throws IOException {
+        // the module index is opt-in, the finder generated by the build tools is tested in
+        // VFSUtilsTest
+        String check = """
+                        import os
+                        assert (os.environ.get('GRAALPY_VFS_MODULE_INDEX') == 'true') == %s
+                        """;
+        try (var vfs = VirtualFileSystem.newBuilder().build()) {
+            try (Context ctx = addTestOptions(GraalPyResources.contextBuilder(vfs)).build()) {
+                eval(ctx, check.formatted("False"));
+            }
+        }
+        try (var vfs = VirtualFileSystem.newBuilder().moduleIndex(true).build()) {
+            try (Context ctx = addTestOptions(GraalPyResources.contextBuilder(vfs)).build()) {
+                // the virtual filesystem has no module index which would remove the variable
+                eval(ctx, check.formatted("True"));
+            }
+        }
+    }
 }
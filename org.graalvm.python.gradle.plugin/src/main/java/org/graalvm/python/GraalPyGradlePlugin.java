@@ -41,6 +41,7 @@
 package org.graalvm.python;
 
 import org.graalvm.python.dsl.GraalPyExtension;
+import org.graalvm.python.dsl.VenvPruningInfo;
 import org.graalvm.python.tasks.AbstractPackagesTask;
 import org.graalvm.python.tasks.LockPackagesTask;
 import org.graalvm.python.tasks.MetaInfTask;
@@ -63,6 +64,7 @@ import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.jvm.tasks.Jar;
+import org.gradle.language.jvm.tasks.ProcessResources;
 
 import java.io.File;
 import java.io.IOException;
@@ -71,10 +73,15 @@ import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.function.BiFunction;
 
 import static org.graalvm.python.embedding.tools.vfs.VFSUtils.GRAALPY_GROUP_ID;
+import static org.graalvm.python.embedding.tools.vfs.VFSUtils.VFS_FILESARCHIVE;
+import static org.graalvm.python.embedding.tools.vfs.VFSUtils.VFS_FILESINDEX;
+import static org.graalvm.python.embedding.tools.vfs.VFSUtils.VFS_FILESLIST;
 import static org.graalvm.python.embedding.tools.vfs.VFSUtils.VFS_ROOT;
+import static org.graalvm.python.embedding.tools.vfs.VFSUtils.VFS_SRC;
 import static org.graalvm.python.embedding.tools.vfs.VFSUtils.VFS_VENV;
 
 public abstract class GraalPyGradlePlugin implements Plugin<Project> {
@@ -96,6 +103,7 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
     private static final String GRAALPY_META_INF_TASK_TASK = "graalPyMetaInf";
     private static final String GRAALPY_VFS_FILESLIST_TASK = "graalPyVFSFilesList";
     private static final String GRAALPY_LOCK_FILE = "graalpy.lock";
+    private static final String GRAALPY_VENV_STAGING_DIRECTORY = "graalpy-venv";
 
     GraalPyExtension extension;
     Project project;
@@ -111,7 +119,7 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
 
         var launcherClasspath = createLauncherClasspath();
         var javaPluginExtension = project.getExtensions().getByType(JavaPluginExtension.class);
-        TaskProvider<InstallPackagesTask> installPackagesTask = registerInstallPackagesTask(project, launcherClasspath, extension);
+        TaskProvider<InstallPackagesTask> installPackagesTask = registerInstallPackagesTask(project, launcherClasspath, javaPluginExtension, extension);
         registerMetaInfTask(extension);
 
         TaskProvider<VFSFilesListTask> vfsFilesListTask = registerCreateVfsFilesListTask(installPackagesTask, javaPluginExtension, extension);
@@ -141,6 +149,10 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
                 proj.getLogger().warn("WARNING: Property 'pythonResourcesDirectory' is deprecated and will be removed. Use property 'externalDirectory' instead.");
             }
 
+            if (extension.getPrecompileBytecode().getOrElse(false) && isExternalDirectory(extension)) {
+                proj.getLogger().warn("WARNING: Property 'precompileBytecode' is ignored when 'externalDirectory' is set, the sources in the external directory are not precompiled.");
+            }
+
             // Run the vfsFilesListTask conditionally only if 'externalDirectory' is not set
             if (!extension.getPythonResourcesDirectory().isPresent() && !extension.getExternalDirectory().isPresent()) {
                 if (!extension.getResourceDirectory().isPresent()) {
@@ -155,10 +167,26 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
                             Path.of("GRAALPY-VFS", "${groupId}", "${artifactId}")));
                 }
                 mainSourceSet.getResources().srcDir(vfsFilesListTask);
+                if (extension.getPackVirtualFileSystem().getOrElse(false)) {
+                    excludePackedFiles(proj, extension.getResourceDirectory().getOrElse(VFS_ROOT));
+                }
             }
         });
     }
 
+    /**
+     * The packed files are read from the archive at runtime, so only the files list, the index and
+     * the archive are copied from the virtual filesystem directory into the resources.
+     */
+    private static void excludePackedFiles(Project project, String vfsRoot) {
+        String vfsPrefix = vfsRoot + "/";
+        Set<String> packagedFiles = Set.of(vfsPrefix + VFS_FILESLIST, vfsPrefix + VFS_FILESINDEX, vfsPrefix + VFS_FILESARCHIVE);
+        project.getTasks().named(JavaPlugin.PROCESS_RESOURCES_TASK_NAME, ProcessResources.class, t -> t.exclude(e -> {
+            String path = e.getRelativePath().getPathString();
+            return path.startsWith(vfsPrefix) && !packagedFiles.contains(path);
+        }));
+    }
+
     /**
      * Registers the VFS files list creation task.
      *
@@ -170,6 +198,8 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
         return project.getTasks().register(GRAALPY_VFS_FILESLIST_TASK, VFSFilesListTask.class, t -> {
             t.setGroup(GRAALPY_GRADLE_PLUGIN_TASK_GROUP);
             t.getResourceDirectory().set(extension.getResourceDirectory());
+            t.getPackFiles().set(extension.getPackVirtualFileSystem());
+            t.getModulesIndex().set(extension.getModuleIndex());
             t.getVfsDirectories().from(installPackagesTask.flatMap(InstallPackagesTask::getOutput));
             srcDirs.forEach(t.getVfsDirectories()::from);
             t.getVfsFilesListOutputDir().convention(project.getLayout().getBuildDirectory().dir(DEFAULT_FILESLIST_DIRECTORY));
@@ -194,11 +224,25 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
      * @param launcherClasspath the classpath of the Python launcher
      * @return the resources task provider
      */
-    private TaskProvider<InstallPackagesTask> registerInstallPackagesTask(Project project, Configuration launcherClasspath, GraalPyExtension extension) {
+    private TaskProvider<InstallPackagesTask> registerInstallPackagesTask(Project project, Configuration launcherClasspath, JavaPluginExtension javaPluginExtension, GraalPyExtension extension) {
+        // the resources directories of the user, before the outputs of the GraalPy tasks are added to them
+        var srcDirs = Set.copyOf(javaPluginExtension.getSourceSets().getByName(SourceSet.MAIN_SOURCE_SET_NAME).getResources().getSrcDirs());
         return project.getTasks().register(GRAALPY_INSTALL_PACKAGES_TASK, InstallPackagesTask.class, t -> {
             t.getLauncherClasspath().from(launcherClasspath);
             t.getLauncherDirectory().convention(project.getLayout().getBuildDirectory().dir("python-launcher"));
             t.getPolyglotVersion().convention(extension.getPolyglotVersion().orElse(determineGraalPyDefaultVersion()));
+            // the bytecode is not checked against the sources at runtime, so sources in an external directory,
+            // which can be edited after the build, are not precompiled
+            t.getPrecompileBytecode().set(extension.getPrecompileBytecode().map(p -> p && !isExternalDirectory(extension)));
+            if (!isExternalDirectory(extension)) {
+                // processResources copies the sources and their bytecode from the output into the same directory
+                String vfsRoot = extension.getResourceDirectory().getOrElse(VFS_ROOT);
+                srcDirs.forEach(d -> t.getPythonSourcesDirectories().from(d.toPath().resolve(vfsRoot).resolve(VFS_SRC).toFile()));
+                t.getCompiledSourcesDirectory().fileProvider(t.getOutput().map(o -> o.dir(vfsRoot).dir(VFS_SRC).getAsFile()));
+            }
+            t.getPruneIncludes().set(extension.getVenvPruning().getIncludes());
+            t.getPruneExcludes().set(extension.getVenvPruning().getExcludes());
+            t.getPruneAccessProfile().set(extension.getVenvPruning().getAccessProfile());
 
             if(userPythonHome()) {
                 t.getLogger().warn("The GraalPy plugin pythonHome configuration setting was deprecated and has no effect anymore.\n" +
@@ -231,7 +275,16 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
         t.getOutput().convention(output);
 
         String vfsRoot = externalDirectory.isPresent() ? "" : extension.getResourceDirectory().getOrElse(VFS_ROOT);
-        t.getVenvDirectory().set(output.getAsFile().toPath().resolve(vfsRoot).resolve(VFS_VENV).toFile());
+        File packagedVenv = output.getAsFile().toPath().resolve(vfsRoot).resolve(VFS_VENV).toFile();
+        if (isVenvStaged(extension)) {
+            // the venv is created outside of the output, which gets only its pruned copy
+            t.getVenvDirectory().set(buildDirectory.dir(GRAALPY_VENV_STAGING_DIRECTORY).get().getAsFile().toPath().resolve(vfsRoot).resolve(VFS_VENV).toFile());
+            if (t instanceof InstallPackagesTask installPackagesTask) {
+                installPackagesTask.getPrunedVenvDirectory().set(packagedVenv);
+            }
+        } else {
+            t.getVenvDirectory().set(packagedVenv);
+        }
 
         RegularFile graalPyLockFile = extension.getGraalPyLockFile().orElse(projectDirectory.file(GRAALPY_LOCK_FILE)).get();
         File glfFile = graalPyLockFile.getAsFile();
@@ -243,6 +296,20 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
         t.setGroup(GRAALPY_GRADLE_PLUGIN_TASK_GROUP);
     }
 
+    private static boolean isExternalDirectory(GraalPyExtension extension) {
+        return extension.getExternalDirectory().isPresent() || extension.getPythonResourcesDirectory().isPresent();
+    }
+
+    /**
+     * Pruning must not modify the venv the files are removed from, so it is then created outside of
+     * the output directory.
+     */
+    private static boolean isVenvStaged(GraalPyExtension extension) {
+        VenvPruningInfo pruning = extension.getVenvPruning();
+        return !extension.getExternalDirectory().isPresent() && !extension.getPythonResourcesDirectory().isPresent() &&
+                (pruning.getAccessProfile().isPresent() || !pruning.getExcludes().getOrElse(Set.of()).isEmpty());
+    }
+
     private boolean userPythonHome() {
         return !(extension.getPythonHome().getIncludes().get().size() == 1 &&
                 extension.getPythonHome().getExcludes().get().size() == 1 &&
@@ -273,6 +340,11 @@ public abstract class GraalPyGradlePlugin implements Plugin<Project> {
         extension.getPythonHome().getExcludes().convention(EMPTY_LIST);
         extension.getPackages().convention(Collections.emptyList());
         extension.getCommunity().convention(false);
+        extension.getPackVirtualFileSystem().convention(false);
+        extension.getPrecompileBytecode().convention(false);
+        extension.getModuleIndex().convention(false);
+        extension.getVenvPruning().getIncludes().convention(Collections.emptySet());
+        extension.getVenvPruning().getExcludes().convention(Collections.emptySet());
     }
 
     /**
@@ -76,6 +76,34 @@ public interface GraalPyExtension {
      */
     Property<String> getResourceDirectory();
 
+    /**
+     * Tells whether to pack the data of all virtual filesystem files into a single archive,
+     * from which they are read at runtime instead of looking up each file as a separate Java
+     * resource. The packed files themselves are then not copied into the resources.
+     *
+     * @return {@code true} if the virtual filesystem files should be packed, default is false
+     */
+    Property<Boolean> getPackVirtualFileSystem();
+
+    /**
+     * Tells whether to precompile the Python sources in the virtual environment and in the
+     * {@code src} directory of the resources into bytecode at build time, so that it does not have
+     * to be compiled at runtime. It is ignored when an external directory is used, since the
+     * bytecode is not checked against the sources at runtime.
+     *
+     * @return {@code true} if the bytecode should be precompiled, default is false
+     */
+    Property<Boolean> getPrecompileBytecode();
+
+    /**
+     * Tells whether to generate an index of the Python modules in the {@code src} directory and
+     * in the virtual environment into the virtual filesystem. The index is used at runtime only if
+     * the virtual filesystem is built with {@code VirtualFileSystem.Builder#moduleIndex(boolean)}.
+     *
+     * @return {@code true} if the module index should be generated, default is false
+     */
+    Property<Boolean> getModuleIndex();
+
     /**
      * GraalPy lock file.
      *
@@ -116,4 +144,21 @@ public interface GraalPyExtension {
     default void pythonHome(Action<? super PythonHomeInfo> action) {
         action.execute(getPythonHome());
     }
+
+    /**
+     * Determines which files are removed from the virtual environment before it is packaged
+     * into the virtual filesystem. Nothing is removed by default. If any files are removed, the
+     * virtual environment is created in {@code build/graalpy-venv} and only its pruned copy is
+     * packaged. Pruning is not supported with an external directory.
+     */
+    @Nested
+    VenvPruningInfo getVenvPruning();
+
+    /**
+     * Configures the VenvPruning object using provided closure, i.e.: {@code venvPruning { ... }}.
+     */
+    @SuppressWarnings("unused")
+    default void venvPruning(Action<? super VenvPruningInfo> action) {
+        action.execute(getVenvPruning());
+    }
 }
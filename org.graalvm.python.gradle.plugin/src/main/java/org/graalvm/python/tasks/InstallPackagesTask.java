@@ -42,10 +42,20 @@ package org.graalvm.python.tasks;
 
 import org.graalvm.python.dsl.GraalPyExtension;
 import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
 import org.gradle.api.tasks.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.graalvm.python.embedding.tools.vfs.VFSUtils;
 import org.graalvm.python.embedding.tools.vfs.VFSUtils.PackagesChangedException;
@@ -61,6 +71,8 @@ import org.graalvm.python.embedding.tools.vfs.VFSUtils.PackagesChangedException;
  *     <li>The GraalPy launcher is set up.</li>
  *     <li>A python venv is created.</li>
  *     <li>Python packages are installed into the venv.</li>
+ *     <li>Optionally, the Python sources in the venv and in the resources are precompiled into bytecode.</li>
+ *     <li>Optionally, the venv is copied into the output without the files not needed at runtime.</li>
  * </ol>
  *
  */
@@ -91,6 +103,61 @@ public abstract class InstallPackagesTask extends AbstractPackagesTask {
         
         """;
 
+    /**
+     * Whether to precompile the Python sources in the venv and in the Python sources directories
+     * into bytecode.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getPrecompileBytecode();
+
+    /**
+     * The {@code src} directories of the virtual filesystem in the resources, whose Python sources
+     * are precompiled into {@link #getCompiledSourcesDirectory()}.
+     */
+    @InputFiles
+    @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getPythonSourcesDirectories();
+
+    /**
+     * The {@code src} directory of the virtual filesystem within the output, into which the
+     * bytecode of the Python sources directories is written. The sources are copied into the
+     * resources together with it, so they are not modified. It is only set if the output is not an
+     * external directory.
+     */
+    @Internal
+    public abstract RegularFileProperty getCompiledSourcesDirectory();
+
+    /**
+     * Glob patterns of files which are never pruned from the venv.
+     */
+    @Input
+    @Optional
+    public abstract SetProperty<String> getPruneIncludes();
+
+    /**
+     * Glob patterns of files which are pruned from the venv.
+     */
+    @Input
+    @Optional
+    public abstract SetProperty<String> getPruneExcludes();
+
+    /**
+     * Access profile, the files not listed in it are pruned from the venv.
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getPruneAccessProfile();
+
+    /**
+     * The directory within the output into which the pruned copy of the venv is written. It is
+     * only set if the venv is created outside of the output, pruning is skipped otherwise.
+     */
+    @Internal
+    public abstract RegularFileProperty getPrunedVenvDirectory();
+
     @TaskAction
     public void exec() throws GradleException {
         Path venvDirectory = getVenvDirectory().get().getAsFile().toPath();
@@ -104,5 +171,39 @@ public abstract class InstallPackagesTask extends AbstractPackagesTask {
         } catch (IOException e) {
             throw new GradleException(String.format("failed to create python virtual environment in %s", venvDirectory), e);
         }
+        Path compiledSourcesDirectory = getCompiledSourcesDirectory().isPresent() ? getCompiledSourcesDirectory().get().getAsFile().toPath() : null;
+        if (getPrecompileBytecode().getOrElse(false)) {
+            try {
+                VFSUtils.compileBytecode(List.of(venvDirectory), createLauncher(), getLog());
+                if (compiledSourcesDirectory != null) {
+                    VFSUtils.compileBytecode(getPythonSourcesDirectories().getFiles().stream().map(File::toPath).toList(), compiledSourcesDirectory, createLauncher(), getLog());
+                }
+            } catch (IOException e) {
+                throw new GradleException(String.format("failed to precompile python bytecode in %s", venvDirectory), e);
+            }
+        } else if (compiledSourcesDirectory != null && Files.exists(compiledSourcesDirectory)) {
+            // the bytecode is not checked against the sources at runtime, so it must not outlive the precompilation
+            try (Stream<Path> s = Files.walk(compiledSourcesDirectory)) {
+                for (Path p : s.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(p);
+                }
+            } catch (IOException e) {
+                throw new GradleException(String.format("failed to delete python bytecode in %s", compiledSourcesDirectory), e);
+            }
+        }
+        Path accessProfile = getPruneAccessProfile().isPresent() ? getPruneAccessProfile().get().getAsFile().toPath() : null;
+        Set<String> excludes = getPruneExcludes().getOrElse(Set.of());
+        if (!getPrunedVenvDirectory().isPresent()) {
+            if (accessProfile != null || !excludes.isEmpty()) {
+                getLogger().warn("venvPruning is ignored when externalDirectory is set, the virtual environment in the external directory is not pruned");
+            }
+            return;
+        }
+        Path prunedVenvDirectory = getPrunedVenvDirectory().get().getAsFile().toPath();
+        try {
+            VFSUtils.pruneVenv(venvDirectory, prunedVenvDirectory, List.copyOf(getPruneIncludes().getOrElse(Set.of())), List.copyOf(excludes), accessProfile, getLog());
+        } catch (IOException e) {
+            throw new GradleException(String.format("failed to prune python virtual environment %s into %s", venvDirectory, prunedVenvDirectory), e);
+        }
     }
 }
@@ -58,6 +58,8 @@ import org.gradle.api.tasks.TaskAction;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
 
 import static org.graalvm.python.embedding.tools.vfs.VFSUtils.VFS_ROOT;
@@ -86,6 +88,20 @@ public abstract class VFSFilesListTask extends DefaultTask {
     @Optional
     public abstract Property<String> getResourceDirectory();
 
+    /**
+     * Whether to pack the data of all files into a single archive next to the files list.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getPackFiles();
+
+    /**
+     * Whether to generate the index of the Python modules next to the files list.
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getModulesIndex();
+
     @TaskAction
     public void exec() throws IOException {
         String vfsRoot = getResourceDirectory().getOrElse(VFS_ROOT);
@@ -93,11 +109,15 @@ public abstract class VFSFilesListTask extends DefaultTask {
         Files.createDirectories(outputDir);
         // Sort lines for reproducibility
         var sorted = new TreeSet<String>();
+        List<Path> resourcesRoots = new ArrayList<>();
+        List<Path> vfsDirs = new ArrayList<>();
         getVfsDirectories().getElements().get().forEach(location -> {
             var vfsParentDir = location.getAsFile().toPath();
             if (Files.isDirectory(vfsParentDir)) {
                 var vfsDir = vfsParentDir.resolve(vfsRoot);
                 if (Files.isDirectory(vfsDir)) {
+                    resourcesRoots.add(vfsParentDir);
+                    vfsDirs.add(vfsDir);
                     try {
                         VFSUtils.generateVFSFilesList(vfsParentDir, vfsDir, sorted, duplicate -> {
                             this.getLogger().warn("Found duplicate file '{}' in multiple resource directories.", duplicate);
@@ -109,8 +129,23 @@ public abstract class VFSFilesListTask extends DefaultTask {
             }
         });
         try {
-            var fileslist = outputDir.resolve("fileslist.txt");
+            // the module index is generated next to the files list, from where it is also loaded
+            Path outputRoot = getVfsFilesListOutputDir().get().getAsFile().toPath();
+            if (getModulesIndex().getOrElse(false)) {
+                VFSUtils.generateVFSModulesIndex(outputRoot, outputDir, vfsDirs, sorted);
+            } else {
+                VFSUtils.deleteVFSModulesIndex(outputDir);
+            }
+            resourcesRoots.add(outputRoot);
+            var fileslist = outputDir.resolve(VFSUtils.VFS_FILESLIST);
             Files.write(fileslist, sorted);
+            var filesArchive = outputDir.resolve(VFSUtils.VFS_FILESARCHIVE);
+            if (getPackFiles().getOrElse(false)) {
+                VFSUtils.generateVFSFilesIndex(outputDir.resolve(VFSUtils.VFS_FILESINDEX), sorted, resourcesRoots, filesArchive);
+            } else {
+                Files.deleteIfExists(filesArchive);
+                VFSUtils.generateVFSFilesIndex(outputDir.resolve(VFSUtils.VFS_FILESINDEX), sorted, resourcesRoots);
+            }
         } catch (IOException e) {
             throw new GradleScriptException(String.format("failed to generate files list in '%s'", outputDir), e);
         }
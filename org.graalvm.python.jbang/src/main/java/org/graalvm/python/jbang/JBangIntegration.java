@@ -70,6 +70,8 @@ public class JBangIntegration {
     private static final String PIP = "//PIP";
     private static final String PIP_DROP = "//PIP_DROP";
     private static final String RESOURCES_DIRECTORY = "//PYTHON_RESOURCES_DIRECTORY";
+    private static final String PRECOMPILE_BYTECODE = "//PYTHON_PRECOMPILE_BYTECODE";
+    private static final String MODULE_INDEX = "//PYTHON_MODULE_INDEX";
     private static final String PYTHON_LANGUAGE = "python-language";
     private static final String PYTHON_RESOURCES = "python-resources";
     private static final String PYTHON_LAUNCHER = "python-launcher";
@@ -199,6 +201,13 @@ public class JBangIntegration {
             handleVenv(venv, dependencies, pkgs, comments, resourcesDirectory == null);
         }
 
+        if (comments.stream().anyMatch(c -> c.trim().equals(PRECOMPILE_BYTECODE)) && resourcesDirectory != null) {
+            // the pycs are not checked against the sources at runtime, edits of the sources in the resources directory would be ignored
+            log(PRECOMPILE_BYTECODE + " is ignored when " + RESOURCES_DIRECTORY + " is set, the sources in the resources directory are not precompiled");
+        } else if (comments.stream().anyMatch(c -> c.trim().equals(PRECOMPILE_BYTECODE))) {
+            VFSUtils.compileBytecode(List.of(venv, venv.resolveSibling(VFSUtils.VFS_SRC)), createLauncher(venv, dependencies), BUILD_TOOL_LOG);
+        }
+
         if (nativeImage) {
             // include python stdlib in image
             try {
@@ -210,7 +219,7 @@ public class JBangIntegration {
 
         if (vfs != null) {
             try {
-                VFSUtils.generateVFSFilesList(vfs);
+                VFSUtils.generateVFSFilesList(null, vfs, false, comments.stream().anyMatch(c -> c.trim().equals(MODULE_INDEX)));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -234,13 +243,7 @@ public class JBangIntegration {
             // perhaps already checked by jbang
             throw new IllegalStateException("could not resolve parent for venv path: " + venv);
         }
-        Launcher launcher = new Launcher(getLauncherPath(venvParent.toString())) {
-            @Override
-            public Set<String> computeClassPath() {
-                return calculateClasspath(dependencies);
-            }
-        };
-        VFSUtils.createVenv(venv, pkgs, launcher, graalPyVersion, BUILD_TOOL_LOG);
+        VFSUtils.createVenv(venv, pkgs, createLauncher(venv, dependencies), graalPyVersion, BUILD_TOOL_LOG);
 
         if (dropPip) {
             try {
@@ -272,6 +275,15 @@ public class JBangIntegration {
         }
     }
 
+    private static Launcher createLauncher(Path venv, List<Map.Entry<String, Path>> dependencies) {
+        return new Launcher(getLauncherPath(venv.getParent().toString())) {
+            @Override
+            public Set<String> computeClassPath() {
+                return calculateClasspath(dependencies);
+            }
+        };
+    }
+
     private static Collection<Path> resolveProjectDependencies(List<Map.Entry<String, Path>> dependencies) {
         return dependencies.stream().map(e -> e.getValue()).collect(Collectors.toList());
     }